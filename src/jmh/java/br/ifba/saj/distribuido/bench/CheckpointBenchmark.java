@@ -0,0 +1,62 @@
+package br.ifba.saj.distribuido.bench;
+
+import br.ifba.saj.distribuido.node.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+// NodeState.saveCheckpoint / loadCheckpoint com cada CheckpointStore (--store=json|wal|mmap),
+// num diretório temporário. O WAL usa a janela padrão de group commit (5ms), então o save
+// mede o caminho do chamador, não o fsync; json faz fsync + rename a cada save.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CheckpointBenchmark {
+
+    @Param({ "JSON", "WAL", "MMAP" })
+    public CheckpointStore.Kind store;
+
+    private Path dir;
+    private NodeState state;
+    private int counter;
+
+    @Setup
+    public void setup() throws IOException {
+        // loadCheckpoint imprime uma linha por chamada; no fork do benchmark isso só atrapalha
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        dir = Files.createTempDirectory("checkpoint-bench");
+        NodeOptions o = new NodeOptions();
+        o.pid = 1;
+        o.dataDir = dir;
+        state = new NodeState(1, store.open(o));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        state.close();
+        try (var files = Files.list(dir)) {
+            for (Path p : files.toList())
+                Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public void save() {
+        counter++;
+        state.setCounterAndTs(counter, counter);
+        state.saveCheckpoint();
+    }
+
+    @Benchmark
+    public int load() {
+        state.loadCheckpoint();
+        return state.getCounter();
+    }
+}
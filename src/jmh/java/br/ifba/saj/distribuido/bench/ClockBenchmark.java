@@ -0,0 +1,76 @@
+package br.ifba.saj.distribuido.bench;
+
+import br.ifba.saj.distribuido.model.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Relógio sob disputa, no padrão de acesso do nó: duas threads gerando eventos (operação e
+// agendador), uma aplicando relógios recebidos (escuta) e uma lendo para os logs.
+// "synchronized" é a implementação anterior (int com monitor), mantida aqui só para comparação.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class ClockBenchmark {
+
+    @Param({ "synchronized", "atomic", "hlc" })
+    public String impl;
+
+    private LamportClock clock;
+    private long remote;
+
+    @Setup
+    public void setup() {
+        clock = switch (impl) {
+            case "synchronized" -> new SynchronizedLamportClock();
+            case "hlc" -> new HybridLogicalClock();
+            default -> new LamportClock();
+        };
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public long increment() {
+        return clock.increment();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public long update() {
+        return clock.update(remote += 3);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public long read() {
+        return clock.getTime();
+    }
+
+    // implementação anterior: int protegido pelo monitor do objeto
+    static class SynchronizedLamportClock extends LamportClock {
+        private int time = 0;
+
+        @Override
+        public synchronized long increment() {
+            return ++time;
+        }
+
+        @Override
+        public synchronized long update(long remote) {
+            time = (int) Math.max(time, remote) + 1;
+            return time;
+        }
+
+        @Override
+        public synchronized long getTime() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package br.ifba.saj.distribuido.bench;
+
+import br.ifba.saj.distribuido.model.*;
+import br.ifba.saj.distribuido.protocol.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Custo por mensagem dos dois codecs do fio, com um STATE típico (recurso, contador, token).
+// decodeCounter é o caminho do nó ao receber um STATE: decodificar e ler o contador do payload.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    private Message msg;
+    private String jsonLine;
+    private ByteBuffer frame;
+    private final ByteBuffer out = ByteBuffer.allocate(BinaryCodec.FRAME_BUFFER_SIZE);
+    private final Message reuse = new Message();
+
+    @Setup
+    public void setup() {
+        msg = new Message();
+        msg.setType(MessageType.STATE);
+        msg.setPid(3);
+        msg.setClock(123_456);
+        msg.setResource("conta-42");
+        msg.setCounter(98_765);
+        msg.setLong(PayloadField.TOKEN, 1_234);
+        jsonLine = JsonCodec.encode(msg);
+        frame = ByteBuffer.wrap(BinaryCodec.encodeToArray(msg));
+    }
+
+    @Benchmark
+    public String jsonEncode() {
+        return JsonCodec.encode(msg);
+    }
+
+    @Benchmark
+    public int jsonDecodeCounter() {
+        return JsonCodec.decode(jsonLine).getCounter();
+    }
+
+    @Benchmark
+    public int binaryEncode() {
+        out.clear();
+        BinaryCodec.encode(msg, out);
+        return out.position();
+    }
+
+    @Benchmark
+    public int binaryDecodeCounter() throws IOException {
+        ByteBuffer src = frame.duplicate();
+        int len = BinaryCodec.readHeader(src);
+        src.limit(src.position() + len);
+        BinaryCodec.decodeBody(src, reuse);
+        return reuse.getCounter();
+    }
+}
@@ -0,0 +1,115 @@
+package br.ifba.saj.distribuido.bench;
+
+import br.ifba.saj.distribuido.node.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Estado do nó sob disputa: a thread da operação grava (setCounterAndTs), a de escuta aplica
+// STATEs recebidos (só se mais novos) e duas leem o snapshot (MARKER, RA_REPLY, logs).
+// "synchronized" é o NodeState anterior, com monitor em cada acesso; o checkpoint fica de fora.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class NodeStateBenchmark {
+
+    interface Holder {
+        void set(int counter, long ts);
+
+        boolean applyIfNewer(int counter, long ts);
+
+        int read();
+    }
+
+    @Param({ "synchronized", "cas" })
+    public String impl;
+
+    private Holder holder;
+    private int writes;
+    private long remoteTs;
+
+    @Setup
+    public void setup() {
+        holder = impl.equals("synchronized") ? new SynchronizedState() : new CasState();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void write() {
+        writes++;
+        holder.set(writes, writes * 2L);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public boolean applyState() {
+        remoteTs += 2;
+        return holder.applyIfNewer((int) remoteTs, remoteTs + 1);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public int read() {
+        return holder.read();
+    }
+
+    static class CasState implements Holder {
+        private final NodeState state = new NodeState(0, new CheckpointStore() {
+            @Override
+            public void save(int counter, long lamportTs) {
+            }
+
+            @Override
+            public NodeState.StateSnapshot load() {
+                return null;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        public void set(int counter, long ts) {
+            state.setCounterAndTs(counter, ts);
+        }
+
+        public boolean applyIfNewer(int counter, long ts) {
+            return state.applyIfNewer(counter, ts);
+        }
+
+        public int read() {
+            NodeState.StateSnapshot s = state.createSnapshot();
+            return s.counter + (int) s.lamportTs;
+        }
+    }
+
+    // NodeState anterior: dois campos protegidos pelo monitor
+    static class SynchronizedState implements Holder {
+        private int counter;
+        private int lastLamportTs;
+
+        public synchronized void set(int value, long ts) {
+            counter = value;
+            lastLamportTs = (int) Math.max(lastLamportTs, ts);
+        }
+
+        public synchronized boolean applyIfNewer(int value, long ts) {
+            if (ts <= lastLamportTs)
+                return false;
+            counter = value;
+            lastLamportTs = (int) ts;
+            return true;
+        }
+
+        public synchronized int read() {
+            return counter + lastLamportTs;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Caminho de concessão com 4 threads de I/O entregando pedidos ao mesmo recurso:
+// - locked: cada thread faz o ciclo de escrita (enqueue, pollGrants, applyIfWriter, release)
+//   sob o monitor do recurso, como o coordenador fazia antes do núcleo;
+// - ring: a thread só copia o pedido para um slot do MpscRingBuffer e a thread do núcleo faz o
+//   ciclo sozinha, sem lock. Com o buffer cheio o produtor espera, então a vazão medida é a
+//   vazão sustentada do núcleo.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class GrantPathBenchmark {
+
+    static final class Slot {
+        long ts;
+        int pid;
+    }
+
+    @Param({ "locked", "ring" })
+    public String mode;
+
+    private ResourceLock lock;
+    private MpscRingBuffer<Slot> ring;
+    private Thread core;
+
+    @Setup
+    public void setup() {
+        lock = new ResourceLock("bench", (name, counter, lastToken) -> {
+        });
+        if (mode.equals("ring")) {
+            ring = new MpscRingBuffer<>(8192, Slot::new);
+            core = Thread.ofPlatform().name("bench-core").start(() -> ring.consume(s -> cycle(s.ts, s.pid)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        if (core != null) {
+            core.interrupt();
+            core.join();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        int pid = (int) Thread.currentThread().threadId();
+        long ts;
+    }
+
+    private Integer cycle(long ts, int pid) {
+        lock.enqueue(new Request(ts, pid, null, false));
+        List<Request> granted = lock.pollGrants();
+        Request r = granted.get(0);
+        Integer value = lock.applyIfWriter(r.token, r.pid, 1);
+        lock.release(false, r.token, r.pid);
+        return value;
+    }
+
+    @Benchmark
+    public Object request(Producer p) {
+        p.ts++;
+        if (ring == null) {
+            synchronized (lock) {
+                return cycle(p.ts, p.pid);
+            }
+        }
+        long seq = ring.claim();
+        try {
+            Slot s = ring.get(seq);
+            s.ts = p.ts;
+            s.pid = p.pid;
+        } finally {
+            ring.publish(seq);
+        }
+        return seq;
+    }
+}
@@ -0,0 +1,102 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Fila de pedidos do coordenador com 'depth' pedidos já esperando:
+// - queueCycle: REQUEST com timestamp ao acaso entra e a cabeça (menor (lamportTime, pid)) sai,
+//   só o RequestHeap do ResourceLock; priorityQueueCycle é o mesmo no PriorityQueue de antes;
+// - removeCycle / priorityQueueRemove: um pedido qualquer sai da fila e volta (conexão que caiu),
+//   O(log n) pelo índice do heap contra a busca linear do PriorityQueue;
+// - grantCycle: o ciclo completo de uma escrita no recurso (enqueue com o rank da política,
+//   pollGrants com token, applyIfWriter e release), como faz o coordenador a cada
+//   REQUEST/DO_OP/RELEASE.
+// No pacote do coordenador porque Request e ResourceLock são internos a ele.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestQueueBenchmark {
+
+    @Param({ "1", "16", "256" })
+    public int depth;
+
+    @Param({ "lamport", "wfq", "priority" })
+    public String policy;
+
+    private final RequestHeap heap = new RequestHeap();
+    private final PriorityQueue<Request> queue = new PriorityQueue<>();
+    private final List<Request> queued = new ArrayList<>();
+    private ResourceLock lock;
+    private final Random rand = new Random(42);
+    private long clock;
+
+    @Setup
+    public void setup() {
+        lock = new ResourceLock("bench", (name, counter, lastToken) -> {
+        }, SchedulingPolicy.fromArgs(new String[] { "--sched=" + policy }));
+        for (int i = 0; i < depth; i++) {
+            Request r = next();
+            queued.add(r);
+            heap.add(r);
+            queue.add(r);
+        }
+        // a fila do recurso fica com depth - 1 esperando atrás do pedido do ciclo
+        Request held = next();
+        lock.enqueue(held);
+        lock.pollGrants();
+        for (int i = 1; i < depth; i++)
+            lock.enqueue(next());
+        lock.release(false, held.token, held.pid);
+    }
+
+    // timestamps um pouco embaralhados, como REQUESTs de nós diferentes chegando fora de ordem
+    private Request next() {
+        clock += 1 + rand.nextInt(4);
+        Request r = new Request(clock + rand.nextInt(8), rand.nextInt(64), null, false);
+        r.priority = rand.nextInt(3);
+        return r;
+    }
+
+    @Benchmark
+    public Request queueCycle() {
+        heap.add(next());
+        return heap.poll();
+    }
+
+    @Benchmark
+    public Request priorityQueueCycle() {
+        queue.add(next());
+        return queue.poll();
+    }
+
+    @Benchmark
+    public boolean removeCycle() {
+        Request r = queued.get(rand.nextInt(queued.size()));
+        boolean removed = heap.remove(r);
+        heap.add(r);
+        return removed;
+    }
+
+    @Benchmark
+    public boolean priorityQueueRemove() {
+        Request r = queued.get(rand.nextInt(queued.size()));
+        boolean removed = queue.remove(r);
+        queue.add(r);
+        return removed;
+    }
+
+    @Benchmark
+    public Integer grantCycle() {
+        lock.enqueue(next());
+        List<Request> granted = lock.pollGrants();
+        Request r = granted.get(0);
+        Integer value = lock.applyIfWriter(r.token, r.pid, 1);
+        lock.release(false, r.token, r.pid);
+        return value;
+    }
+}
@@ -0,0 +1,113 @@
+package br.ifba.saj.distribuido.bench;
+
+import br.ifba.saj.distribuido.coordinator.CoordinatorServer;
+import br.ifba.saj.distribuido.log.Log;
+import br.ifba.saj.distribuido.model.Message;
+import br.ifba.saj.distribuido.node.*;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.ToLongFunction;
+
+// Compara, no mesmo cluster (coordenador e N nós na mesma JVM), o incremento pela exclusão
+// mútua (REQUEST/GRANT/DO_OP/RELEASE no recurso padrão) com o incremento CRDT (PnCounter local
+// em "hits", mesclado pelo coordenador). Cada nó faz M incrementos em sequência; depois do
+// último, mede-se quanto tempo falta até todos os nós verem o total N*M (convergência).
+// Impressos: vazão, mensagens por incremento (enviadas+recebidas, somando os nós) e convergência.
+//
+// uso: CrdtComparison [nós=5] [incrementos por nó=200] [porta=5400] [gossip ms=100]
+public class CrdtComparison {
+    private static final String CRDT_RESOURCE = "hits";
+
+    public static void main(String[] args) throws Exception {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 5400;
+        long gossipMs = args.length > 3 ? Long.parseLong(args[3]) : 100;
+
+        // só avisos e erros: as linhas por mensagem já são DEBUG, mas o INFO de cada nó também polui a saída
+        Log.setLevel(Log.Level.WARN);
+
+        Thread coord = new Thread(() -> {
+            try {
+                CoordinatorServer.main(new String[] { "--port=" + port, "--rep-interval=1",
+                        "--log-dir=" + Files.createTempDirectory("coord-log") });
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "coordinator");
+        coord.setDaemon(true);
+        coord.start();
+        waitForPort(port);
+
+        Path dataDir = Files.createTempDirectory("crdt");
+        List<NodeClient> clients = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            NodeOptions o = new NodeOptions();
+            o.pid = i + 1;
+            o.port = port;
+            o.dataDir = dataDir;
+            o.resources = new String[] { Message.DEFAULT_RESOURCE };
+            o.crdtResources = Set.of(CRDT_RESOURCE);
+            o.gossipIntervalMs = gossipMs;
+            clients.add(new NodeClient(o));
+        }
+        Thread.sleep(300);
+
+        System.out.println("modo       nós  incrementos  incr/s      msgs/incr  convergência(ms)  valor final");
+        System.out.println(run("travado", clients, ops, c -> c.runClosedLoop(ops), c -> c.getCounter()));
+        System.out.println(run("crdt", clients, ops, c -> {
+            for (int i = 0; i < ops; i++)
+                c.incrementCrdt(CRDT_RESOURCE, 1);
+        }, c -> c.crdtValue(CRDT_RESOURCE)));
+        clients.forEach(NodeClient::close);
+        System.exit(0);
+    }
+
+    interface Work {
+        void run(NodeClient c) throws InterruptedException;
+    }
+
+    private static String run(String name, List<NodeClient> clients, int ops, Work work,
+            ToLongFunction<NodeClient> value) throws Exception {
+        long expected = (long) clients.size() * ops;
+        long msgsBefore = clients.stream().mapToLong(NodeClient::messageCount).sum();
+        long t0 = System.nanoTime();
+        List<Thread> workers = new ArrayList<>();
+        for (NodeClient c : clients) {
+            workers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    work.run(c);
+                } catch (InterruptedException ignored) {
+                }
+            }));
+        }
+        for (Thread w : workers)
+            w.join();
+        long t1 = System.nanoTime();
+        // convergência: até todos os nós verem o total (ou 10s)
+        long deadline = t1 + 10_000_000_000L;
+        while (clients.stream().anyMatch(c -> value.applyAsLong(c) != expected) && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        long t2 = System.nanoTime();
+        long msgs = clients.stream().mapToLong(NodeClient::messageCount).sum() - msgsBefore;
+        long min = clients.stream().mapToLong(value).min().orElse(0);
+        return String.format("%-10s %-4d %-12d %-11.0f %-10.2f %-17.1f %d%s", name, clients.size(), expected,
+                expected / ((t1 - t0) / 1e9), (double) msgs / expected, (t2 - t1) / 1e6, min,
+                min == expected ? "" : " (não convergiu)");
+    }
+
+    private static void waitForPort(int port) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try {
+                new Socket("127.0.0.1", port).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("coordenador não subiu na porta " + port);
+    }
+}
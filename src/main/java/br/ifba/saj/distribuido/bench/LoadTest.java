@@ -0,0 +1,300 @@
+package br.ifba.saj.distribuido.bench;
+
+import br.ifba.saj.distribuido.coordinator.CoordinatorServer;
+import br.ifba.saj.distribuido.log.Log;
+import br.ifba.saj.distribuido.metrics.LatencyHistogram;
+import br.ifba.saj.distribuido.model.*;
+import br.ifba.saj.distribuido.node.*;
+import br.ifba.saj.distribuido.protocol.WireFormat;
+import com.google.gson.*;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Teste de carga com o coordenador e N nós na mesma JVM, em loopback.
+// Cada nó recebe pedidos numa taxa fixa (chegadas de Poisson, --rate por nó) em vez do sleep de
+// 2–4s do NodeClient. Um nó faz uma operação por vez; pedidos que chegam com ele ocupado
+// esperam, e a latência fim a fim conta a partir da chegada prevista (sem omissão coordenada).
+// Falhas: uma fração dos nós roda com --delay (5s dentro da RC, o lease expira) e outra com
+// --crash (cai na primeira operação, fechando a conexão sem RELEASE, e volta após --restart ms
+// recuperando o checkpoint).
+// Relatório: vazão e p50/p99/p99.9 de REQUEST->GRANT, DO_OP->STATE e da operação inteira.
+//
+// uso: LoadTest [--nodes=20] [--rate=20] [--duration=10] [--port=5300] [--resources=a,b]
+//      [--read-ratio=0.0] [--delay=0.0] [--crash=0.0] [--restart=2000] [--rep-interval=1] [--rep=push|pull]
+//      [--binary] [--virtual] [--unix] [--sched=lamport|wfq|priority] [--aging=ms] [--weights=pid:peso,...]
+//      [--urgent=0.0]
+//      [--csv=arquivo] [--json=arquivo]
+public class LoadTest {
+    private int nodes = 20;
+    private double rate = 20;
+    private int durationSec = 10;
+    private int port = 5300;
+    private String[] resources = { Message.DEFAULT_RESOURCE };
+    private double readRatio = 0.0;
+    private double delayFraction = 0.0;
+    private double crashFraction = 0.0;
+    private long restartMs = 2000;
+    // intervalo da replicação do coordenador: o STATE que confirma o DO_OP sai no próximo lote
+    private long repIntervalMs = 1;
+    // pull: sem broadcast de STATE, os nós convergem pelo SYNC de anti-entropia
+    private String repMode = "push";
+    // nós conectam pelo socket de domínio Unix do coordenador em vez de TCP em loopback
+    private boolean unix = false;
+    // política da fila do coordenador (--sched, --aging, --weights repassados) e fração dos nós,
+    // os de pid mais alto, que pedem com prioridade 1; a espera deles sai numa linha própria
+    private final List<String> schedArgs = new ArrayList<>();
+    private double urgentFraction = 0.0;
+    private int urgentFromPid = Integer.MAX_VALUE;
+    private WireFormat wireFormat = WireFormat.JSON;
+    private ThreadMode threadMode = ThreadMode.PLATFORM;
+    private Path csv;
+    private Path json;
+
+    private Path dataDir;
+    private Path coordSocket;
+    private final LatencyHistogram grant = new LatencyHistogram();
+    private final LatencyHistogram grantUrgent = new LatencyHistogram();
+    private final LatencyHistogram doOp = new LatencyHistogram();
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private final Map<String, Long> counts = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        LoadTest t = new LoadTest();
+        for (String a : args) {
+            if (a.startsWith("--nodes="))
+                t.nodes = Integer.parseInt(a.substring("--nodes=".length()));
+            if (a.startsWith("--rate="))
+                t.rate = Double.parseDouble(a.substring("--rate=".length()));
+            if (a.startsWith("--duration="))
+                t.durationSec = Integer.parseInt(a.substring("--duration=".length()));
+            if (a.startsWith("--port="))
+                t.port = Integer.parseInt(a.substring("--port=".length()));
+            if (a.startsWith("--resources="))
+                t.resources = a.substring("--resources=".length()).split(",");
+            if (a.startsWith("--read-ratio="))
+                t.readRatio = Double.parseDouble(a.substring("--read-ratio=".length()));
+            if (a.startsWith("--delay="))
+                t.delayFraction = Double.parseDouble(a.substring("--delay=".length()));
+            if (a.startsWith("--crash="))
+                t.crashFraction = Double.parseDouble(a.substring("--crash=".length()));
+            if (a.startsWith("--restart="))
+                t.restartMs = Long.parseLong(a.substring("--restart=".length()));
+            if (a.startsWith("--rep-interval="))
+                t.repIntervalMs = Long.parseLong(a.substring("--rep-interval=".length()));
+            if (a.startsWith("--sched=") || a.startsWith("--aging=") || a.startsWith("--weights="))
+                t.schedArgs.add(a);
+            if (a.startsWith("--urgent="))
+                t.urgentFraction = Double.parseDouble(a.substring("--urgent=".length()));
+            if ("--unix".equals(a))
+                t.unix = true;
+            if (a.startsWith("--rep="))
+                t.repMode = a.substring("--rep=".length());
+            if (a.startsWith("--csv="))
+                t.csv = Paths.get(a.substring("--csv=".length()));
+            if (a.startsWith("--json="))
+                t.json = Paths.get(a.substring("--json=".length()));
+        }
+        t.wireFormat = WireFormat.fromArgs(args);
+        t.threadMode = ThreadMode.fromArgs(args);
+        t.run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        // só avisos e erros: as linhas por mensagem já são DEBUG, mas o INFO de cada nó também polui a saída
+        Log.setLevel(Log.Level.WARN);
+
+        dataDir = Files.createTempDirectory("loadtest");
+        Path logDir = Files.createTempDirectory("loadtest-coord");
+        coordSocket = logDir.resolve("coord.sock");
+        Thread coord = new Thread(() -> {
+            try {
+                List<String> coordArgs = new ArrayList<>(List.of("--port=" + port, "--rep-interval=" + repIntervalMs,
+                        "--rep=" + repMode, "--log-dir=" + logDir, "--unix=" + coordSocket));
+                coordArgs.addAll(schedArgs);
+                CoordinatorServer.main(coordArgs.toArray(new String[0]));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "coordinator");
+        coord.setDaemon(true);
+        coord.start();
+        waitForPort(port);
+        // o socket Unix é aberto logo depois da porta TCP
+        for (int i = 0; unix && !Files.exists(coordSocket) && i < 100; i++)
+            Thread.sleep(10);
+
+        int delayed = (int) Math.round(nodes * delayFraction);
+        int crashing = (int) Math.round(nodes * crashFraction);
+        urgentFromPid = nodes - (int) Math.round(nodes * urgentFraction) + 1;
+        List<Thread> drivers = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            int pid = i + 1;
+            boolean delay = i < delayed;
+            boolean crash = i >= delayed && i < delayed + crashing;
+            drivers.add(threadMode.start("load-" + pid, () -> drive(pid, delay, crash)));
+        }
+
+        long t0 = System.nanoTime();
+        Thread.sleep(durationSec * 1000L);
+        running = false;
+        for (Thread d : drivers)
+            d.join(10_000);
+        double seconds = (System.nanoTime() - t0) / 1e9;
+
+        report(seconds, delayed, crashing);
+    }
+
+    // chegadas de Poisson para um nó; recria o nó depois de um crash simulado
+    private void drive(int pid, boolean delay, boolean crash) {
+        Random rand = new Random(pid);
+        long intervalNanos = (long) (1e9 / rate);
+        NodeClient client = null;
+        long next = System.nanoTime();
+        try {
+            while (running) {
+                if (client == null) {
+                    client = open(pid, delay, crash);
+                    crash = false; // a nova encarnação não cai de novo
+                    next = System.nanoTime();
+                }
+                next += (long) (-Math.log(1 - rand.nextDouble()) * intervalNanos);
+                long wait = next - System.nanoTime();
+                if (wait > 0)
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                if (!running)
+                    break;
+                try {
+                    client.runOnce(rand);
+                    endToEnd.record(System.nanoTime() - next);
+                    counts.merge("ops", 1L, Long::sum);
+                } catch (IllegalStateException e) {
+                    if (!client.isClosed())
+                        throw e;
+                    counts.merge("crashes", 1L, Long::sum);
+                    collect(client);
+                    client = null;
+                    if (restartMs <= 0)
+                        return;
+                    Thread.sleep(restartMs);
+                }
+            }
+        } catch (InterruptedException e) {
+            // encerrado
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[LOAD] nó " + pid + ": " + e);
+            counts.merge("errors", 1L, Long::sum);
+        }
+        if (client != null) {
+            collect(client);
+            client.close();
+        }
+    }
+
+    private NodeClient open(int pid, boolean delay, boolean crash) throws IOException {
+        NodeOptions o = new NodeOptions();
+        o.pid = pid;
+        o.port = port;
+        o.resources = resources;
+        o.readRatio = readRatio;
+        o.simulateDelay = delay;
+        o.simulateCrash = crash;
+        o.exitOnCrash = false;
+        o.wireFormat = wireFormat;
+        o.threadMode = threadMode;
+        o.dataDir = dataDir;
+        if (pid >= urgentFromPid)
+            o.priority = 1;
+        if (unix)
+            o.coordinators = new String[] { "unix:" + coordSocket };
+        return new NodeClient(o);
+    }
+
+    private void collect(NodeClient client) {
+        if (client.pid >= urgentFromPid)
+            grantUrgent.add(client.grantLatency());
+        else
+            grant.add(client.grantLatency());
+        doOp.add(client.opLatency());
+        counts.merge("messages", client.messageCount(), Long::sum);
+    }
+
+    private void report(double seconds, int delayed, int crashing) throws IOException {
+        long ops = counts.getOrDefault("ops", 0L);
+        System.out.printf("nós=%d (delay=%d crash=%d) taxa=%.1f/s por nó  duração=%.1fs  codec=%s%n", nodes, delayed,
+                crashing, rate, seconds, wireFormat);
+        System.out.printf("operações=%d  vazão=%.0f ops/s  msgs=%d  crashes=%d  erros=%d%n", ops, ops / seconds,
+                counts.getOrDefault("messages", 0L), counts.getOrDefault("crashes", 0L),
+                counts.getOrDefault("errors", 0L));
+        System.out.println("métrica            amostras  média(ms)  p50(ms)  p99(ms)  p99.9(ms)  máx(ms)");
+        Map<String, LatencyHistogram> metrics = new LinkedHashMap<>();
+        metrics.put("request-grant", grant);
+        if (grantUrgent.count() > 0)
+            metrics.put("request-grant(urg)", grantUrgent);
+        metrics.put("doop-state", doOp);
+        metrics.put("operação", endToEnd);
+        for (Map.Entry<String, LatencyHistogram> m : metrics.entrySet()) {
+            LatencyHistogram h = m.getValue();
+            System.out.printf("%-18s %-9d %-10.2f %-8.2f %-8.2f %-10.2f %.2f%n", m.getKey(), h.count(), h.mean() / 1e6,
+                    h.percentile(50) / 1e6, h.percentile(99) / 1e6, h.percentile(99.9) / 1e6, h.max() / 1e6);
+        }
+
+        if (csv != null) {
+            StringBuilder sb = new StringBuilder(
+                    "metric,count,mean_ms,p50_ms,p99_ms,p999_ms,max_ms,throughput_ops_s,nodes,rate_per_node\n");
+            for (Map.Entry<String, LatencyHistogram> m : metrics.entrySet()) {
+                LatencyHistogram h = m.getValue();
+                sb.append(String.format(Locale.ROOT, "%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.1f,%d,%.1f%n", m.getKey(),
+                        h.count(), h.mean() / 1e6, h.percentile(50) / 1e6, h.percentile(99) / 1e6,
+                        h.percentile(99.9) / 1e6, h.max() / 1e6, ops / seconds, nodes, rate));
+            }
+            Files.write(csv, sb.toString().getBytes(StandardCharsets.UTF_8));
+            System.out.println("CSV gravado em " + csv);
+        }
+        if (json != null) {
+            JsonObject root = new JsonObject();
+            root.addProperty("nodes", nodes);
+            root.addProperty("ratePerNode", rate);
+            root.addProperty("durationSec", seconds);
+            root.addProperty("delayedNodes", delayed);
+            root.addProperty("crashingNodes", crashing);
+            root.addProperty("operations", ops);
+            root.addProperty("throughput", ops / seconds);
+            counts.forEach(root::addProperty);
+            JsonObject lat = new JsonObject();
+            for (Map.Entry<String, LatencyHistogram> m : metrics.entrySet()) {
+                LatencyHistogram h = m.getValue();
+                JsonObject o = new JsonObject();
+                o.addProperty("count", h.count());
+                o.addProperty("meanMs", h.mean() / 1e6);
+                o.addProperty("p50Ms", h.percentile(50) / 1e6);
+                o.addProperty("p99Ms", h.percentile(99) / 1e6);
+                o.addProperty("p999Ms", h.percentile(99.9) / 1e6);
+                o.addProperty("maxMs", h.max() / 1e6);
+                lat.add(m.getKey(), o);
+            }
+            root.add("latency", lat);
+            Files.write(json, new GsonBuilder().setPrettyPrinting().create().toJson(root)
+                    .getBytes(StandardCharsets.UTF_8));
+            System.out.println("JSON gravado em " + json);
+        }
+    }
+
+    private static void waitForPort(int port) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try {
+                new Socket("127.0.0.1", port).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("coordenador não subiu na porta " + port);
+    }
+}
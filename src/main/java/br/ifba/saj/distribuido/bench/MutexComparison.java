@@ -0,0 +1,113 @@
+package br.ifba.saj.distribuido.bench;
+
+import br.ifba.saj.distribuido.coordinator.CoordinatorServer;
+import br.ifba.saj.distribuido.log.Log;
+import br.ifba.saj.distribuido.node.*;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.file.*;
+import java.util.*;
+
+// Compara, na mesma JVM, a exclusão mútua centralizada (coordenador) com a descentralizada
+// (Ricart–Agrawala entre os nós) e com o caminho rápido do coordenador (BATCH_OP, até
+// --pipeline lotes em voo por nó). Cada nó faz M entradas na RC em sequência; ao final são
+// impressos mensagens por entrada (enviadas+recebidas, somando todos os nós), espera média
+// até entrar na RC, vazão e o contador final.
+//
+// uso: MutexComparison [nós=5] [entradas por nó=50] [porta=5200]
+public class MutexComparison {
+
+    public static void main(String[] args) throws Exception {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 5200;
+
+        // só avisos e erros: as linhas por mensagem já são DEBUG, mas o INFO de cada nó também polui a saída
+        Log.setLevel(Log.Level.WARN);
+
+        Thread coord = new Thread(() -> {
+            try {
+                CoordinatorServer.main(new String[] { "--port=" + port, "--rep-interval=1",
+                        "--log-dir=" + Files.createTempDirectory("coord-log") });
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "coordinator");
+        coord.setDaemon(true);
+        coord.start();
+        waitForPort(port);
+
+        List<String> results = new ArrayList<>();
+        results.add(run("centralizado", false, false, nodes, ops, port, 1));
+        results.add(run("ricart-agrawala", true, false, nodes, ops, port, 1001));
+        results.add(run("pipeline", false, true, nodes, ops, port, 2001));
+
+        System.out.println("modo              nós  entradas  msgs/entrada  espera média(ms)  entradas/s  contador final");
+        results.forEach(System.out::println);
+        System.exit(0);
+    }
+
+    private static String run(String name, boolean decentralized, boolean pipelined, int nodes, int ops, int port, int firstPid)
+            throws Exception {
+        Path dataDir = Files.createTempDirectory("mutex-" + name);
+        List<NodeClient> clients = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            NodeOptions o = new NodeOptions();
+            o.pid = firstPid + i;
+            o.port = port;
+            o.decentralized = decentralized;
+            o.dataDir = dataDir;
+            clients.add(new NodeClient(o));
+        }
+        if (decentralized) {
+            // espera todos se conectarem entre si
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (clients.stream().anyMatch(c -> c.peerCount() < nodes - 1)
+                    && System.currentTimeMillis() < deadline)
+                Thread.sleep(20);
+        } else {
+            Thread.sleep(300);
+        }
+
+        long msgsBefore = clients.stream().mapToLong(NodeClient::messageCount).sum();
+        long t0 = System.nanoTime();
+        List<Thread> workers = new ArrayList<>();
+        for (NodeClient c : clients) {
+            workers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    if (pipelined)
+                        c.runPipelined(ops);
+                    else
+                        c.runClosedLoop(ops);
+                } catch (InterruptedException ignored) {
+                }
+            }));
+        }
+        for (Thread w : workers)
+            w.join();
+        double seconds = (System.nanoTime() - t0) / 1e9;
+        Thread.sleep(200); // deixa chegar os últimos STATEs
+
+        long msgs = clients.stream().mapToLong(NodeClient::messageCount).sum() - msgsBefore;
+        long entries = clients.stream().mapToLong(NodeClient::entryCount).sum();
+        double waitMs = clients.stream().mapToLong(NodeClient::totalWaitNanos).sum() / 1e6 / Math.max(1, entries);
+        int counter = clients.stream().mapToInt(NodeClient::getCounter).max().orElse(0);
+        clients.forEach(NodeClient::close);
+
+        return String.format("%-17s %-4d %-9d %-13.1f %-17.2f %-11.0f %d", name, nodes, entries,
+                (double) msgs / Math.max(1, entries), waitMs, entries / seconds, counter);
+    }
+
+    private static void waitForPort(int port) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try {
+                new Socket("127.0.0.1", port).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("coordenador não subiu na porta " + port);
+    }
+}
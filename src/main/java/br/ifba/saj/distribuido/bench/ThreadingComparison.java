@@ -0,0 +1,155 @@
+package br.ifba.saj.distribuido.bench;
+
+import br.ifba.saj.distribuido.model.*;
+import br.ifba.saj.distribuido.protocol.JsonCodec;
+import com.google.gson.Gson;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Compara o coordenador com threads de plataforma e com virtual threads.
+// Para cada modo sobe um CoordinatorServer em processo filho, conecta N nós "crus" (JOIN),
+// dispara K DO_OPs (cada um gera N envios de STATE: tempestade de broadcast) e mede
+// tempo de conexão, tempo até todos receberem o último STATE, pico de threads e de RSS do coordenador.
+//
+// uso: ThreadingComparison [nós=500] [ops=20] [porta=5100]
+public class ThreadingComparison {
+    private static final Gson gson = new Gson();
+
+    public static void main(String[] args) throws Exception {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 5100;
+
+        List<String> results = new ArrayList<>();
+        for (ThreadMode mode : ThreadMode.values()) {
+            results.add(run(mode, nodes, ops, port));
+        }
+        System.out.println();
+        System.out.println("modo      nós    ops   conexão(ms)  tempestade(ms)  threads(pico)  RSS(pico, MB)");
+        results.forEach(System.out::println);
+    }
+
+    private static String run(ThreadMode mode, int nodes, int ops, int port) throws Exception {
+        List<String> cmd = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                "br.ifba.saj.distribuido.coordinator.CoordinatorServer", "--port=" + port,
+                // lease longo: o nó 1 segura o recurso durante toda a tempestade
+                "--lease=600000", "--log-dir=" + Files.createTempDirectory("coord-log")));
+        if (mode == ThreadMode.VIRTUAL)
+            cmd.add("--virtual");
+        Process coord = new ProcessBuilder(cmd).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        ProcSampler sampler = new ProcSampler(coord.pid());
+        Thread samplerThread = Thread.ofPlatform().daemon().start(sampler);
+        try {
+            waitForPort(port);
+
+            CountDownLatch lastState = new CountDownLatch(nodes);
+            CompletableFuture<Long> grantToken = new CompletableFuture<>();
+            List<Socket> sockets = new ArrayList<>();
+            long t0 = System.nanoTime();
+            for (int i = 1; i <= nodes; i++) {
+                Socket s = new Socket("127.0.0.1", port);
+                sockets.add(s);
+                PrintWriter out = new PrintWriter(s.getOutputStream(), true);
+                out.println(gson.toJson(message(MessageType.JOIN, i, 1, "{}")));
+                // leitor do nó cru: conta quando chega o STATE do último DO_OP
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+                Thread.ofVirtual().start(() -> {
+                    try {
+                        String line;
+                        while ((line = in.readLine()) != null) {
+                            Message m = JsonCodec.decode(line);
+                            if (m.getType() == MessageType.STATE && m.getCounter() == ops)
+                                lastState.countDown();
+                            if (m.getType() == MessageType.GRANT)
+                                grantToken.complete(m.getLong(PayloadField.TOKEN));
+                        }
+                    } catch (IOException ignored) {
+                    }
+                });
+            }
+            long connectMs = (System.nanoTime() - t0) / 1_000_000;
+            Thread.sleep(500); // espera os JOINs serem processados
+
+            // o nó 1 obtém o recurso e dispara os DO_OPs com o token da concessão
+            PrintWriter driver = new PrintWriter(sockets.get(0).getOutputStream(), true);
+            driver.println(gson.toJson(message(MessageType.REQUEST, 1, 1, "{}")));
+            long token = grantToken.get(10, TimeUnit.SECONDS);
+            long t1 = System.nanoTime();
+            for (int k = 1; k <= ops; k++) {
+                driver.println(gson.toJson(message(MessageType.DO_OP, 1, k, "{\"delta\":1,\"token\":" + token + "}")));
+            }
+            boolean done = lastState.await(60, TimeUnit.SECONDS);
+            long stormMs = (System.nanoTime() - t1) / 1_000_000;
+
+            for (Socket s : sockets)
+                s.close();
+            return String.format("%-9s %-6d %-5d %-12d %-15s %-14d %d", mode, nodes, ops, connectMs,
+                    done ? String.valueOf(stormMs) : "timeout", sampler.peakThreads.get(), sampler.peakRssKb.get() / 1024);
+        } finally {
+            samplerThread.interrupt();
+            coord.destroy();
+            coord.waitFor(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Message message(MessageType type, int pid, int clock, String payload) {
+        Message m = new Message();
+        m.setType(type);
+        m.setPid(pid);
+        m.setClock(clock);
+        m.setPayload(payload);
+        return m;
+    }
+
+    private static void waitForPort(int port) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try {
+                new Socket("127.0.0.1", port).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IllegalStateException("coordenador não subiu na porta " + port);
+    }
+
+    // lê /proc/<pid>/status (Linux) periodicamente guardando os picos
+    private static class ProcSampler implements Runnable {
+        private final Path status;
+        final AtomicLong peakThreads = new AtomicLong();
+        final AtomicLong peakRssKb = new AtomicLong();
+
+        ProcSampler(long pid) {
+            this.status = Paths.get("/proc", String.valueOf(pid), "status");
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    for (String line : Files.readAllLines(status)) {
+                        if (line.startsWith("Threads:"))
+                            peakThreads.accumulateAndGet(parse(line), Math::max);
+                        if (line.startsWith("VmRSS:"))
+                            peakRssKb.accumulateAndGet(parse(line), Math::max);
+                    }
+                    Thread.sleep(50);
+                } catch (IOException | InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private static long parse(String line) {
+            return Long.parseLong(line.replaceAll("[^0-9]", ""));
+        }
+    }
+}
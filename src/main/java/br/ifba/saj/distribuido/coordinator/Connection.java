@@ -0,0 +1,19 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import br.ifba.saj.distribuido.model.Message;
+import br.ifba.saj.distribuido.protocol.*;
+
+// Abstração de uma conexão com um nó, independente do transporte (bloqueante ou NIO).
+interface Connection {
+
+    // serializa no formato negociado com o nó e envia; pode ser chamado de qualquer thread
+    void send(Message msg);
+
+    // envia bytes já serializados (compartilhados entre destinos no broadcast)
+    void sendEncoded(EncodedMessage msg);
+
+    // formato de saída negociado no JOIN (a entrada aceita os dois formatos)
+    void setWireFormat(WireFormat format);
+
+    void close();
+}
@@ -0,0 +1,345 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import br.ifba.saj.distribuido.log.Log;
+import br.ifba.saj.distribuido.model.*;
+import br.ifba.saj.distribuido.protocol.EncodedMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32C;
+
+// Log durável do coordenador. Cada concessão ou DO_OP gera um registro com o estado completo
+// do recurso (contador, último token de fencing) e o relógio de Lamport, então a recuperação
+// só precisa do último registro de cada recurso. Os pedidos na fila não entram no log: depois
+// de uma queda os nós reenviam os REQUESTs pendentes.
+// As mudanças vão para um buffer em memória; a thread de commit grava e faz fsync de tudo que
+// acumulou em syncMs (group commit) e só então repassa os registros às standbys como LOG.
+// As respostas do núcleo aos nós (GRANT, STATE, REVOKE...) passam por afterDurable e só saem
+// depois do fsync de tudo que já foi registrado, na ordem em que o núcleo as fez; assim nenhum
+// nó recebe um token ou valor que uma queda apagaria. Com asyncAcks (--log-async) saem na hora
+// e uma queda pode perder até syncMs de mudanças já confirmadas.
+// A cada COMPACT_EVERY registros o arquivo é reescrito só com o último estado de cada recurso
+// (arquivo temporário + rename atômico).
+// Registro: crc(4) len(2) | clock(8) counter(4) lastToken(8) nome(utf-8)
+// len é sem sinal (até 65535) e cobre a parte depois da barra; o núcleo só aceita nomes de até
+// Message.MAX_RESOURCE_BYTES, bem abaixo disso.
+// Se a gravação falha, o lote volta para a fila, o arquivo é cortado no último commit e a thread
+// tenta de novo depois de RETRY_MS.
+class CoordinatorLog {
+    static final int COMPACT_EVERY = 10_000;
+    private static final int FIXED_SIZE = 8 + 4 + 8;
+    private static final int MAX_LEN = 0xFFFF;
+    private static final long RETRY_MS = 1000;
+
+    record Entry(String resource, int counter, long lastToken, long clock) {
+    }
+
+    private final Path path;
+    private final Path tmp;
+    private final long syncMs;
+    private final int replicaId;
+    private final boolean asyncAcks;
+    private FileChannel channel;
+
+    // mudanças ainda não gravadas (protegidas por this)
+    private List<Entry> pending = new ArrayList<>();
+    // envios retidos, também protegidos por this: waiting espera pending; committing espera o lote
+    // que a thread de commit está gravando (null quando não há lote em gravação)
+    private List<Runnable> waiting = new ArrayList<>();
+    private List<Runnable> committing;
+    // último estado gravado de cada recurso e standbys inscritas (protegidos por commitLock)
+    private final Object commitLock = new Object();
+    private final Map<String, Entry> latest = new HashMap<>();
+    private final List<Connection> subscribers = new CopyOnWriteArrayList<>();
+    private final ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+    private long records;
+
+    CoordinatorLog(Path path, long syncMs, int replicaId, boolean asyncAcks) throws IOException {
+        this.path = path;
+        this.tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        this.syncMs = syncMs;
+        this.replicaId = replicaId;
+        this.asyncAcks = asyncAcks;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        replay();
+    }
+
+    void start(ThreadMode threadMode) {
+        threadMode.start("coord-log-commit", this::commitLoop);
+    }
+
+    // estado recuperado do arquivo: último registro de cada recurso
+    Collection<Entry> recovered() {
+        synchronized (commitLock) {
+            return new ArrayList<>(latest.values());
+        }
+    }
+
+    // chamado pelo núcleo do coordenador: só enfileira
+    synchronized void append(String resource, int counter, long lastToken, long clock) {
+        if (!Message.isValidResource(resource))
+            throw new IllegalArgumentException("nome de recurso longo demais para o log: " + resource.length()
+                    + " chars");
+        if (pending.isEmpty())
+            notifyAll();
+        pending.add(new Entry(resource, counter, lastToken, clock));
+    }
+
+    // chamado pelo núcleo: executa o envio já se nada registrado espera fsync, senão o retém até
+    // o commit do que foi registrado antes dele
+    void afterDurable(Runnable send) {
+        if (!asyncAcks) {
+            synchronized (this) {
+                if (!pending.isEmpty()) {
+                    waiting.add(send);
+                    return;
+                }
+                if (committing != null) {
+                    committing.add(send);
+                    return;
+                }
+            }
+        }
+        send.run();
+    }
+
+    // standby recém-conectada: recebe o estado atual e depois cada lote gravado
+    void subscribe(Connection standby) {
+        synchronized (commitLock) {
+            for (Entry e : latest.values())
+                standby.send(toMessage(e));
+            subscribers.add(standby);
+        }
+    }
+
+    void unsubscribe(Connection standby) {
+        subscribers.remove(standby);
+    }
+
+    // esta réplica deixou de ser a primária: as standbys inscritas procuram a nova
+    void dropSubscribers() {
+        for (Connection standby : subscribers) {
+            subscribers.remove(standby);
+            standby.close();
+        }
+    }
+
+    // LOG sem registro: termo da primária e instante do envio, que a standby devolve
+    void heartbeat(long clock, long term) {
+        if (subscribers.isEmpty())
+            return;
+        Message hb = new Message();
+        hb.setType(MessageType.LOG);
+        hb.setPid(replicaId);
+        hb.setClock(clock);
+        hb.setLong(PayloadField.TERM, term);
+        hb.setLong(PayloadField.HEARTBEAT, System.nanoTime());
+        publish(List.of(new EncodedMessage(hb)));
+    }
+
+    private void commitLoop() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (pending.isEmpty())
+                        wait();
+                }
+                Thread.sleep(syncMs);
+                try {
+                    commit();
+                } catch (IOException | RuntimeException e) {
+                    // o lote voltou para pending: nada se perde, só atrasa
+                    Log.error("[COORD] Erro ao gravar log, nova tentativa em " + RETRY_MS + "ms: " + e);
+                    Thread.sleep(RETRY_MS);
+                }
+            }
+        } catch (InterruptedException e) {
+            // encerrado
+        }
+    }
+
+    private void commit() throws IOException {
+        synchronized (commitLock) {
+            List<Entry> batch;
+            synchronized (this) {
+                batch = pending;
+                pending = new ArrayList<>();
+                committing = waiting;
+                waiting = new ArrayList<>();
+            }
+            long committed = channel.position();
+            try {
+                for (Entry e : batch) {
+                    if (buf.remaining() < 2 * (FIXED_SIZE + 6 + e.resource.length() * 3))
+                        writeBuffer(channel);
+                    putRecord(e);
+                }
+                writeBuffer(channel);
+                channel.force(false);
+            } catch (IOException | RuntimeException e) {
+                rollback(batch, committed);
+                throw e;
+            }
+            for (Entry e : batch)
+                latest.put(e.resource, e);
+            records += batch.size();
+            if (records >= COMPACT_EVERY)
+                compact();
+
+            List<EncodedMessage> out = new ArrayList<>(batch.size());
+            for (Entry e : batch)
+                out.add(new EncodedMessage(toMessage(e)));
+            publish(out);
+            releaseHeld();
+        }
+    }
+
+    // lote gravado: libera os envios retidos por ele. Roda sob o lock de pending para que um
+    // envio novo do núcleo não passe à frente dos retidos
+    private synchronized void releaseHeld() {
+        for (Runnable send : committing) {
+            try {
+                send.run();
+            } catch (RuntimeException e) {
+                Log.warn("[COORD] Erro ao enviar resposta retida: " + e);
+            }
+        }
+        committing = null;
+    }
+
+    // devolve o lote à frente da fila e descarta o que foi escrito dele; chamado com commitLock
+    private void rollback(List<Entry> batch, long committed) {
+        buf.clear();
+        synchronized (this) {
+            batch.addAll(pending);
+            pending = batch;
+            committing.addAll(waiting);
+            waiting = committing;
+            committing = null;
+        }
+        try {
+            channel.truncate(committed);
+            channel.position(committed);
+        } catch (IOException e) {
+            // o replay descarta a cauda inválida se o corte também falhou
+            Log.warn("[COORD] Não foi possível cortar " + path + ": " + e.getMessage());
+        }
+    }
+
+    private void publish(List<EncodedMessage> msgs) {
+        for (Connection standby : subscribers) {
+            try {
+                for (EncodedMessage m : msgs)
+                    standby.sendEncoded(m);
+            } catch (RuntimeException e) {
+                Log.warn("[COORD] Standby desconectada: " + e.getMessage());
+                subscribers.remove(standby);
+            }
+        }
+    }
+
+    // reescreve o arquivo só com o último estado de cada recurso; chamado com commitLock.
+    // Só troca de arquivo depois do rename: se algo falha, o log antigo continua em uso
+    private void compact() throws IOException {
+        FileChannel next = null;
+        try {
+            next = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            for (Entry e : latest.values()) {
+                if (buf.remaining() < 2 * (FIXED_SIZE + 6 + e.resource.length() * 3))
+                    writeBuffer(next);
+                putRecord(e);
+            }
+            writeBuffer(next);
+            next.force(false);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            buf.clear();
+            try {
+                if (next != null)
+                    next.close();
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+            }
+            Log.warn("[COORD] Compactação do log falhou, seguindo no arquivo atual: " + e);
+            return;
+        }
+        channel.close();
+        channel = next;
+        records = latest.size();
+    }
+
+    private void putRecord(Entry e) {
+        byte[] name = e.resource.getBytes(StandardCharsets.UTF_8);
+        int start = buf.position();
+        int len = FIXED_SIZE + name.length;
+        if (len > MAX_LEN)
+            throw new IllegalArgumentException("registro de " + len + " bytes não cabe no campo de 16 bits");
+        buf.putInt(0).putShort((short) len);
+        buf.putLong(e.clock).putInt(e.counter).putLong(e.lastToken).put(name);
+        CRC32C crc = new CRC32C();
+        crc.update(buf.array(), start + 4, 2 + len);
+        buf.putInt(start, (int) crc.getValue());
+    }
+
+    private void writeBuffer(FileChannel ch) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining())
+            ch.write(buf);
+        buf.clear();
+    }
+
+    // lê o arquivo até o primeiro registro inválido e corta o resto (escrita interrompida)
+    private void replay() throws IOException {
+        synchronized (commitLock) {
+            long size = channel.size();
+            ByteBuffer in = ByteBuffer.allocate((int) size);
+            while (in.hasRemaining() && channel.read(in, in.position()) >= 0) {
+            }
+            in.flip();
+            long valid = 0;
+            while (in.remaining() >= 6) {
+                int start = in.position();
+                int crc = in.getInt();
+                int len = Short.toUnsignedInt(in.getShort());
+                if (len < FIXED_SIZE || in.remaining() < len)
+                    break;
+                CRC32C check = new CRC32C();
+                check.update(in.array(), start + 4, 2 + len);
+                if (crc != (int) check.getValue())
+                    break;
+                long clock = in.getLong();
+                int counter = in.getInt();
+                long token = in.getLong();
+                String name = new String(in.array(), in.position(), len - FIXED_SIZE, StandardCharsets.UTF_8);
+                in.position(in.position() + len - FIXED_SIZE);
+                latest.put(name, new Entry(name, counter, token, clock));
+                valid = in.position();
+                records++;
+            }
+            if (valid < size) {
+                Log.warn("[COORD] Descartando " + (size - valid) + " bytes inválidos no fim de " + path);
+                channel.truncate(valid);
+                channel.force(false);
+            }
+            channel.position(valid);
+        }
+    }
+
+    private Message toMessage(Entry e) {
+        Message m = new Message();
+        m.setType(MessageType.LOG);
+        m.setPid(replicaId);
+        m.setClock(e.clock);
+        m.setResource(e.resource);
+        m.setCounter(e.counter);
+        m.setLong(PayloadField.TOKEN, e.lastToken);
+        return m;
+    }
+}
@@ -1,195 +1,1035 @@
 package br.ifba.saj.distribuido.coordinator;
 
+import br.ifba.saj.distribuido.log.Log;
+import br.ifba.saj.distribuido.metrics.*;
 import br.ifba.saj.distribuido.model.*;
-import com.google.gson.Gson;
+import br.ifba.saj.distribuido.protocol.*;
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 //Foi reajustada com a adição de registro de sockets dos nós no JOIN, 
 //broadcast assíncrono de STATE para todos os nós e envio de ROLLBACK a todos os nós. 
+//Transporte selecionável: thread por conexão (padrão) ou event loop NIO (--nio);
+//threads de plataforma (padrão) ou virtual threads (--virtual).
+//Todo o estado dos recursos pertence a uma única thread, o núcleo (ver core abaixo).
 public class CoordinatorServer {
-    private static final int PORT = 5000;
-    private static int sharedCounter = 0;
-    private static boolean busy = false;
+    private static int port = 5000;
     private static LamportClock clock = new LamportClock();
-    private static PriorityBlockingQueue<Request> requestQueue = new PriorityBlockingQueue<>();
 
-    // map de pid -> socket + writer (para broadcast)
-    private static final ConcurrentMap<Integer, Socket> nodeSockets = new ConcurrentHashMap<>();
-    private static final ConcurrentMap<Integer, PrintWriter> nodeWriters = new ConcurrentHashMap<>();
+    // recursos críticos por nome, cada um com sua fila e detentor; o contador
+    // original é o recurso padrão
+    private static final ConcurrentMap<String, ResourceLock> resources = new ConcurrentHashMap<>();
+    // ordem das filas (--sched=lamport|wfq|priority, --weights=pid:peso,..., --aging=ms)
+    private static SchedulingPolicy schedPolicy = SchedulingPolicy.LAMPORT;
 
-    // executor para replicação assíncrona
-    private static final ExecutorService repExecutor = Executors.newCachedThreadPool();
+    static {
+        resources.put(Message.DEFAULT_RESOURCE,
+                new ResourceLock(Message.DEFAULT_RESOURCE, CoordinatorServer::logChange));
+    }
 
-    private static class Request implements Comparable<Request> {
-        int lamportTime;
-        int pid;
-        Socket socket;
+    // métricas: gravadas sem alocação no caminho REQUEST/GRANT/RELEASE; expostas via JMX e,
+    // com --metrics-port=N, em texto Prometheus
+    private static final MetricsRegistry metrics = new MetricsRegistry("coord");
+    private static final LatencyHistogram grantWait = metrics.histogram("grant_wait_seconds",
+            "Espera do pedido na fila até a concessão");
+    private static final LatencyHistogram csHold = metrics.histogram("cs_hold_seconds",
+            "Tempo entre a concessão e o RELEASE");
+    private static final LongAdder grants = metrics.counter("grants_total",
+            "Concessões feitas");
+    private static final LongAdder leasesExpired = metrics.counter(
+            "leases_expired_total", "Concessões revogadas por lease vencido");
+    private static final LongAdder nodesSuspected = metrics.counter("nodes_suspected_total",
+            "Nós removidos pelo detector de falhas");
+    private static final LongAdder requestsPurged = metrics.counter("requests_purged_total",
+            "Pedidos retirados da fila por conexão morta ou fechada");
+    private static final LongAdder leasesReclaimed = metrics.counter("leases_reclaimed_total",
+            "Concessões recuperadas de conexão morta ou fechada");
+    private static final LongAdder syncs = metrics.counter("sync_total",
+            "Pedidos de anti-entropia (JOIN com versão e SYNC)");
+    private static final LongAdder syncStates = metrics.counter("sync_states_total",
+            "STATEs enviados em respostas de anti-entropia");
+    private static final LongAdder crdtMerges = metrics.counter("crdt_merges_total",
+            "Estados CRDT recebidos dos nós");
+    private static final LongAdder syncSnapshots = metrics.counter("sync_snapshots_total",
+            "Respostas de anti-entropia com todos os recursos (versão fora do log)");
+    // tarefas de replicação submetidas e ainda não terminadas
+    private static final AtomicLong repBacklog = new AtomicLong();
 
-        Request(int lamportTime, int pid, Socket socket) {
-            this.lamportTime = lamportTime;
-            this.pid = pid;
-            this.socket = socket;
-        }
+    // núcleo do gerenciador de locks: uma única thread ("coord-core") aplica, em ordem, tudo que
+    // mexe nos recursos (JOIN, REQUEST, DO_OP, BATCH_OP, RELEASE, MARKER, lease vencido, desconexão,
+    // snapshot e rollback). As threads de I/O só copiam a mensagem para um slot pré-alocado do
+    // buffer MPSC; os envios vão para a fila de saída de cada conexão, então o núcleo nunca
+    // bloqueia e a ordem das concessões é a ordem de chegada no buffer
+    private static final int CORE_RING_SIZE = 8192;
+    private static final MpscRingBuffer<Command> core = new MpscRingBuffer<>(CORE_RING_SIZE, Command::new);
+    // o núcleo nunca publica no próprio buffer: com ele cheio, esperaria por si mesmo
+    private static volatile Thread coreThread;
 
-        @Override
-        public int compareTo(Request other) {
-            if (this.lamportTime == other.lamportTime)
-                return Integer.compare(this.pid, other.pid);
-            return Integer.compare(this.lamportTime, other.lamportTime);
-        }
+    // slot do buffer do núcleo: uma mensagem recebida (copiada, o leitor reaproveita a dele) ou uma tarefa
+    private static final class Command {
+        final Message msg = new Message();
+        Connection conn;
+        Runnable task;
     }
 
+    // map de pid -> conexão (para broadcast)
+    private static final ConcurrentMap<Integer, Connection> nodeConnections = new ConcurrentHashMap<>();
+    // pid -> "host:porta" dos nós em modo descentralizado (o coordenador só mantém a lista de membros)
+    private static final ConcurrentMap<Integer, String> peerAddresses = new ConcurrentSkipListMap<>();
+
+    // modelo de threads (--virtual) e executor para replicação assíncrona
+    private static ThreadMode threadMode = ThreadMode.PLATFORM;
+    private static ExecutorService repExecutor = threadMode.newTaskExecutor();
+
+    // no modo virtual, limite de envios simultâneos por nó destino (evita tempestade de tarefas)
+    private static final int MAX_INFLIGHT_PER_TARGET = 8;
+    private static final ConcurrentMap<Integer, Semaphore> targetPermits = new ConcurrentHashMap<>();
+
+    // replicação de STATE com coalescência e envio em lote (--rep-interval=ms, --rep-batch=N)
+    private static long repIntervalMs = 100;
+    private static int repBatchSize = 256;
+    private static ReplicationOutbox replication;
+
+    // log versionado das mudanças, para a anti-entropia: o nó manda no JOIN (e no SYNC periódico)
+    // a versão em que está em dia e recebe só o que mudou depois. Com --rep=pull não há broadcast:
+    // só quem fez a operação recebe o STATE e os outros nós convergem pelo SYNC
+    private static final OpLog opLog = new OpLog();
+    private static boolean pullReplication = false;
+
+    // contadores CRDT (PN) por recurso, fora dos ResourceLocks: o coordenador só mescla o que os
+    // nós mandam e espalha o estado pela caixa de saída (chave "crdt:" + recurso, coalescida como
+    // os STATEs). Não há fila nem concessão; só o núcleo mexe no mapa
+    private static final Map<String, PnCounter> crdts = new HashMap<>();
+
+    // cada concessão vale por leaseMs (--lease=ms); se o detentor não liberar a tempo, o
+    // recurso é revogado e o token de fencing impede que ele ainda altere o valor
+    private static long leaseMs = 3000;
+    private static final LeaseWheel leaseWheel = new LeaseWheel(50, 512);
+
+    // detector de falhas phi-accrual por pid, para nós que anunciam --heartbeat no JOIN. Acima de
+    // phiThreshold (--phi=N, 0 desliga) o nó é desconectado, os pedidos dele saem das filas e as
+    // concessões que ele segura voltam para o próximo, sem esperar o lease. --hb-pause=ms e
+    // --hb-min-std=ms ajustam a tolerância a pausas e o desvio mínimo
+    private static final long FAILURE_CHECK_MS = 50;
+    private static double phiThreshold = 8.0;
+    private static double heartbeatPauseMs = 500;
+    private static double heartbeatMinStdMs = 50;
+    private static final ConcurrentMap<Integer, PhiAccrualDetector> detectors = new ConcurrentHashMap<>();
+
+    // log durável do estado dos recursos (--log-dir=D, --log-sync=ms, --log-async) e réplicas
+    // (--id=N --replicas=id@host:porta,... [--standby]); sem --replicas o coordenador é único
+    private static int coordId = 1;
+    private static CoordinatorLog coordLog;
+    private static ReplicaGroup replicaGroup;
+
+    // snapshots globais (Chandy–Lamport) a cada snapshotIntervalMs (--snapshot-interval=ms, 0 desliga).
+    // Iniciar um snapshot é uma tarefa do núcleo: tudo que ele processou antes entra no estado
+    // gravado, tudo que vem depois (até o MARKER de cada nó) é estado do canal
+    private static long snapshotIntervalMs = 10_000;
+    private static long epochs = 0;
+    private static GlobalSnapshot activeSnapshot;
+    private static GlobalSnapshot lastSnapshot;
+
+    // uso: CoordinatorServer [--nio] [--virtual] [--port=N] [--rep-interval=ms] [--rep-batch=N] [--rep=push|pull]
+    // [--lease=ms]
+    // [--log-dir=D] [--log-sync=ms] [--log-async] [--id=N --replicas=id@host:porta,... [--standby]] [--snapshot-interval=ms]
+    // [--clock=hlc] [--metrics-port=N] [--log-level=debug|info|warn|error] [--phi=N] [--hb-pause=ms]
+    // [--hb-min-std=ms] [--unix=/caminho] [--sched=lamport|wfq|priority] [--weights=pid:peso,...] [--aging=ms]
+    // --nio: event loop com Selector (uma thread para todas as conexões) em vez de uma thread por nó
+    // --virtual: virtual threads para os handlers de cliente e para a replicação
+    // --unix: também atende nós da mesma máquina num socket de domínio Unix nesse caminho
     public static void main(String[] args) throws IOException {
-        ServerSocket serverSocket = new ServerSocket(PORT);
-        System.out.println("[COORD] Listening on " + PORT);
+        boolean nio = false;
+        boolean standby = false;
+        boolean portSet = false;
+        String replicaList = null;
+        Path logDir = Paths.get(".");
+        long logSyncMs = 5;
+        boolean logAsync = false;
+        int metricsPort = 0;
+        Path unixPath = null;
+        Log.configure(args);
+        for (String a : args) {
+            if (a.startsWith("--metrics-port="))
+                metricsPort = Integer.parseInt(a.substring("--metrics-port=".length()));
+            if ("--nio".equals(a))
+                nio = true;
+            if (a.startsWith("--port=")) {
+                port = Integer.parseInt(a.substring("--port=".length()));
+                portSet = true;
+            }
+            if ("--standby".equals(a))
+                standby = true;
+            if (a.startsWith("--id="))
+                coordId = Integer.parseInt(a.substring("--id=".length()));
+            if (a.startsWith("--replicas="))
+                replicaList = a.substring("--replicas=".length());
+            if (a.startsWith("--unix="))
+                unixPath = Paths.get(a.substring("--unix=".length()));
+            if (a.startsWith("--log-dir="))
+                logDir = Paths.get(a.substring("--log-dir=".length()));
+            if (a.startsWith("--snapshot-interval="))
+                snapshotIntervalMs = Long.parseLong(a.substring("--snapshot-interval=".length()));
+            if (a.startsWith("--log-sync="))
+                logSyncMs = Long.parseLong(a.substring("--log-sync=".length()));
+            if ("--log-async".equals(a))
+                logAsync = true;
+            if (a.startsWith("--rep-interval="))
+                repIntervalMs = Long.parseLong(a.substring("--rep-interval=".length()));
+            if (a.startsWith("--rep-batch="))
+                repBatchSize = Integer.parseInt(a.substring("--rep-batch=".length()));
+            if ("--rep=pull".equals(a))
+                pullReplication = true;
+            if (a.startsWith("--lease="))
+                leaseMs = Long.parseLong(a.substring("--lease=".length()));
+            if (a.startsWith("--phi="))
+                phiThreshold = Double.parseDouble(a.substring("--phi=".length()));
+            if (a.startsWith("--hb-pause="))
+                heartbeatPauseMs = Double.parseDouble(a.substring("--hb-pause=".length()));
+            if (a.startsWith("--hb-min-std="))
+                heartbeatMinStdMs = Double.parseDouble(a.substring("--hb-min-std=".length()));
+        }
+        threadMode = ThreadMode.fromArgs(args);
+        clock = LamportClock.fromArgs(args);
+        schedPolicy = SchedulingPolicy.fromArgs(args);
+        resources.put(Message.DEFAULT_RESOURCE,
+                new ResourceLock(Message.DEFAULT_RESOURCE, CoordinatorServer::logChange, schedPolicy));
+        repExecutor = threadMode.newTaskExecutor();
+        ScheduledExecutorService scheduler = threadMode.newScheduler(1);
+        replication = new ReplicationOutbox(repIntervalMs, repBatchSize, CoordinatorServer::submitToTarget, scheduler,
+                metrics);
+        scheduler.scheduleAtFixedRate(CoordinatorServer::logReplicationStats, 10, 10, TimeUnit.SECONDS);
+        leaseWheel.start(threadMode);
+        metrics.gauge("queue_depth", "Pedidos esperando em todas as filas de recursos",
+                () -> resources.values().stream().mapToLong(ResourceLock::queued).sum());
+        metrics.gauge("core_backlog", "Eventos no buffer do núcleo ainda não processados", core::backlog);
+        metrics.gauge("executor_backlog", "Tarefas de replicação submetidas e não terminadas", repBacklog::get);
+        metrics.gauge("nodes_connected", "Nós conectados", nodeConnections::size);
+        metrics.gauge("log_dropped_total", "Linhas de log descartadas com a fila cheia", Log::droppedCount);
+        JmxExporter.register(metrics, "type=Coordinator,id=" + coordId);
+        if (metricsPort > 0)
+            MetricsHttpServer.start(metricsPort, metrics);
+
+        // estado canônico recuperado do log antes de aceitar qualquer nó
+        coordLog = new CoordinatorLog(logDir.resolve("coord-" + coordId + ".log"), logSyncMs, coordId, logAsync);
+        for (CoordinatorLog.Entry e : coordLog.recovered()) {
+            resource(e.resource()).restore(e.counter(), e.lastToken());
+            clock.update(e.clock());
+            Log.info("[COORD] Recuperado do log: " + e.resource() + " counter=" + e.counter() + " token="
+                    + e.lastToken());
+        }
+        coordLog.start(threadMode);
+        // plataforma mesmo com --virtual: a thread gira um pouco antes de estacionar
+        coreThread = Thread.ofPlatform().name("coord-core").start(() -> core.consume(CoordinatorServer::execute));
+        scheduler.scheduleAtFixedRate(CoordinatorServer::logHeartbeat, ReplicaGroup.HEARTBEAT_INTERVAL_MS,
+                ReplicaGroup.HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (phiThreshold > 0)
+            scheduler.scheduleAtFixedRate(CoordinatorServer::checkFailures, FAILURE_CHECK_MS, FAILURE_CHECK_MS,
+                    TimeUnit.MILLISECONDS);
+        if (snapshotIntervalMs > 0)
+            scheduler.scheduleAtFixedRate(CoordinatorServer::takeSnapshot, snapshotIntervalMs, snapshotIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        if (replicaList != null) {
+            Map<Integer, InetSocketAddress> replicas = ReplicaGroup.parse(replicaList);
+            if (!portSet && replicas.containsKey(coordId))
+                port = replicas.get(coordId).getPort();
+            replicaGroup = new ReplicaGroup(coordId, replicas, standby, logDir.resolve("coord-" + coordId + ".term"),
+                    threadMode, CoordinatorServer::applyLogEntry,
+                    () -> Log.info("[COORD] Atendendo nós na porta " + port),
+                    () -> submit(CoordinatorServer::stepDown));
+            replicaGroup.start();
+        }
+
+        if (nio) {
+            Log.info("[COORD] Listening on " + port + (unixPath != null ? " e " + unixPath : "") + " (NIO, fila="
+                    + schedPolicy + ")");
+            new NioTransport(port, unixPath, CoordinatorServer::offerMessage,
+                    CoordinatorServer::offerDisconnect).run();
+            return;
+        }
+
+        ServerSocket serverSocket = new ServerSocket(port);
+        Log.info("[COORD] Listening on " + port + " (threads=" + threadMode + ", fila=" + schedPolicy + ")");
+        if (unixPath != null)
+            listenUnix(unixPath);
 
         while (true) {
             Socket client = serverSocket.accept();
-            new Thread(() -> handleClient(client)).start();
+            threadMode.start("coord-client", () -> handleClient(client));
         }
     }
 
-    private static void handleClient(Socket client) {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
-                PrintWriter out = new PrintWriter(client.getOutputStream(), true)) {
-
-            Gson gson = new Gson();
-            String line;
-            while ((line = in.readLine()) != null) {
-                Message msg = gson.fromJson(line, Message.class);
-
-                // atualiza relógio do coordenador com o clock recebido
-                clock.update(msg.getClock());
-
-                switch (msg.getType()) {
-                    case JOIN -> {
-                        System.out.println("[COORD] JOIN pid=" + msg.getPid());
-                        // registra socket/writer para broadcasts futuros
-                        nodeSockets.put(msg.getPid(), client);
-                        nodeWriters.put(msg.getPid(), new PrintWriter(client.getOutputStream(), true));
-                    }
-                    case REQUEST -> {
-                        requestQueue.add(new Request(msg.getClock(), msg.getPid(), client));
-                        tryGrantNext();
-                    }
-                    case DO_OP -> {
-                        // coordenador aplica a operação canônica no estado global
-                        sharedCounter++;
-                        Message state = new Message();
-                        state.setType(MessageType.STATE);
-                        state.setPid(0);
-                        state.setClock(clock.increment());
-                        state.setPayload("{\"counter\":" + sharedCounter + "}");
-
-                        System.out.println("[COORD] DO_OP pid=" + msg.getPid() + " -> counter=" + sharedCounter);
-
-                        // broadcast assíncrono (consistência eventual)
-                        broadcastStateAsync(sharedCounter, state.getClock());
-                    }
-                    case RELEASE -> {
-                        busy = false;
-                        tryGrantNext();
-                    }
-                    default -> {
-
-                    }
+    // socket de domínio Unix: mesmo tratamento das conexões TCP, uma thread de leitura por nó
+    private static void listenUnix(Path path) throws IOException {
+        Files.deleteIfExists(path); // arquivo que sobrou de uma execução anterior
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(path));
+        path.toFile().deleteOnExit();
+        Log.info("[COORD] Listening on " + path + " (unix)");
+        threadMode.start("coord-unix-accept", () -> {
+            try {
+                while (true) {
+                    SocketChannel ch = server.accept();
+                    threadMode.start("coord-client", () -> serveClient(ch, Channels.newInputStream(ch),
+                            () -> new SocketConnection(ch, Channels.newOutputStream(ch), threadMode)));
                 }
+            } catch (IOException e) {
+                Log.error("[COORD] Socket unix fechado: " + e.getMessage());
             }
+        });
+    }
+
+    private interface ConnectionFactory {
+        Connection open() throws IOException;
+    }
+
+    private static void handleClient(Socket client) {
+        try {
+            serveClient(client, client.getInputStream(), () -> new SocketConnection(client, threadMode));
+        } catch (IOException e) {
+            Log.warn("[COORD] Erro ao abrir conexão: " + e.getMessage());
+        }
+    }
+
+    private static void serveClient(Closeable channel, InputStream input, ConnectionFactory factory) {
+        Connection conn = null;
+        try (channel; InputStream in = input) {
+            conn = factory.open();
+            FrameReader reader = new FrameReader(in);
+            Message reuse = new Message();
+            Message msg;
+            while ((msg = reader.read(reuse)) != null) {
+                handleMessage(conn, msg);
+            }
+        } catch (SocketException e) {
+            // conexão encerrada (ex.: standby recusando um nó)
         } catch (Exception e) {
-            // Se um node desconectar, remova do map (tenta identificar pid removendo
-            // entradas com mesmo socket)
-            handleClientDisconnect(client);
             e.printStackTrace();
+        } finally {
+            // Se um node desconectar, remova do map
+            if (conn != null) {
+                conn.close();
+                handleClientDisconnect(conn);
+            }
+        }
+    }
+
+    // chamado pela thread de I/O de cada conexão: espera vaga no buffer do núcleo se ele estiver cheio
+    private static void handleMessage(Connection conn, Message msg) {
+        dispatch(conn, msg, true);
+    }
+
+    // chamado pelo selector no modo NIO, que não pode bloquear: false = núcleo cheio, o selector
+    // para de ler a conexão e entrega a mesma mensagem de novo quando houver espaço
+    private static boolean offerMessage(Connection conn, Message msg) {
+        return dispatch(conn, msg, false);
+    }
+
+    // comum aos dois transportes. Só o que não mexe nos recursos é tratado aqui; o resto vai para o núcleo
+    private static boolean dispatch(Connection conn, Message msg, boolean wait) {
+        // atualiza relógio do coordenador com o clock recebido
+        clock.update(msg.getClock());
+
+        switch (msg.getType()) {
+            case ELECTION -> {
+                if (replicaGroup != null)
+                    replicaGroup.onElection(conn, msg.getPid());
+                return true;
+            }
+            case COORDINATOR -> {
+                if (replicaGroup != null)
+                    replicaGroup.onCoordinator(msg.getPid(), msg.getLong(PayloadField.TERM));
+                return true;
+            }
+            case VOTE -> {
+                if (replicaGroup != null)
+                    replicaGroup.onVote(conn, msg.getPid(), msg.getLong(PayloadField.TERM));
+                return true;
+            }
+            case LOG -> {
+                // standby devolvendo o heartbeat: renova o lease desta primária
+                if (replicaGroup != null && msg.has(PayloadField.HEARTBEAT))
+                    replicaGroup.onAck(msg.getPid(), msg.getLong(PayloadField.TERM),
+                            msg.getLong(PayloadField.HEARTBEAT));
+                return true;
+            }
+            case HEARTBEAT -> {
+                // fora do núcleo: o instante de chegada não pode incluir a espera na fila dele
+                PhiAccrualDetector d = detectors.get(msg.getPid());
+                if (d != null && d.conn == conn)
+                    d.heartbeat(System.nanoTime());
+                return true;
+            }
+            default -> {
+            }
+        }
+        // antes do lease: é com as standbys inscritas que a primária o renova
+        if (msg.getType() == MessageType.JOIN && "standby".equals(msg.getString(PayloadField.ROLE))) {
+            if (replicaGroup == null || !replicaGroup.acceptStandby(msg.getPid(), msg.getLong(PayloadField.TERM))) {
+                conn.close();
+                return true;
+            }
+            Log.info("[COORD] Standby " + msg.getPid() + " conectada ao log");
+            coordLog.subscribe(conn);
+            return true;
+        }
+        if (!isLeader()) {
+            // standby (ou primária sem lease) não atende nós: o nó tenta o próximo coordenador da lista
+            conn.close();
+            return true;
         }
+        long seq = wait ? core.claim() : core.tryClaim();
+        if (seq < 0)
+            return false;
+        try {
+            Command c = core.get(seq);
+            c.conn = conn;
+            c.task = null;
+            c.msg.copyFrom(msg);
+        } finally {
+            core.publish(seq);
+        }
+        return true;
+    }
+
+    // põe uma tarefa na fila do núcleo (lease vencido, desconexão, snapshot, rollback, log da primária)
+    private static void submit(Runnable task) {
+        publishTask(core.claim(), task);
+    }
+
+    // como submit, sem esperar: false se o buffer do núcleo está cheio
+    private static boolean trySubmit(Runnable task) {
+        long seq = core.tryClaim();
+        if (seq < 0)
+            return false;
+        publishTask(seq, task);
+        return true;
     }
 
-    private static void tryGrantNext() {
-        if (busy || requestQueue.isEmpty())
+    private static void publishTask(long seq, Runnable task) {
+        try {
+            Command c = core.get(seq);
+            c.conn = null;
+            c.task = task;
+        } finally {
+            core.publish(seq);
+        }
+    }
+
+    // executado só pela thread do núcleo, na ordem do buffer
+    private static void execute(Command c) {
+        try {
+            if (c.task != null) {
+                c.task.run();
+                return;
+            }
+            // rebaixada: o que já estava no buffer não é mais atendido
+            if (!isLeader())
+                return;
+            GlobalSnapshot snap = activeSnapshot;
+            if (snap != null && c.msg.getType() != MessageType.MARKER)
+                snap.record(c.msg);
+            process(c.conn, c.msg);
+        } catch (RuntimeException e) {
+            Log.error("[COORD] Erro no núcleo: " + e);
+        } finally {
+            c.conn = null;
+            c.task = null;
+        }
+    }
+
+    private static void process(Connection conn, Message msg) {
+        if (msg.has(PayloadField.RESOURCE) && !Message.isValidResource(msg.getResource())) {
+            // o nome não caberia no registro do log: recusa antes de criar o recurso ou enfileirar
+            Log.warn("[COORD] " + msg.getType() + " de pid=" + msg.getPid() + " com nome de recurso acima de "
+                    + Message.MAX_RESOURCE_BYTES + " bytes; desconectando");
+            conn.close();
             return;
-        Request req = requestQueue.poll();
-        busy = true;
+        }
+        switch (msg.getType()) {
+            case JOIN -> {
+                Log.info("[COORD] JOIN pid=" + msg.getPid());
+                // registra conexão para broadcasts futuros
+                nodeConnections.put(msg.getPid(), conn);
+                replication.register(msg.getPid(), conn);
+                if (msg.has(PayloadField.HEARTBEAT) && phiThreshold > 0)
+                    detectors.put(msg.getPid(), new PhiAccrualDetector(msg.getPid(), conn,
+                            msg.getLong(PayloadField.HEARTBEAT), heartbeatPauseMs, heartbeatMinStdMs));
+                else
+                    detectors.remove(msg.getPid());
+                // negociação do codec: o nó pede "binary" e confirmamos com um JOIN já em binário
+                if (WireFormat.BINARY_CODEC_NAME.equals(msg.getString(PayloadField.CODEC))) {
+                    Message ack = new Message();
+                    ack.setType(MessageType.JOIN);
+                    ack.setPid(0);
+                    ack.setClock(clock.increment());
+                    ack.setString(PayloadField.CODEC, WireFormat.BINARY_CODEC_NAME);
+                    // o formato muda junto com o ack, depois dos envios ainda retidos pelo log
+                    coordLog.afterDurable(() -> {
+                        conn.setWireFormat(WireFormat.BINARY);
+                        conn.send(ack);
+                    });
+                }
+                if (msg.has(PayloadField.PEER)) {
+                    // modo descentralizado: o valor canônico está nos pares, não aqui
+                    peerAddresses.put(msg.getPid(), msg.getString(PayloadField.PEER));
+                    broadcastMembers();
+                    return;
+                }
+                crdts.forEach((name, counter) -> send(conn, crdtMessage(name, counter)));
+                if (msg.has(PayloadField.VERSION)) {
+                    sendSync(conn, msg, true);
+                    return;
+                }
+                // nó sem anti-entropia: valor atual do recurso padrão para o nó que chega
+                Message current = new Message();
+                current.setType(MessageType.STATE);
+                current.setPid(0);
+                current.setClock(clock.increment());
+                current.setCounter(resource(Message.DEFAULT_RESOURCE).counter());
+                send(conn, current);
+            }
+            case SYNC -> sendSync(conn, msg, false);
+            case CRDT -> {
+                PnCounter counter = crdts.computeIfAbsent(msg.getResource(), r -> new PnCounter());
+                crdtMerges.increment();
+                if (counter.merge(msg.getString(PayloadField.CRDT)))
+                    replication.offer("crdt:" + msg.getResource(), crdtMessage(msg.getResource(), counter));
+            }
+            case MARKER -> {
+                GlobalSnapshot snap = activeSnapshot;
+                if (snap != null && snap.epoch == msg.getLong(PayloadField.EPOCH) && snap.closeChannel(msg))
+                    finishSnapshot(snap);
+            }
+            case REQUEST -> {
+                ResourceLock lock = resource(msg.getResource());
+                Request req = new Request(msg.getClock(), msg.getPid(), conn, msg.isSharedRead());
+                req.priority = msg.has(PayloadField.PRIORITY) ? msg.getLong(PayloadField.PRIORITY) : 0;
+                lock.enqueue(req);
+                tryGrantNext(lock);
+            }
+            case DO_OP -> {
+                // coordenador aplica a operação canônica no estado global do recurso
+                ResourceLock lock = resource(msg.getResource());
+                long token = msg.has(PayloadField.TOKEN) ? msg.getLong(PayloadField.TOKEN) : 0;
+                Integer valor = lock.applyIfWriter(token, msg.getPid(), msg.has(PayloadField.DELTA) ? msg.getDelta() : 1);
+                if (valor == null) {
+                    // detentor antigo (lease expirado): a operação é recusada
+                    Log.info("[COORD] DO_OP recusado pid=" + msg.getPid() + " " + lock.name + " token="
+                            + token);
+                    sendRevoke(conn, lock.name, token);
+                    return;
+                }
+                long ts = clock.increment();
+
+                if (Log.debugEnabled())
+                    Log.debug("[COORD] DO_OP pid=" + msg.getPid() + " " + lock.name + " -> counter=" + valor);
+
+                // broadcast assíncrono (consistência eventual)
+                publishChange(lock, valor, ts, conn, msg.getPid());
+            }
+            case BATCH_OP -> {
+                // entra na mesma fila dos escritores; o delta é aplicado quando chegar a vez
+                ResourceLock lock = resource(msg.getResource());
+                Request req = new Request(msg.getClock(), msg.getPid(), conn, false);
+                req.batchId = msg.getLong(PayloadField.BATCH);
+                req.batchDelta = msg.getDelta();
+                req.priority = msg.has(PayloadField.PRIORITY) ? msg.getLong(PayloadField.PRIORITY) : 0;
+                lock.enqueue(req);
+                tryGrantNext(lock);
+            }
+            case RELEASE -> {
+                ResourceLock lock = resource(msg.getResource());
+                long token = msg.has(PayloadField.TOKEN) ? msg.getLong(PayloadField.TOKEN) : 0;
+                Request released = lock.release(msg.isSharedRead(), token, msg.getPid());
+                if (released == null)
+                    return; // já revogado
+                if (released.lease != null)
+                    released.lease.cancel();
+                csHold.record(System.nanoTime() - released.grantedNanos);
+                tryGrantNext(lock);
+            }
+            default -> {
+
+            }
+        }
+    }
+
+    private static ResourceLock resource(String name) {
+        return resources.computeIfAbsent(name, n -> new ResourceLock(n, CoordinatorServer::logChange, schedPolicy));
+    }
+
+    // só a primária eleita manda heartbeats às standbys; o termo deixa as standbys ignorarem uma antiga
+    private static void logHeartbeat() {
+        if (replicaGroup == null)
+            coordLog.heartbeat(clock.getTime(), 0);
+        else if (replicaGroup.isPrimary())
+            coordLog.heartbeat(clock.getTime(), replicaGroup.term());
+    }
+
+    private static boolean isLeader() {
+        return replicaGroup == null || replicaGroup.isLeader();
+    }
+
+    // chamado pelo núcleo a cada concessão ou DO_OP
+    private static void logChange(String name, int counter, long lastToken) {
+        if (coordLog != null)
+            coordLog.append(name, counter, lastToken, clock.getTime());
+    }
+
+    // standby: registro recebido da primária, aplicado (pelo núcleo) e gravado no próprio log
+    private static void applyLogEntry(Message msg) {
+        clock.update(msg.getClock());
+        String name = msg.getResource();
+        int counter = msg.getCounter();
+        long token = msg.getLong(PayloadField.TOKEN);
+        long ts = msg.getClock();
+        submit(() -> {
+            resource(name).restore(counter, token);
+            coordLog.append(name, counter, token, ts);
+        });
+    }
+
+    // concede o recurso ao próximo escritor ou a todos os leitores que podem entrar juntos
+    private static void tryGrantNext(ResourceLock lock) {
+        List<Request> granted;
+        while (!(granted = lock.pollGrants()).isEmpty()) {
+            // true se o recurso foi liberado no meio do caminho (falha ou lote): tenta de novo
+            boolean failed = false;
+            for (Request req : granted) {
+                req.grantedNanos = System.nanoTime();
+                grantWait.record(req.grantedNanos - req.enqueuedNanos);
+                grants.increment();
+                if (req.batchId != 0) {
+                    applyBatch(lock, req);
+                    failed = true;
+                    continue;
+                }
+                Message grant = new Message();
+                grant.setType(MessageType.GRANT);
+                grant.setPid(0);
+                grant.setClock(clock.increment());
+                grant.setResource(lock.name);
+                grant.setLong(PayloadField.TOKEN, req.token);
+                grant.setLong(PayloadField.LEASE, leaseMs);
+                if (req.shared) {
+                    // leitura: o valor vai no próprio GRANT, sem DO_OP/STATE
+                    grant.setSharedRead(true);
+                    grant.setCounter(lock.counter());
+                }
 
-        Gson gson = new Gson();
-        Message grant = new Message();
-        grant.setType(MessageType.GRANT);
-        grant.setPid(0);
-        grant.setClock(clock.increment());
-        grant.setPayload("{}");
+                try {
+                    final long token = req.token;
+                    req.lease = leaseWheel.schedule(leaseMs, () -> submit(() -> revokeExpired(lock, token)));
+                    send(req.conn, grant);
+                    if (Log.debugEnabled())
+                        Log.debug("[COORD] GRANT" + (req.shared ? "(read)" : "") + " -> pid=" + req.pid + " "
+                                + lock.name + " token=" + req.token);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    // se falhar, libera e tenta próximo; o lease é nulo se o próprio schedule falhou
+                    if (req.lease != null)
+                        req.lease.cancel();
+                    lock.release(req.shared, req.token, req.pid);
+                    failed = true;
+                }
+            }
+            if (!failed)
+                return;
+        }
+    }
 
+    // BATCH_OP concedido: aplica o lote como escritor, libera e responde com o valor resultante
+    private static void applyBatch(ResourceLock lock, Request req) {
+        Integer valor = lock.applyIfWriter(req.token, req.pid, req.batchDelta);
+        lock.release(false, req.token, req.pid);
+        long ts = clock.increment();
+        Message reply = new Message();
+        reply.setType(MessageType.STATE);
+        reply.setPid(0);
+        reply.setClock(ts);
+        reply.setResource(lock.name);
+        reply.setCounter(valor);
+        reply.setLong(PayloadField.BATCH, req.batchId);
         try {
-            PrintWriter out = new PrintWriter(req.socket.getOutputStream(), true);
-            out.println(gson.toJson(grant));
-            System.out.println("[COORD] GRANT -> pid=" + req.pid);
-        } catch (IOException e) {
-            e.printStackTrace();
-            // se falhar, libera e tenta próximo
-            busy = false;
-            tryGrantNext();
+            send(req.conn, reply);
+        } catch (Exception e) {
+            Log.error("[COORD] Erro ao responder BATCH_OP pid=" + req.pid + ": " + e.getMessage());
         }
+        if (Log.debugEnabled())
+            Log.debug("[COORD] BATCH_OP pid=" + req.pid + " " + lock.name + " +" + req.batchDelta + " -> counter="
+                    + valor);
+        publishChange(lock, valor, ts, null, req.pid);
+    }
+
+    // o detentor não liberou dentro do lease (agendado pela thread do timer, executado pelo núcleo)
+    private static void revokeExpired(ResourceLock lock, long token) {
+        Request expired = lock.revoke(token);
+        if (expired == null)
+            return;
+        leasesExpired.increment();
+        Log.info("[COORD] Lease expirado pid=" + expired.pid + " " + lock.name + " token=" + token);
+        try {
+            sendRevoke(expired.conn, lock.name, token);
+        } catch (Exception e) {
+            Log.error("[COORD] Erro ao enviar REVOKE para pid=" + expired.pid + ": " + e.getMessage());
+        }
+        tryGrantNext(lock);
+    }
+
+    private static void sendRevoke(Connection conn, String resource, long token) {
+        Message revoke = new Message();
+        revoke.setType(MessageType.REVOKE);
+        revoke.setPid(0);
+        revoke.setClock(clock.increment());
+        revoke.setResource(resource);
+        revoke.setLong(PayloadField.TOKEN, token);
+        send(conn, revoke);
+    }
+
+    // toda mudança de valor passa por aqui (núcleo): ganha uma versão no log e o STATE vai direto
+    // para origin, que espera a confirmação do próprio DO_OP; no modo push os outros nós recebem
+    // pela caixa de saída, que coalesce. originPid fica de fora do fan-out (o BATCH_OP já
+    // respondeu ao seu nó com o valor do lote)
+    private static void publishChange(ResourceLock lock, int novoValor, long lamportTs, Connection origin,
+            int originPid) {
+        lock.version = lamportTs;
+        opLog.append(lamportTs, lock.name);
+        Message state = stateMessage(lock.name, novoValor, lamportTs);
+        if (origin != null)
+            send(origin, state);
+        if (!pullReplication)
+            coordLog.afterDurable(() -> replication.offer(lock.name, state, originPid));
+    }
+
+    // o STATE entra na caixa de saída, que coalesce e envia em lote a cada repIntervalMs
+    private static void broadcastStateAsync(String resource, int novoValor, long lamportTs) {
+        Message state = stateMessage(resource, novoValor, lamportTs);
+        coordLog.afterDurable(() -> replication.offer(resource, state));
+    }
+
+    // todo envio do núcleo a um nó passa pelo log: sai depois do fsync do que já foi registrado
+    private static void send(Connection conn, Message msg) {
+        coordLog.afterDurable(() -> conn.send(msg));
+    }
+
+    private static void sendEncoded(Connection conn, EncodedMessage msg) {
+        coordLog.afterDurable(() -> conn.sendEncoded(msg));
     }
 
-    private static void broadcastStateAsync(int novoValor, int lamportTs) {
-        Gson gson = new Gson();
+    private static Message stateMessage(String resource, int novoValor, long lamportTs) {
         Message state = new Message();
         state.setType(MessageType.STATE);
         state.setPid(0);
         state.setClock(lamportTs);
-        state.setPayload("{\"counter\":" + novoValor + "}");
+        state.setCounter(novoValor);
+        state.setResource(resource);
+        return state;
+    }
 
-        for (Map.Entry<Integer, PrintWriter> e : nodeWriters.entrySet()) {
-            final int targetPid = e.getKey();
-            final PrintWriter writer = e.getValue();
-            repExecutor.submit(() -> {
-                try {
-                    // simula atraso de rede aleatório (0-2000ms) para demonstrar eventual
-                    // consistency
-                    Thread.sleep(ThreadLocalRandom.current().nextInt(0, 2000));
-                } catch (InterruptedException ignored) {
-                }
-                try {
-                    writer.println(gson.toJson(state));
+    private static Message crdtMessage(String resource, PnCounter counter) {
+        Message m = new Message();
+        m.setType(MessageType.CRDT);
+        m.setPid(0);
+        m.setClock(clock.increment());
+        m.setResource(resource);
+        m.setString(PayloadField.CRDT, counter.encode());
+        return m;
+    }
 
-                    System.out.println("[COORD] STATE enviado -> pid=" + targetPid + " counter=" + novoValor + " (ts="
-                            + lamportTs + ")");
-                } catch (Exception ex) {
-                    System.err.println("[COORD] Erro ao replicar para pid=" + targetPid + ": " + ex.getMessage());
-                }
-            });
+    // anti-entropia: STATE dos recursos que mudaram depois da versão do nó, ou de todos se o log
+    // não cobre essa versão (nó novo, outro coordenador ou atraso maior que o log), e um SYNC
+    // com a versão atual no fim. No JOIN os STATEs levam relógio novo, para valerem sobre o que o
+    // nó trouxe do checkpoint; no SYNC periódico levam a versão da mudança, então não passam por
+    // cima de uma operação do nó que ainda não chegou aqui
+    private static void sendSync(Connection conn, Message msg, boolean join) {
+        syncs.increment();
+        // sem INCARNATION não se sabe de que log é a versão: estado completo
+        Collection<String> changed = msg.has(PayloadField.INCARNATION)
+                ? opLog.changedSince(msg.getLong(PayloadField.INCARNATION), msg.getLong(PayloadField.VERSION))
+                : null;
+        if (changed == null) {
+            syncSnapshots.increment();
+            changed = new ArrayList<>(resources.keySet());
+        }
+        for (String name : changed) {
+            ResourceLock lock = resource(name);
+            send(conn, stateMessage(name, lock.counter(), join ? clock.increment() : lock.version));
+        }
+        syncStates.add(changed.size());
+        Message done = new Message();
+        done.setType(MessageType.SYNC);
+        done.setPid(0);
+        done.setClock(clock.increment());
+        done.setLong(PayloadField.VERSION, opLog.head());
+        done.setLong(PayloadField.INCARNATION, opLog.incarnation());
+        send(conn, done);
+        if (Log.debugEnabled())
+            Log.debug("[COORD] SYNC pid=" + msg.getPid() + (join ? " (JOIN)" : "") + " -> " + changed.size()
+                    + " recursos, versão " + opLog.head());
+    }
+
+    private static long lastLoggedOffered = -1;
+
+    private static void logReplicationStats() {
+        long offered = replication.offeredCount();
+        if (offered == lastLoggedOffered)
+            return;
+        lastLoggedOffered = offered;
+        Log.info("[COORD] Replicação: atualizações=" + offered + " enviadas=" + replication.sentCount()
+                + " coalescidas=" + replication.coalescedCount());
+    }
+
+    // envia a lista de membros descentralizados a todos eles; só o núcleo chama, então
+    // cada nó recebe as listas na ordem em que foram geradas
+    private static void broadcastMembers() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, String> e : peerAddresses.entrySet()) {
+            if (sb.length() > 0)
+                sb.append(',');
+            sb.append(e.getKey()).append('@').append(e.getValue());
+        }
+        Message members = new Message();
+        members.setType(MessageType.MEMBERS);
+        members.setPid(0);
+        members.setClock(clock.increment());
+        members.setString(PayloadField.MEMBERS, sb.toString());
+        EncodedMessage encoded = new EncodedMessage(members);
+        for (Integer pid : peerAddresses.keySet()) {
+            Connection conn = nodeConnections.get(pid);
+            try {
+                if (conn != null)
+                    sendEncoded(conn, encoded);
+            } catch (Exception ex) {
+                Log.error("[COORD] Erro ao enviar MEMBERS para pid=" + pid + ": " + ex.getMessage());
+            }
         }
+        Log.info("[COORD] MEMBERS -> " + sb);
     }
 
-    // método para pedir rollback globalmente (comunicando todos os nós)
+    // submete um envio para o nó; no modo virtual cada destino tem no máximo
+    // MAX_INFLIGHT_PER_TARGET envios em andamento, os demais esperam estacionados
+    private static void submitToTarget(int targetPid, Runnable send) {
+        repBacklog.incrementAndGet();
+        Runnable task = () -> {
+            try {
+                send.run();
+            } finally {
+                repBacklog.decrementAndGet();
+            }
+        };
+        if (threadMode != ThreadMode.VIRTUAL) {
+            repExecutor.submit(task);
+            return;
+        }
+        Semaphore permits = targetPermits.computeIfAbsent(targetPid, k -> new Semaphore(MAX_INFLIGHT_PER_TARGET));
+        repExecutor.submit(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    // inicia uma época: grava o estado do coordenador e manda MARKER a todos os nós
+    public static void takeSnapshot() {
+        submit(CoordinatorServer::startSnapshot);
+    }
+
+    private static void startSnapshot() {
+        if (!isLeader() || nodeConnections.isEmpty())
+            return;
+        GlobalSnapshot running = activeSnapshot;
+        if (running != null) {
+            long timeoutMs = Math.max(5000, snapshotIntervalMs * 2);
+            if (System.nanoTime() - running.startedNanos < TimeUnit.MILLISECONDS.toNanos(timeoutMs))
+                return;
+            Log.warn("[COORD] Snapshot época " + running.epoch + " abandonado (nós sem resposta)");
+        }
+        long t0 = System.nanoTime();
+        Map<String, Integer> counters = new HashMap<>();
+        resources.forEach((name, lock) -> counters.put(name, lock.counter()));
+        GlobalSnapshot snap = new GlobalSnapshot(++epochs, counters, nodeConnections.keySet());
+        activeSnapshot = snap;
+
+        Message marker = new Message();
+        marker.setType(MessageType.MARKER);
+        marker.setPid(0);
+        marker.setClock(clock.increment());
+        marker.setLong(PayloadField.EPOCH, snap.epoch);
+        EncodedMessage encoded = new EncodedMessage(marker);
+        for (Map.Entry<Integer, Connection> e : nodeConnections.entrySet()) {
+            try {
+                sendEncoded(e.getValue(), encoded);
+            } catch (Exception ex) {
+                snap.dropChannel(e.getKey());
+            }
+        }
+        snap.pauseNanos = System.nanoTime() - t0;
+        if (snap.checkComplete())
+            finishSnapshot(snap);
+    }
+
+    private static void finishSnapshot(GlobalSnapshot snap) {
+        if (activeSnapshot != snap)
+            return;
+        activeSnapshot = null;
+        lastSnapshot = snap;
+        Log.info("[COORD] Snapshot " + snap.report());
+    }
+
+    // rollback para o último corte consistente: valores do snapshot mais o que estava em trânsito;
+    // cada nó volta ao estado que gravou na mesma época. Sem snapshot completo, cada nó recarrega
+    // o próprio checkpoint (comportamento antigo, sem garantia de consistência entre nós)
     public static void requestGlobalRollback(String reason) {
-        System.out.println("[COORD] Solicitando rollback global: " + reason);
-        Gson gson = new Gson();
+        Log.info("[COORD] Solicitando rollback global: " + reason);
+        submit(() -> rollback(reason));
+    }
+
+    private static void rollback(String reason) {
         Message rollback = new Message();
         rollback.setType(MessageType.ROLLBACK);
         rollback.setPid(0);
+        rollback.setReason(reason);
         rollback.setClock(clock.increment());
-        rollback.setPayload("{\"reason\":\"" + reason + "\"}");
+        GlobalSnapshot snap = lastSnapshot;
+        Map<String, Integer> cut = null;
+        if (snap != null) {
+            cut = snap.cutCounters();
+            for (Map.Entry<String, Integer> e : cut.entrySet()) {
+                ResourceLock lock = resource(e.getKey());
+                lock.restore(e.getValue(), 0);
+                logChange(lock.name, e.getValue(), lock.lastToken());
+            }
+            rollback.setLong(PayloadField.EPOCH, snap.epoch);
+            // o valor do corte vai junto: vale mesmo para o nó que não participou da época
+            rollback.setCounter(cut.getOrDefault(Message.DEFAULT_RESOURCE, 0));
+            Log.info("[COORD] Voltando ao snapshot da época " + snap.epoch + ": " + cut);
+        }
+        EncodedMessage encoded = new EncodedMessage(rollback);
 
-        for (Map.Entry<Integer, PrintWriter> e : nodeWriters.entrySet()) {
-            final int targetPid = e.getKey();
-            final PrintWriter writer = e.getValue();
-            repExecutor.submit(() -> {
-                try {
-                    writer.println(gson.toJson(rollback));
-                    System.out.println("[COORD] ROLLBACK enviado -> pid=" + targetPid);
-                } catch (Exception ex) {
-                    System.err
-                            .println("[COORD] Erro ao mandar ROLLBACK para pid=" + targetPid + ": " + ex.getMessage());
-                }
-            });
+        // o envio só enfileira na conexão: os ROLLBACKs saem antes de qualquer mensagem posterior do núcleo
+        for (Map.Entry<Integer, Connection> e : nodeConnections.entrySet()) {
+            sendEncoded(e.getValue(), encoded);
+            Log.info("[COORD] ROLLBACK enviado -> pid=" + e.getKey());
+        }
+        if (cut != null) {
+            for (Map.Entry<String, Integer> e : cut.entrySet()) {
+                ResourceLock lock = resource(e.getKey());
+                long ts = clock.increment();
+                lock.version = ts;
+                opLog.append(ts, lock.name);
+                if (!Message.DEFAULT_RESOURCE.equals(e.getKey()) && !pullReplication)
+                    broadcastStateAsync(e.getKey(), e.getValue(), ts);
+            }
+        }
+    }
+
+    // verificação periódica (thread do agendador): nó acima do limiar vai para o núcleo
+    private static void checkFailures() {
+        long now = System.nanoTime();
+        for (PhiAccrualDetector d : detectors.values()) {
+            if (d.suspected)
+                continue;
+            double phi = d.phi(now);
+            if (phi > phiThreshold) {
+                d.suspected = true;
+                submit(() -> declareDead(d, phi));
+            }
         }
     }
 
-    private static void handleClientDisconnect(Socket client) {
-        // remove sockets/writers que usam esse socket
-        nodeSockets.entrySet().removeIf(entry -> entry.getValue().equals(client));
-        nodeWriters.entrySet().removeIf(entry -> entry.getValue().checkError());
+    private static void declareDead(PhiAccrualDetector d, double phi) {
+        if (detectors.get(d.pid) != d)
+            return; // já reconectou ou saiu
+        nodesSuspected.increment();
+        Log.warn("[COORD] Nó pid=" + d.pid + " sem heartbeat (phi=" + String.format("%.1f", phi)
+                + "), desconectando");
+        // a remoção é feita aqui mesmo; o aviso de desconexão que o close gera (no NIO, nesta
+        // thread) não volta ao buffer, e uma segunda remoção não acha nada
+        d.conn.close();
+        removeConnection(d.conn);
+    }
+
+    // pedidos na fila e concessões de uma conexão que caiu: sem isso a fila para no nó morto
+    // até o lease vencer (e os pedidos dele ainda seriam concedidos a ninguém)
+    private static void reclaim(Connection conn) {
+        for (ResourceLock lock : resources.values()) {
+            int purged = lock.purgeQueued(conn);
+            List<Request> held = lock.revokeHeldBy(conn);
+            requestsPurged.add(purged);
+            if (held.isEmpty())
+                continue;
+            leasesReclaimed.add(held.size());
+            for (Request r : held) {
+                if (r.lease != null)
+                    r.lease.cancel();
+                Log.info("[COORD] Concessão recuperada pid=" + r.pid + " " + lock.name + " token=" + r.token);
+            }
+            tryGrantNext(lock);
+        }
+    }
+
+    // outra réplica assumiu: os nós e as standbys desta vão para ela (ao fechar, o nó tenta o
+    // próximo coordenador da lista); sem conexões de nós, esta não concede mais nada
+    private static void stepDown() {
+        coordLog.dropSubscribers();
+        List<Connection> nodes = new ArrayList<>(nodeConnections.values());
+        // fecha todas antes de limpar: a limpeza passa concessões adiante, e nenhum GRANT pode sair
+        for (Connection conn : nodes)
+            conn.close();
+        for (Connection conn : nodes)
+            removeConnection(conn);
+    }
+
+    private static void handleClientDisconnect(Connection conn) {
+        if (!removeOnCore(conn))
+            submit(() -> removeConnection(conn));
+    }
+
+    // NIO: o selector não espera; com o núcleo cheio ele guarda a conexão e tenta de novo
+    private static boolean offerDisconnect(Connection conn) {
+        return removeOnCore(conn) || trySubmit(() -> removeConnection(conn));
+    }
+
+    private static boolean removeOnCore(Connection conn) {
+        coordLog.unsubscribe(conn);
+        // close() chamado pelo próprio núcleo (nó morto, rebaixamento): remove já, sem publicar
+        if (Thread.currentThread() != coreThread)
+            return false;
+        removeConnection(conn);
+        return true;
+    }
+
+    // remove os registros que usam essa conexão
+    private static void removeConnection(Connection conn) {
+        reclaim(conn);
+        GlobalSnapshot snap = activeSnapshot;
+        boolean memberLeft = false;
+        for (Map.Entry<Integer, Connection> entry : nodeConnections.entrySet()) {
+            if (entry.getValue() != conn || !nodeConnections.remove(entry.getKey(), conn))
+                continue;
+            targetPermits.remove(entry.getKey());
+            detectors.remove(entry.getKey());
+            replication.unregister(entry.getKey());
+            memberLeft |= peerAddresses.remove(entry.getKey()) != null;
+            if (snap != null && snap.dropChannel(entry.getKey()))
+                finishSnapshot(snap);
+        }
+        if (memberLeft)
+            broadcastMembers();
     }
 }
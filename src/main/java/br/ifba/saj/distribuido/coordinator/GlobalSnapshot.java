@@ -0,0 +1,85 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import br.ifba.saj.distribuido.model.*;
+import br.ifba.saj.distribuido.protocol.JsonCodec;
+
+import java.util.*;
+
+// Snapshot global de uma época (Chandy–Lamport sobre a estrela coordenador <-> nós).
+// O coordenador grava o próprio estado (contador de cada recurso) e manda MARKER a todos os
+// nós; cada nó grava o seu estado ao receber o MARKER e o devolve pelo canal nó -> coordenador.
+// O que chega de um nó entre a gravação do coordenador e o MARKER dele é o estado desse canal
+// (ex.: um DO_OP já aplicado no nó e ainda não no coordenador). O corte consistente é o estado
+// do coordenador mais os deltas em trânsito; é para ele que o rollback volta.
+class GlobalSnapshot {
+    final long epoch;
+    final long startedNanos = System.nanoTime();
+    long pauseNanos;
+    long completedNanos;
+
+    private final Map<String, Integer> counters;
+    // nós dos quais ainda esperamos o MARKER (canal aberto = gravando)
+    private final Set<Integer> openChannels;
+    private final Map<Integer, List<String>> channelState = new HashMap<>();
+    private final Map<String, Integer> inFlightDeltas = new HashMap<>();
+    private final Map<Integer, long[]> nodeStates = new HashMap<>();
+    private int recorded = 0;
+    private long recordedBytes = 0;
+
+    GlobalSnapshot(long epoch, Map<String, Integer> counters, Set<Integer> channels) {
+        this.epoch = epoch;
+        this.counters = counters;
+        this.openChannels = new HashSet<>(channels);
+    }
+
+    // mensagem recebida de um nó com o canal ainda aberto vira estado do canal
+    synchronized void record(Message msg) {
+        if (!openChannels.contains(msg.getPid()))
+            return;
+        String json = JsonCodec.encode(msg);
+        channelState.computeIfAbsent(msg.getPid(), k -> new ArrayList<>()).add(json);
+        recorded++;
+        recordedBytes += json.length();
+        if (msg.getType() == MessageType.DO_OP)
+            inFlightDeltas.merge(msg.getResource(), msg.has(PayloadField.DELTA) ? msg.getDelta() : 1, Integer::sum);
+    }
+
+    // MARKER de volta: fecha o canal e guarda o estado que o nó gravou; true se completou agora
+    synchronized boolean closeChannel(Message marker) {
+        if (!openChannels.remove(marker.getPid()))
+            return false;
+        nodeStates.put(marker.getPid(),
+                new long[] { marker.getCounter(), marker.getLong(PayloadField.STATE_TS) });
+        return complete();
+    }
+
+    // nó desconectou no meio do snapshot: fica fora do corte
+    synchronized boolean dropChannel(int pid) {
+        return openChannels.remove(pid) && complete();
+    }
+
+    private boolean complete() {
+        if (!openChannels.isEmpty())
+            return false;
+        completedNanos = System.nanoTime();
+        return true;
+    }
+
+    // sem nós (ou todos caíram durante o envio dos MARKERs) o snapshot já está completo
+    synchronized boolean checkComplete() {
+        return completedNanos != 0 || complete();
+    }
+
+    // valor do recurso no corte: estado do coordenador mais os deltas em trânsito
+    synchronized Map<String, Integer> cutCounters() {
+        Map<String, Integer> cut = new HashMap<>(counters);
+        inFlightDeltas.forEach((r, d) -> cut.merge(r, d, Integer::sum));
+        return cut;
+    }
+
+    synchronized String report() {
+        return String.format("época %d completa em %.1fms: %d nós, %d mensagens em trânsito (%d bytes), pausa %.3fms",
+                epoch, (completedNanos - startedNanos) / 1e6, nodeStates.size(), recorded, recordedBytes,
+                pauseNanos / 1e6);
+    }
+}
@@ -0,0 +1,105 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import br.ifba.saj.distribuido.log.Log;
+import br.ifba.saj.distribuido.model.ThreadMode;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Timer wheel (hashed wheel) para expiração de leases: agendar e cancelar são O(1) e uma
+// única thread avança o ponteiro a cada tick, executando os timeouts vencidos do slot.
+// A precisão é de um tick, suficiente para leases de centenas de milissegundos ou mais.
+class LeaseWheel implements Runnable {
+    private final long tickMs;
+    private final List<Timeout>[] wheel;
+    private final int mask;
+    // timeouts criados por outras threads, movidos para a roda pela thread do timer
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    private long tick = 0;
+
+    static class Timeout {
+        final long deadlineTick;
+        final Runnable task;
+        long rounds;
+        volatile boolean cancelled;
+
+        Timeout(long deadlineTick, Runnable task) {
+            this.deadlineTick = deadlineTick;
+            this.task = task;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    LeaseWheel(long tickMs, int slots) {
+        int size = Integer.highestOneBit(Math.max(2, slots - 1)) << 1;
+        this.tickMs = tickMs;
+        this.mask = size - 1;
+        this.wheel = (List<Timeout>[]) new List<?>[size];
+        for (int i = 0; i < size; i++)
+            wheel[i] = new ArrayList<>();
+    }
+
+    void start(ThreadMode threadMode) {
+        threadMode.start("coord-lease-wheel", this);
+    }
+
+    Timeout schedule(long delayMs, Runnable task) {
+        long elapsedTicks = (System.nanoTime() - startNanos) / 1_000_000 / tickMs;
+        Timeout t = new Timeout(elapsedTicks + Math.max(1, (delayMs + tickMs - 1) / tickMs), task);
+        incoming.add(t);
+        return t;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            long next = startNanos + (tick + 1) * tickMs * 1_000_000;
+            long sleepMs = (next - System.nanoTime()) / 1_000_000;
+            if (sleepMs > 0) {
+                try {
+                    Thread.sleep(sleepMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            tick++;
+            transferIncoming();
+            expire(wheel[(int) (tick & mask)]);
+        }
+    }
+
+    private void transferIncoming() {
+        Timeout t;
+        while ((t = incoming.poll()) != null) {
+            if (t.cancelled)
+                continue;
+            long deadline = Math.max(t.deadlineTick, tick);
+            t.rounds = (deadline - tick) / wheel.length;
+            wheel[(int) (deadline & mask)].add(t);
+        }
+    }
+
+    private void expire(List<Timeout> slot) {
+        Iterator<Timeout> it = slot.iterator();
+        while (it.hasNext()) {
+            Timeout t = it.next();
+            if (t.cancelled) {
+                it.remove();
+            } else if (t.rounds > 0) {
+                t.rounds--;
+            } else {
+                it.remove();
+                try {
+                    t.task.run();
+                } catch (Exception e) {
+                    Log.error("[COORD] Erro ao expirar lease: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Buffer circular com vários produtores e um consumidor, no estilo do Disruptor: os eventos são
+// pré-alocados e reutilizados. O produtor reserva uma sequência (getAndIncrement), preenche o
+// slot e publica gravando a sequência em published[slot]; o consumidor processa em ordem de
+// sequência, então a ordem de processamento é a ordem de reserva. Sem locks: com o buffer cheio
+// o produtor espera o consumidor avançar (ou, com tryClaim, desiste e tenta depois); sem eventos o consumidor gira um pouco e estaciona, e
+// o produtor só chama unpark se ele estiver estacionado.
+class MpscRingBuffer<E> {
+    // com um só processador girar só atrasa quem vai publicar
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 200 : 0;
+    private static final int YIELDS = 10;
+
+    private final Object[] entries;
+    private final int mask;
+    private final AtomicLongArray published;
+    // próxima sequência a reservar
+    private final AtomicLong claimed = new AtomicLong();
+    // última sequência processada (escrita só pelo consumidor)
+    private final AtomicLong consumed = new AtomicLong(-1);
+    private volatile Thread consumer;
+    private volatile boolean consumerParked;
+
+    MpscRingBuffer(int size, Supplier<E> factory) {
+        int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+        this.entries = new Object[capacity];
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = factory.get();
+            published.set(i, -1);
+        }
+    }
+
+    // eventos reservados e ainda não processados
+    long backlog() {
+        return claimed.get() - consumed.get() - 1;
+    }
+
+    // reserva o próximo slot; espera se o consumidor ainda não liberou a volta anterior
+    long claim() {
+        long seq = claimed.getAndIncrement();
+        long wrapPoint = seq - entries.length;
+        int tries = 0;
+        while (wrapPoint > consumed.get()) {
+            if (tries < SPINS)
+                Thread.onSpinWait();
+            else if (tries < SPINS + YIELDS)
+                Thread.yield();
+            else
+                LockSupport.parkNanos(1_000);
+            tries++;
+        }
+        return seq;
+    }
+
+    // como claim, mas sem esperar: devolve -1 se o buffer está cheio. Para quem não pode
+    // bloquear (o selector NIO deixa de ler a conexão até haver espaço)
+    long tryClaim() {
+        while (true) {
+            long seq = claimed.get();
+            if (seq - entries.length > consumed.get())
+                return -1;
+            if (claimed.compareAndSet(seq, seq + 1))
+                return seq;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    E get(long seq) {
+        return (E) entries[(int) (seq & mask)];
+    }
+
+    // toda sequência reservada precisa ser publicada, senão o consumidor para nela
+    void publish(long seq) {
+        published.set((int) (seq & mask), seq);
+        if (consumerParked)
+            LockSupport.unpark(consumer);
+    }
+
+    // laço do consumidor: processa em ordem tudo que foi publicado até a thread ser interrompida
+    void consume(Consumer<E> handler) {
+        consumer = Thread.currentThread();
+        long next = consumed.get() + 1;
+        while (!Thread.currentThread().isInterrupted()) {
+            if (!waitFor(next))
+                return;
+            while (published.get((int) (next & mask)) == next) {
+                handler.accept(get(next));
+                next++;
+                // libera o slot a cada evento para não segurar produtores durante uma rajada longa
+                consumed.lazySet(next - 1);
+            }
+        }
+    }
+
+    private boolean waitFor(long seq) {
+        int idx = (int) (seq & mask);
+        int tries = 0;
+        while (published.get(idx) != seq) {
+            if (tries < SPINS) {
+                Thread.onSpinWait();
+            } else if (tries < SPINS + YIELDS) {
+                Thread.yield();
+            } else {
+                consumerParked = true;
+                if (published.get(idx) != seq)
+                    LockSupport.park(this);
+                consumerParked = false;
+                if (Thread.currentThread().isInterrupted())
+                    return false;
+            }
+            tries++;
+        }
+        return true;
+    }
+}
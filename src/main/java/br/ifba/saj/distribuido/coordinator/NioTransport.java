@@ -0,0 +1,341 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import br.ifba.saj.distribuido.log.Log;
+import br.ifba.saj.distribuido.model.Message;
+import br.ifba.saj.distribuido.protocol.*;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+// Transporte não bloqueante: um único Selector atende todas as conexões.
+// Enquadramento por '\n' (JSON) ou por tamanho (frames binários), buffers de leitura/escrita
+// por conexão e backpressure: se um nó não consome o que enviamos, paramos de ler dele.
+// O selector nunca bloqueia no núcleo: se onMessage recusa (buffer do núcleo cheio), a conexão
+// perde OP_READ, a mensagem fica no buffer de leitura e é entregue de novo a cada volta do laço
+// (select de 1ms) até ser aceita; o mesmo vale para o aviso de desconexão (onClose).
+// Com unixPath, o mesmo Selector também aceita nós por um socket de domínio Unix.
+class NioTransport implements Runnable {
+    private static final int READ_BUFFER_SIZE = 4 * 1024;
+    // o mesmo limite para frames binários e linhas JSON
+    private static final int MAX_FRAME_SIZE = BinaryCodec.HEADER_SIZE + BinaryCodec.MAX_BODY_SIZE;
+    // acima de HIGH_WATER bytes pendentes a conexão deixa de ser lida; volta abaixo de LOW_WATER
+    private static final long HIGH_WATER = 256 * 1024;
+    private static final long LOW_WATER = 64 * 1024;
+    // nó que acumula mais que isso sem ler é desconectado
+    private static final long MAX_PENDING = 4 * 1024 * 1024;
+
+    private final int port;
+    private final Path unixPath;
+    private final BiPredicate<Connection, Message> onMessage;
+    private final Predicate<Connection> onClose;
+    private final Selector selector;
+    // conexões com escrita pendente agendada por outras threads
+    private final Queue<NioConnection> writeRequests = new ConcurrentLinkedQueue<>();
+    // conexões com mensagem recusada pelo núcleo (só a thread do selector mexe)
+    private final List<NioConnection> stalledConnections = new ArrayList<>();
+    // desconexões que o núcleo ainda não aceitou; close() pode vir de qualquer thread
+    private final Queue<NioConnection> pendingCloses = new ConcurrentLinkedQueue<>();
+
+    NioTransport(int port, Path unixPath, BiPredicate<Connection, Message> onMessage, Predicate<Connection> onClose)
+            throws IOException {
+        this.port = port;
+        this.unixPath = unixPath;
+        this.onMessage = onMessage;
+        this.onClose = onClose;
+        this.selector = Selector.open();
+    }
+
+    @Override
+    public void run() {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port), 1024);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            if (unixPath != null) {
+                Files.deleteIfExists(unixPath);
+                ServerSocketChannel unix = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                unix.bind(UnixDomainSocketAddress.of(unixPath));
+                unixPath.toFile().deleteOnExit();
+                unix.configureBlocking(false);
+                unix.register(selector, SelectionKey.OP_ACCEPT);
+            }
+
+            while (true) {
+                if (stalledConnections.isEmpty() && pendingCloses.isEmpty())
+                    selector.select();
+                else
+                    selector.select(1);
+                processWriteRequests();
+                retryStalled();
+                retryCloses();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                        continue;
+                    }
+                    NioConnection conn = (NioConnection) key.attachment();
+                    try {
+                        if (key.isReadable())
+                            conn.read();
+                        if (key.isValid() && key.isWritable())
+                            conn.flush();
+                    } catch (IOException | RuntimeException e) {
+                        // erro de I/O ou mensagem inválida: descarta só esta conexão
+                        conn.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.error("[COORD] Erro no loop NIO: " + e.getMessage());
+        }
+    }
+
+    private void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel ch;
+        while ((ch = server.accept()) != null) {
+            ch.configureBlocking(false);
+            if (ch.getLocalAddress() instanceof InetSocketAddress)
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            NioConnection conn = new NioConnection(ch);
+            conn.key = ch.register(selector, SelectionKey.OP_READ, conn);
+        }
+    }
+
+    private void processWriteRequests() {
+        NioConnection conn;
+        while ((conn = writeRequests.poll()) != null) {
+            conn.writeScheduled.set(false);
+            try {
+                conn.flush();
+            } catch (IOException e) {
+                conn.close();
+            }
+        }
+    }
+
+    // entrega de novo o que o núcleo recusou; quem esvaziou o buffer volta a ser lido
+    private void retryStalled() {
+        for (Iterator<NioConnection> it = stalledConnections.iterator(); it.hasNext();) {
+            NioConnection conn = it.next();
+            try {
+                if (!conn.closed.get())
+                    conn.deliver();
+                if (conn.closed.get() || !conn.stalled) {
+                    it.remove();
+                    if (conn.key.isValid())
+                        conn.updateInterest();
+                }
+            } catch (IOException | RuntimeException e) {
+                it.remove();
+                conn.close();
+            }
+        }
+    }
+
+    private void retryCloses() {
+        for (int n = pendingCloses.size(); n > 0; n--) {
+            NioConnection conn = pendingCloses.poll();
+            if (!onClose.test(conn)) {
+                pendingCloses.add(conn);
+                return;
+            }
+        }
+    }
+
+    private class NioConnection implements Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer readBuf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        private final AtomicLong pendingBytes = new AtomicLong();
+        private final AtomicBoolean writeScheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private boolean throttled = false;
+        // núcleo cheio: há mensagem completa esperando no buffer de leitura
+        private boolean stalled = false;
+        private volatile WireFormat format = WireFormat.JSON;
+        // mensagem reutilizada na decodificação de frames binários
+        private final Message inbound = new Message();
+
+        NioConnection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void send(Message msg) {
+            if (closed.get())
+                return;
+            enqueue(format == WireFormat.BINARY ? BinaryCodec.encodeToArray(msg)
+                    : (JsonCodec.encode(msg) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void sendEncoded(EncodedMessage msg) {
+            if (closed.get())
+                return;
+            enqueue(msg.bytes(format));
+        }
+
+        private void enqueue(byte[] bytes) {
+            // wrap não copia: o array pode ser compartilhado com outras conexões
+            outbound.add(ByteBuffer.wrap(bytes));
+            if (pendingBytes.addAndGet(bytes.length) > MAX_PENDING) {
+                Log.warn("[COORD] Nó lento demais (" + pendingBytes.get() + " bytes pendentes), desconectando");
+                scheduleClose();
+                return;
+            }
+            // só acorda o selector na primeira escrita pendente
+            if (writeScheduled.compareAndSet(false, true)) {
+                writeRequests.add(this);
+                selector.wakeup();
+            }
+        }
+
+        // executado apenas na thread do selector
+        void read() throws IOException {
+            int n = channel.read(readBuf);
+            if (n < 0) {
+                close();
+                return;
+            }
+            deliver();
+            if (stalled) {
+                stalledConnections.add(this);
+                updateInterest();
+            }
+        }
+
+        // entrega as mensagens completas do buffer; para na primeira recusada, que fica no buffer
+        void deliver() throws IOException {
+            stalled = false;
+            readBuf.flip();
+            int start = readBuf.position();
+            int i = start;
+            while (i < readBuf.limit()) {
+                if (i == start && readBuf.get(i) == BinaryCodec.MAGIC) {
+                    // frame binário: precisa do cabeçalho e do corpo completos
+                    if (readBuf.limit() - start < BinaryCodec.HEADER_SIZE)
+                        break;
+                    readBuf.position(start);
+                    int len = BinaryCodec.readHeader(readBuf);
+                    int end = readBuf.position() + len;
+                    if (end > readBuf.limit()) {
+                        readBuf.position(start);
+                        break;
+                    }
+                    int limit = readBuf.limit();
+                    readBuf.limit(end);
+                    BinaryCodec.decodeBody(readBuf, inbound);
+                    readBuf.limit(limit);
+                    if (!onMessage.test(this, inbound)) {
+                        stalled = true;
+                        break;
+                    }
+                    start = i = end;
+                } else if (readBuf.get(i) == '\n') {
+                    String line = new String(readBuf.array(), start, i - start, StandardCharsets.UTF_8);
+                    if (!line.isBlank() && !onMessage.test(this, JsonCodec.decode(line))) {
+                        stalled = true;
+                        break;
+                    }
+                    start = ++i;
+                } else {
+                    i++;
+                    continue;
+                }
+                if (closed.get())
+                    return;
+            }
+            readBuf.position(start);
+            readBuf.compact();
+            if (!stalled && !readBuf.hasRemaining()) {
+                if (readBuf.capacity() >= MAX_FRAME_SIZE)
+                    throw new IOException("frame maior que " + MAX_FRAME_SIZE + " bytes");
+                ByteBuffer bigger = ByteBuffer.allocate(Math.min(readBuf.capacity() * 2, MAX_FRAME_SIZE));
+                readBuf.flip();
+                bigger.put(readBuf);
+                readBuf = bigger;
+            }
+        }
+
+        // executado apenas na thread do selector
+        void flush() throws IOException {
+            if (closed.get()) {
+                close();
+                return;
+            }
+            ByteBuffer buf;
+            while ((buf = outbound.peek()) != null) {
+                int written = channel.write(buf);
+                pendingBytes.addAndGet(-written);
+                if (buf.hasRemaining())
+                    break;
+                outbound.poll();
+            }
+            long pending = pendingBytes.get();
+            if (throttled && pending <= LOW_WATER)
+                throttled = false;
+            else if (!throttled && pending > HIGH_WATER)
+                throttled = true;
+            updateInterest();
+        }
+
+        // lê só se o nó consome o que enviamos e o núcleo aceitou tudo que já foi lido
+        void updateInterest() {
+            int ops = outbound.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+            if (!throttled && !stalled)
+                ops |= SelectionKey.OP_READ;
+            key.interestOps(ops);
+        }
+
+        @Override
+        public void setWireFormat(WireFormat format) {
+            this.format = format;
+        }
+
+        private void scheduleClose() {
+            if (closed.compareAndSet(false, true)) {
+                writeRequests.add(this);
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void close() {
+            closed.set(true);
+            if (!released.compareAndSet(false, true))
+                return;
+            if (key != null)
+                key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            outbound.clear();
+            if (!onClose.test(this)) {
+                pendingCloses.add(this);
+                selector.wakeup();
+            }
+        }
+    }
+}
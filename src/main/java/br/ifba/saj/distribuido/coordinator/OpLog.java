@@ -0,0 +1,62 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Log versionado das mudanças de valor dos recursos, em memória, com as últimas CAPACITY.
+// A versão de cada mudança é o relógio do coordenador ao aplicá-la; como só o núcleo grava,
+// as versões são crescentes. Serve à anti-entropia: um nó em dia até a versão V recebe só
+// os recursos que mudaram depois de V. O valor de um recurso é um inteiro, então o "delta"
+// de um recurso é simplesmente o valor atual dele; o que o log economiza são os recursos
+// que não mudaram.
+// A incarnation é sorteada a cada processo (a standby promovida tem a sua): versões de outra
+// incarnation, ou mais antigas que o que já saiu do log, pedem um snapshot completo.
+// Só a thread do núcleo usa o log.
+class OpLog {
+    static final int CAPACITY = 16 * 1024;
+
+    private final long[] versions = new long[CAPACITY];
+    private final String[] resources = new String[CAPACITY];
+    private long appended;
+    private final long incarnation = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    // versão da última mudança que já saiu do log
+    private long evictedUpTo;
+
+    long incarnation() {
+        return incarnation;
+    }
+
+    // versão da última mudança registrada (0 se nenhuma)
+    long head() {
+        return appended == 0 ? 0 : versions[(int) ((appended - 1) % CAPACITY)];
+    }
+
+    void append(long version, String resource) {
+        int slot = (int) (appended % CAPACITY);
+        if (appended >= CAPACITY)
+            evictedUpTo = versions[slot];
+        versions[slot] = version;
+        resources[slot] = resource;
+        appended++;
+    }
+
+    // recursos que mudaram depois de 'version', em ordem da última mudança; null se o log
+    // não cobre essa versão (outra incarnation ou já descartada)
+    Collection<String> changedSince(long incarnation, long version) {
+        if (incarnation != this.incarnation || version < evictedUpTo)
+            return null;
+        Set<String> changed = new LinkedHashSet<>();
+        long first = Math.max(0, appended - CAPACITY);
+        // de trás para frente até a versão do nó; a ordem final é a da mudança mais recente
+        for (long i = appended - 1; i >= first; i--) {
+            int slot = (int) (i % CAPACITY);
+            if (versions[slot] <= version)
+                break;
+            changed.remove(resources[slot]);
+            changed.add(resources[slot]);
+        }
+        List<String> ordered = new ArrayList<>(changed);
+        Collections.reverse(ordered);
+        return ordered;
+    }
+}
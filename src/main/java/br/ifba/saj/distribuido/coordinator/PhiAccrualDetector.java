@@ -0,0 +1,68 @@
+package br.ifba.saj.distribuido.coordinator;
+
+// Detector de falhas phi-accrual (Hayashibara et al.) para um nó. Em vez de um timeout fixo,
+// guarda os últimos WINDOW intervalos entre heartbeats e calcula phi = -log10(P(atraso >= t)),
+// supondo intervalos com distribuição normal de média e desvio medidos. phi = 8 quer dizer
+// uma chance em 10^8 de o nó estar vivo e só atrasado; como média e desvio vêm das amostras,
+// o limiar se adapta ao jitter de cada nó. pauseMs soma uma pausa aceitável à média (GC,
+// rajada de rede) e minStdMs evita um desvio quase zero em loopback.
+// heartbeat() é chamado pela thread de I/O da conexão e phi() pela verificação periódica.
+class PhiAccrualDetector {
+    static final int WINDOW = 100;
+
+    final int pid;
+    final Connection conn;
+    private final double pauseMs;
+    private final double minStdMs;
+    private final double[] intervals = new double[WINDOW];
+    private int count;
+    private int next;
+    private double sum;
+    private double sumSq;
+    private long lastNanos = System.nanoTime();
+    // já entregue ao núcleo para remoção
+    volatile boolean suspected;
+
+    PhiAccrualDetector(int pid, Connection conn, long expectedIntervalMs, double pauseMs, double minStdMs) {
+        this.pid = pid;
+        this.conn = conn;
+        this.pauseMs = pauseMs;
+        this.minStdMs = minStdMs;
+        // como no Akka: duas amostras em torno do intervalo anunciado até chegarem as reais
+        double std = expectedIntervalMs / 4.0;
+        add(expectedIntervalMs - std);
+        add(expectedIntervalMs + std);
+    }
+
+    synchronized void heartbeat(long nowNanos) {
+        add((nowNanos - lastNanos) / 1e6);
+        lastNanos = nowNanos;
+    }
+
+    synchronized double phi(long nowNanos) {
+        double elapsedMs = (nowNanos - lastNanos) / 1e6;
+        double mean = sum / count;
+        double std = Math.max(Math.sqrt(Math.max(0, sumSq / count - mean * mean)), minStdMs);
+        mean += pauseMs;
+        // aproximação logística da cauda da normal (a mesma do Akka), sem erf
+        double y = (elapsedMs - mean) / std;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (elapsedMs > mean)
+            return -Math.log10(e / (1.0 + e));
+        return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+
+    private void add(double intervalMs) {
+        if (count == WINDOW) {
+            double old = intervals[next];
+            sum -= old;
+            sumSq -= old * old;
+        } else {
+            count++;
+        }
+        intervals[next] = intervalMs;
+        next = (next + 1) % WINDOW;
+        sum += intervalMs;
+        sumSq += intervalMs * intervalMs;
+    }
+}
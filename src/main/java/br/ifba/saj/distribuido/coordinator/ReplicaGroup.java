@@ -0,0 +1,528 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import br.ifba.saj.distribuido.log.Log;
+import br.ifba.saj.distribuido.model.*;
+import br.ifba.saj.distribuido.protocol.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+// Réplicas do coordenador (--replicas=id@host:porta,...). Uma delas é a primária e atende os
+// nós; as outras se inscrevem no log da primária, aplicam cada registro e recusam conexões de
+// nós. Cada primária tem um termo; a réplica só vota uma vez por termo (VOTE -> ELECTION_OK) e
+// só assume com os votos da maioria, então dois termos iguais nunca têm duas primárias. Termo e
+// voto ficam em disco (coord-<id>.term) para valer depois de reiniciar.
+// A primária só atende enquanto tem lease: a cada HEARTBEAT_INTERVAL_MS manda um LOG com o termo
+// e o instante do envio, e as standbys o devolvem; o lease vale LEASE_MS a partir do envio mais
+// recente confirmado pela maioria (contando ela mesma). Sem lease ela para de atender e, passado
+// o tempo, volta a ser standby. Uma standby só pede votos depois de LEASE_MS sem ouvir a
+// primária, e só vota nas mesmas condições, de modo que quando a nova primária assume o lease da
+// antiga já venceu (pausada por GC ou isolada por uma falha de rede, ela não tem mais como
+// concedê-lo). A réplica que recebe LOG ou COORDINATOR de termo maior passa a seguir a nova; de
+// termo menor, ignora (e, se for a primária, responde com o próprio COORDINATOR).
+// Entre as candidatas vale o bully: uma standby cede se uma réplica de id maior responde
+// ELECTION_OK. A réplica que sobe sem --standby é a preferida e disputa logo, sem ceder.
+class ReplicaGroup {
+    static final int HEARTBEAT_INTERVAL_MS = 100;
+    static final int HEARTBEAT_TIMEOUT_MS = 500;
+    static final int ELECTION_TIMEOUT_MS = 1000;
+    static final int LEASE_MS = 1000;
+    private static final long LEASE_NANOS = LEASE_MS * 1_000_000L;
+    private static final int CONNECT_TIMEOUT_MS = 200;
+    private static final int VOTE_TIMEOUT_MS = 500;
+    // standby que nunca encontrou a primária espera isso antes de se eleger; a primária recém-eleita
+    // também tem esse prazo para juntar a maioria antes de desistir
+    private static final int STARTUP_GRACE_MS = 2000;
+
+    final int myId;
+    private final Map<Integer, InetSocketAddress> replicas;
+    private final Path termFile;
+    private final ThreadMode threadMode;
+    private final Consumer<Message> onLogEntry;
+    private final Runnable onPromote;
+    private final Runnable onDemote;
+
+    private volatile boolean leader;
+    private volatile int leaderId = -1;
+    private boolean electing = false;
+    private volatile boolean preferred;
+    // termo da primária atual e maior termo em que esta réplica votou (promised >= term); alterados
+    // com o lock e gravados em termFile
+    private volatile long term;
+    private long promised;
+    // primária: envio mais recente (nanoTime) confirmado por cada standby no termo atual
+    private final Map<Integer, Long> acks = new HashMap<>();
+    private volatile long leaseExpiresNanos;
+    private volatile long leaderSinceNanos;
+    // standby: último LOG da primária (ou voto concedido)
+    private volatile long lastHeardNanos = System.nanoTime();
+
+    ReplicaGroup(int myId, Map<Integer, InetSocketAddress> replicas, boolean standby, Path termFile,
+            ThreadMode threadMode, Consumer<Message> onLogEntry, Runnable onPromote, Runnable onDemote)
+            throws IOException {
+        this.myId = myId;
+        this.replicas = replicas;
+        this.termFile = termFile;
+        this.threadMode = threadMode;
+        this.onLogEntry = onLogEntry;
+        this.onPromote = onPromote;
+        this.onDemote = onDemote;
+        this.preferred = !standby;
+        if (Files.exists(termFile)) {
+            String[] tp = Files.readString(termFile, StandardCharsets.UTF_8).trim().split(" ");
+            term = Long.parseLong(tp[0]);
+            promised = Long.parseLong(tp[1]);
+        }
+    }
+
+    // "1@127.0.0.1:5000,2@127.0.0.1:5001"
+    static Map<Integer, InetSocketAddress> parse(String list) {
+        Map<Integer, InetSocketAddress> map = new TreeMap<>();
+        for (String r : list.split(",")) {
+            String[] idAddr = r.split("@");
+            String[] hp = idAddr[1].split(":");
+            map.put(Integer.parseInt(idAddr[0]), new InetSocketAddress(hp[0], Integer.parseInt(hp[1])));
+        }
+        return map;
+    }
+
+    // pode atender nós: primária com lease válido
+    boolean isLeader() {
+        return leader && (replicas.size() == 1 || System.nanoTime() - leaseExpiresNanos < 0);
+    }
+
+    // eleita, com ou sem lease: manda heartbeats e aceita standbys
+    boolean isPrimary() {
+        return leader;
+    }
+
+    long term() {
+        return term;
+    }
+
+    void start() {
+        threadMode.start("coord-standby", this::followLoop);
+        threadMode.start("coord-lease", this::leaseLoop);
+    }
+
+    // standby: segue a primária até assumir
+    private void followLoop() {
+        long startedAt = System.currentTimeMillis();
+        boolean hadLeader = false;
+        while (!leader) {
+            for (Map.Entry<Integer, InetSocketAddress> r : candidates()) {
+                if (leader)
+                    return;
+                if (tail(r.getKey(), r.getValue())) {
+                    hadLeader = true;
+                    Log.info("[COORD] Primária " + r.getKey() + " perdida");
+                    break;
+                }
+            }
+            if (leader)
+                return;
+            if (hadLeader || preferred || System.currentTimeMillis() - startedAt > STARTUP_GRACE_MS)
+                elect();
+            if (!leader)
+                sleep(100);
+        }
+    }
+
+    // primária: sem a maioria confirmando os heartbeats, deixa o posto
+    private void leaseLoop() {
+        while (true) {
+            sleep(HEARTBEAT_INTERVAL_MS);
+            if (leader && !isLeader() && System.nanoTime() - leaderSinceNanos > STARTUP_GRACE_MS * 1_000_000L)
+                demote("sem confirmação da maioria há mais de " + LEASE_MS + "ms");
+        }
+    }
+
+    // tenta primeiro a primária conhecida, depois as demais réplicas
+    private List<Map.Entry<Integer, InetSocketAddress>> candidates() {
+        List<Map.Entry<Integer, InetSocketAddress>> list = new ArrayList<>();
+        for (Map.Entry<Integer, InetSocketAddress> r : replicas.entrySet()) {
+            if (r.getKey() == myId)
+                continue;
+            if (r.getKey() == leaderId)
+                list.add(0, r);
+            else
+                list.add(r);
+        }
+        return list;
+    }
+
+    // inscreve-se no log da réplica; devolve true se ela aceitou (era a primária) e depois caiu
+    private boolean tail(int id, InetSocketAddress addr) {
+        boolean accepted = false;
+        try (Socket s = new Socket()) {
+            s.connect(addr, CONNECT_TIMEOUT_MS);
+            s.setTcpNoDelay(true);
+            s.setSoTimeout(HEARTBEAT_TIMEOUT_MS);
+            Message join = new Message();
+            join.setType(MessageType.JOIN);
+            join.setPid(myId);
+            join.setString(PayloadField.ROLE, "standby");
+            join.setLong(PayloadField.TERM, term);
+            writeLine(s, join);
+
+            FrameReader reader = new FrameReader(s.getInputStream());
+            Message reuse = new Message();
+            Message ack = new Message();
+            ack.setType(MessageType.LOG);
+            ack.setPid(myId);
+            Message msg;
+            while (!leader && (msg = reader.read(reuse)) != null) {
+                if (msg.getType() != MessageType.LOG)
+                    continue;
+                if (msg.has(PayloadField.TERM) && !followTerm(id, msg.getLong(PayloadField.TERM)))
+                    break;
+                lastHeardNanos = System.nanoTime();
+                if (!accepted) {
+                    accepted = true;
+                    leaderId = id;
+                    preferred = false;
+                    Log.info("[COORD] Standby seguindo a primária " + id);
+                }
+                if (msg.has(PayloadField.HEARTBEAT)) {
+                    // confirma o lease só a quem não perdeu o termo para uma candidata que votamos
+                    long hbTerm = msg.getLong(PayloadField.TERM);
+                    if (hbTerm >= promised()) {
+                        ack.setLong(PayloadField.TERM, hbTerm);
+                        ack.setLong(PayloadField.HEARTBEAT, msg.getLong(PayloadField.HEARTBEAT));
+                        writeLine(s, ack);
+                    }
+                } else if (msg.has(PayloadField.COUNTER)) {
+                    onLogEntry.accept(msg);
+                }
+            }
+        } catch (IOException e) {
+            // recusada, sem heartbeat ou caiu
+        }
+        return accepted;
+    }
+
+    // termo anunciado pela primária seguida: menor que o nosso = primária antiga, deixamos
+    private synchronized boolean followTerm(int id, long t) {
+        if (t < term) {
+            Log.warn("[COORD] Réplica " + id + " ainda no termo " + t + " (atual " + term + "); ignorada");
+            return false;
+        }
+        if (t > term) {
+            term = t;
+            promised = Math.max(promised, t);
+            persist();
+        }
+        return true;
+    }
+
+    private synchronized long promised() {
+        return promised;
+    }
+
+    private void elect() {
+        synchronized (this) {
+            if (electing || leader)
+                return;
+            electing = true;
+        }
+        try {
+            // o lease da primária pode valer até LEASE_MS depois do último heartbeat que ouvimos
+            long quiet = System.nanoTime() - lastHeardNanos;
+            if (quiet < LEASE_NANOS) {
+                sleep((LEASE_NANOS - quiet) / 1_000_000 + 1);
+                return;
+            }
+            if (!preferred && higherAlive()) {
+                awaitCoordinator();
+                return;
+            }
+            long t;
+            synchronized (this) {
+                t = promised + 1;
+                promised = t;
+                if (!persist()) {
+                    promised = t - 1;
+                    return;
+                }
+            }
+            Log.info("[COORD] Réplica " + myId + " candidata no termo " + t);
+            int votes = 1;
+            for (Map.Entry<Integer, InetSocketAddress> r : replicas.entrySet()) {
+                if (r.getKey() != myId && requestVote(r.getKey(), r.getValue(), t))
+                    votes++;
+            }
+            synchronized (this) {
+                // promised mudou: votamos em outra candidata ou vimos um termo maior no meio
+                if (leader || promised != t || votes <= replicas.size() / 2) {
+                    Log.warn("[COORD] Réplica " + myId + " sem maioria no termo " + t + " (" + votes + " de "
+                            + replicas.size() + ")");
+                } else {
+                    term = t;
+                    persist();
+                    acks.clear();
+                    leaseExpiresNanos = System.nanoTime();
+                    leaderSinceNanos = System.nanoTime();
+                    leader = true;
+                    leaderId = myId;
+                    preferred = false;
+                    notifyAll();
+                }
+            }
+            if (leader) {
+                becomeLeader(t);
+                return;
+            }
+            // candidatas empatadas não repetem o mesmo passo
+            sleep(HEARTBEAT_TIMEOUT_MS + ThreadLocalRandom.current().nextInt(HEARTBEAT_TIMEOUT_MS));
+        } finally {
+            synchronized (this) {
+                electing = false;
+            }
+        }
+    }
+
+    private boolean higherAlive() {
+        boolean alive = false;
+        for (Map.Entry<Integer, InetSocketAddress> r : replicas.entrySet()) {
+            if (r.getKey() > myId && ask(r.getValue()))
+                alive = true;
+        }
+        return alive;
+    }
+
+    // uma réplica maior vai assumir; o followLoop a encontra pelo COORDINATOR ou tentando todas
+    private synchronized void awaitCoordinator() {
+        int before = leaderId;
+        long deadline = System.currentTimeMillis() + ELECTION_TIMEOUT_MS;
+        while (leaderId == before && !leader && System.currentTimeMillis() < deadline) {
+            try {
+                wait(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // VOTE -> ELECTION_OK (voto) ou VOTE com o termo de quem recusou
+    private boolean requestVote(int id, InetSocketAddress addr, long t) {
+        try (Socket s = new Socket()) {
+            s.connect(addr, CONNECT_TIMEOUT_MS);
+            s.setSoTimeout(VOTE_TIMEOUT_MS);
+            Message vote = new Message();
+            vote.setType(MessageType.VOTE);
+            vote.setPid(myId);
+            vote.setLong(PayloadField.TERM, t);
+            writeLine(s, vote);
+            Message reply = new FrameReader(s.getInputStream()).read(new Message());
+            if (reply == null)
+                return false;
+            if (reply.getType() == MessageType.ELECTION_OK)
+                return true;
+            if (reply.has(PayloadField.TERM)) {
+                long theirs = reply.getLong(PayloadField.TERM);
+                synchronized (this) {
+                    if (theirs > promised) {
+                        promised = theirs;
+                        persist();
+                    }
+                }
+                Log.info("[COORD] Réplica " + id + " recusou o voto no termo " + t + " (ouviu a primária há menos de "
+                        + LEASE_MS + "ms ou já votou no termo " + theirs + ")");
+            }
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    void onVote(Connection conn, int from, long t) {
+        boolean granted;
+        boolean wasLeader = false;
+        long mine;
+        synchronized (this) {
+            granted = t > promised && !isLeader() && System.nanoTime() - lastHeardNanos >= LEASE_NANOS;
+            if (granted) {
+                long before = promised;
+                promised = t;
+                if (persist()) {
+                    lastHeardNanos = System.nanoTime();
+                    wasLeader = leader;
+                } else {
+                    promised = before;
+                    granted = false;
+                }
+            }
+            mine = promised;
+        }
+        Message reply = new Message();
+        reply.setPid(myId);
+        if (granted) {
+            reply.setType(MessageType.ELECTION_OK);
+            reply.setLong(PayloadField.TERM, t);
+        } else {
+            reply.setType(MessageType.VOTE);
+            reply.setLong(PayloadField.TERM, mine);
+        }
+        conn.send(reply);
+        if (wasLeader)
+            demote("votou na réplica " + from + " no termo " + t);
+    }
+
+    // standby confirmando um heartbeat deste termo
+    synchronized void onAck(int from, long t, long sentNanos) {
+        if (!leader || t != term)
+            return;
+        acks.merge(from, sentNanos, Math::max);
+        int needed = replicas.size() / 2;
+        if (needed == 0 || acks.size() < needed)
+            return;
+        List<Long> sent = new ArrayList<>(acks.values());
+        sent.sort(Collections.reverseOrder());
+        long expires = sent.get(needed - 1) + LEASE_NANOS;
+        if (expires - leaseExpiresNanos > 0)
+            leaseExpiresNanos = expires;
+    }
+
+    // JOIN de uma standby: só a primária a aceita, e só se a standby não viu um termo mais novo
+    boolean acceptStandby(int from, long t) {
+        synchronized (this) {
+            if (!leader)
+                return false;
+            if (t <= term)
+                return true;
+            term = t;
+            promised = Math.max(promised, t);
+            persist();
+        }
+        demote("standby " + from + " já está no termo " + t);
+        return false;
+    }
+
+    private void becomeLeader(long t) {
+        Log.info("[COORD] Réplica " + myId + " assumiu como coordenador no termo " + t);
+        onPromote.run();
+        for (int id : replicas.keySet()) {
+            if (id != myId)
+                announce(id);
+        }
+    }
+
+    private void demote(String why) {
+        synchronized (this) {
+            if (!leader)
+                return;
+            leader = false;
+            notifyAll();
+        }
+        Log.warn("[COORD] Réplica " + myId + " deixa de ser a primária: " + why);
+        onDemote.run();
+        threadMode.start("coord-standby", this::followLoop);
+    }
+
+    // ELECTION de uma réplica menor: respondemos e, se não somos a primária, disputamos também
+    void onElection(Connection conn, int from) {
+        Message ok = new Message();
+        ok.setType(MessageType.ELECTION_OK);
+        ok.setPid(myId);
+        conn.send(ok);
+        if (leader) {
+            threadMode.start("coord-announce", () -> announce(from));
+        } else {
+            threadMode.start("coord-election", this::elect);
+        }
+    }
+
+    void onCoordinator(int id, long t) {
+        if (id == myId)
+            return;
+        boolean wasLeader;
+        synchronized (this) {
+            if (t < term) {
+                if (leader) {
+                    Log.warn("[COORD] Réplica " + id + " anunciou-se no termo " + t + "; esta está no " + term);
+                    threadMode.start("coord-announce", () -> announce(id));
+                }
+                return;
+            }
+            term = t;
+            promised = Math.max(promised, t);
+            persist();
+            leaderId = id;
+            wasLeader = leader;
+            notifyAll();
+        }
+        if (wasLeader)
+            demote("réplica " + id + " assumiu no termo " + t);
+        else
+            Log.info("[COORD] Nova primária: " + id + " (termo " + t + ")");
+    }
+
+    private void announce(int to) {
+        InetSocketAddress addr = replicas.get(to);
+        if (addr == null)
+            return;
+        Message announce = new Message();
+        announce.setType(MessageType.COORDINATOR);
+        announce.setPid(myId);
+        announce.setLong(PayloadField.TERM, term);
+        try (Socket s = new Socket()) {
+            s.connect(addr, CONNECT_TIMEOUT_MS);
+            writeLine(s, announce);
+        } catch (IOException ignored) {
+            // réplica fora do ar
+        }
+    }
+
+    // pergunta a uma réplica maior se está viva (ELECTION -> ELECTION_OK)
+    private boolean ask(InetSocketAddress addr) {
+        try (Socket s = new Socket()) {
+            s.connect(addr, CONNECT_TIMEOUT_MS);
+            s.setSoTimeout(CONNECT_TIMEOUT_MS);
+            Message election = new Message();
+            election.setType(MessageType.ELECTION);
+            election.setPid(myId);
+            writeLine(s, election);
+            Message reply = new FrameReader(s.getInputStream()).read(new Message());
+            return reply != null && reply.getType() == MessageType.ELECTION_OK;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // grava "termo voto" antes de responder (arquivo temporário + rename); chamado com o lock
+    private boolean persist() {
+        Path tmp = termFile.resolveSibling(termFile.getFileName() + ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ch.write(ByteBuffer.wrap((term + " " + promised + "\n").getBytes(StandardCharsets.UTF_8)));
+                ch.force(false);
+            }
+            Files.move(tmp, termFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            Log.error("[COORD] Falha ao gravar " + termFile + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static void writeLine(Socket s, Message msg) throws IOException {
+        OutputStream out = s.getOutputStream();
+        out.write((JsonCodec.encode(msg) + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import br.ifba.saj.distribuido.log.Log;
+import br.ifba.saj.distribuido.metrics.*;
+import br.ifba.saj.distribuido.model.Message;
+import br.ifba.saj.distribuido.protocol.EncodedMessage;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+// Caixa de saída da replicação de STATE. Cada nó tem uma entrada que só guarda quantas
+// atualizações estão pendentes por recurso; no flush ele recebe apenas o STATE mais recente
+// de cada recurso (os anteriores seriam descartados pelo nó, já que têm ts <= lastLamportTs).
+// O STATE é serializado uma vez e os mesmos bytes vão para todos os destinos.
+// O flush acontece a cada intervalo ou quando o número de atualizações pendentes atinge o lote.
+// O atraso de replicação de cada nó (do primeiro STATE pendente até o envio) vai para um
+// histograma com label pid no registro de métricas.
+class ReplicationOutbox {
+    private final int batchSize;
+    // recebe (pid destino, tarefa de envio); o coordenador aplica o limite por destino
+    private final BiConsumer<Integer, Runnable> sender;
+    private final ScheduledExecutorService flusher;
+    private final MetricsRegistry metrics;
+
+    private final Map<Integer, Target> targets = new ConcurrentHashMap<>();
+    // último STATE de cada recurso
+    private final Map<String, EncodedMessage> latest = new HashMap<>();
+    private int pending = 0;
+
+    // contadores: atualizações que seriam enviadas sem coalescência, enviadas de fato e coalescidas
+    private final LongAdder offered = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    private static class Target {
+        final Connection conn;
+        // recurso -> atualizações pendentes
+        final Map<String, Integer> pendingUpdates = new HashMap<>();
+        final LatencyHistogram lag;
+        long pendingSinceNanos;
+
+        Target(Connection conn, LatencyHistogram lag) {
+            this.conn = conn;
+            this.lag = lag;
+        }
+    }
+
+    ReplicationOutbox(long intervalMs, int batchSize, BiConsumer<Integer, Runnable> sender,
+            ScheduledExecutorService flusher, MetricsRegistry metrics) {
+        this.batchSize = batchSize;
+        this.metrics = metrics;
+        this.sender = sender;
+        this.flusher = flusher;
+        flusher.scheduleAtFixedRate(this::flush, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void register(int pid, Connection conn) {
+        targets.put(pid, new Target(conn, metrics.histogram("replication_lag_seconds",
+                "Atraso entre o STATE gerado e o envio ao nó", "pid", Integer.toString(pid))));
+    }
+
+    void unregister(int pid) {
+        targets.remove(pid);
+        metrics.remove("replication_lag_seconds", "pid", Integer.toString(pid));
+    }
+
+    void offer(String resource, Message state) {
+        offer(resource, state, -1);
+    }
+
+    // registra um novo STATE do recurso para todos os nós menos exceptPid (que já recebeu
+    // o STATE direto); estados com ts menor que o último já registrado para o mesmo
+    // recurso são coalescidos
+    void offer(String resource, Message state, int exceptPid) {
+        boolean flushNow;
+        synchronized (this) {
+            int n = targets.containsKey(exceptPid) ? targets.size() - 1 : targets.size();
+            offered.add(n);
+            EncodedMessage current = latest.get(resource);
+            if (current != null && state.getClock() < current.message().getClock()) {
+                coalesced.add(n);
+                return;
+            }
+            latest.put(resource, new EncodedMessage(state));
+            long now = System.nanoTime();
+            for (Map.Entry<Integer, Target> e : targets.entrySet()) {
+                if (e.getKey() == exceptPid)
+                    continue;
+                Target t = e.getValue();
+                if (t.pendingUpdates.isEmpty())
+                    t.pendingSinceNanos = now;
+                t.pendingUpdates.merge(resource, 1, Integer::sum);
+            }
+            pending += n;
+            flushNow = pending >= batchSize;
+        }
+        if (flushNow)
+            flusher.execute(this::flush);
+    }
+
+    void flush() {
+        List<Map.Entry<Integer, Runnable>> sends = new ArrayList<>();
+        synchronized (this) {
+            if (pending == 0)
+                return;
+            pending = 0;
+            for (Map.Entry<Integer, Target> e : targets.entrySet()) {
+                Target t = e.getValue();
+                if (t.pendingUpdates.isEmpty())
+                    continue;
+                List<EncodedMessage> msgs = new ArrayList<>(t.pendingUpdates.size());
+                for (Map.Entry<String, Integer> u : t.pendingUpdates.entrySet()) {
+                    coalesced.add(u.getValue() - 1);
+                    msgs.add(latest.get(u.getKey()));
+                }
+                t.pendingUpdates.clear();
+                final long since = t.pendingSinceNanos;
+                sent.add(msgs.size());
+                final int targetPid = e.getKey();
+                sends.add(Map.entry(targetPid, () -> {
+                    try {
+                        for (EncodedMessage msg : msgs)
+                            t.conn.sendEncoded(msg);
+                        t.lag.record(System.nanoTime() - since);
+                    } catch (Exception ex) {
+                        Log.error("[COORD] Erro ao replicar para pid=" + targetPid + ": " + ex.getMessage());
+                    }
+                }));
+            }
+        }
+        for (Map.Entry<Integer, Runnable> s : sends)
+            sender.accept(s.getKey(), s.getValue());
+    }
+
+    long offeredCount() {
+        return offered.sum();
+    }
+
+    long sentCount() {
+        return sent.sum();
+    }
+
+    long coalescedCount() {
+        return coalesced.sum();
+    }
+}
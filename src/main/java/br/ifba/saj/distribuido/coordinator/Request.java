@@ -0,0 +1,42 @@
+package br.ifba.saj.distribuido.coordinator;
+
+// Pedido de entrada na região crítica, ordenado por (rank, lamportTime, pid); o rank vem da
+// SchedulingPolicy (0 na política padrão) e priority do campo "priority" do REQUEST.
+// shared = leitura (compartilhada com outros leitores); senão escrita exclusiva.
+// token, lease e grantedNanos são preenchidos na concessão. batchId != 0: pedido BATCH_OP, cujo delta é
+// aplicado e liberado na própria concessão.
+class Request implements Comparable<Request> {
+    long lamportTime;
+    int pid;
+    Connection conn;
+    boolean shared;
+    long token;
+    LeaseWheel.Timeout lease;
+    long batchId;
+    int batchDelta;
+    long priority;
+    long rank;
+    // WFQ: etiqueta de início virtual
+    long startTag;
+    // posição no RequestHeap (-1 fora da fila)
+    int heapIndex = -1;
+    // métricas: espera na fila e tempo com o recurso
+    final long enqueuedNanos = System.nanoTime();
+    long grantedNanos;
+
+    Request(long lamportTime, int pid, Connection conn, boolean shared) {
+        this.lamportTime = lamportTime;
+        this.pid = pid;
+        this.conn = conn;
+        this.shared = shared;
+    }
+
+    @Override
+    public int compareTo(Request other) {
+        if (this.rank != other.rank)
+            return Long.compare(this.rank, other.rank);
+        if (this.lamportTime == other.lamportTime)
+            return Integer.compare(this.pid, other.pid);
+        return Long.compare(this.lamportTime, other.lamportTime);
+    }
+}
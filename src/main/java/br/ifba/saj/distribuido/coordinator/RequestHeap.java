@@ -0,0 +1,113 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+// Heap binário de pedidos com índice: cada Request guarda a própria posição (heapIndex), então
+// tirar um pedido qualquer da fila (conexão que caiu) custa O(log n) em vez da busca linear do
+// PriorityQueue. A ordem é a do Request.compareTo (rank da política, depois Lamport e pid).
+// Só a thread do núcleo usa o heap; size() é lido também pelas métricas (aproximado).
+class RequestHeap {
+    private Request[] heap = new Request[16];
+    private volatile int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void add(Request r) {
+        if (size == heap.length)
+            heap = Arrays.copyOf(heap, size * 2);
+        heap[size] = r;
+        r.heapIndex = size;
+        size++;
+        siftUp(r.heapIndex);
+    }
+
+    Request peek() {
+        return size == 0 ? null : heap[0];
+    }
+
+    Request poll() {
+        if (size == 0)
+            return null;
+        Request head = heap[0];
+        removeAt(0);
+        return head;
+    }
+
+    // false se o pedido não está na fila
+    boolean remove(Request r) {
+        int i = r.heapIndex;
+        if (i < 0 || i >= size || heap[i] != r)
+            return false;
+        removeAt(i);
+        return true;
+    }
+
+    // retira os pedidos que satisfazem o filtro; devolve os retirados
+    List<Request> removeIf(Predicate<Request> filter) {
+        List<Request> matched = new ArrayList<>(0);
+        for (int i = 0; i < size; i++) {
+            if (filter.test(heap[i]))
+                matched.add(heap[i]);
+        }
+        for (Request r : matched)
+            remove(r);
+        return matched;
+    }
+
+    private void removeAt(int i) {
+        Request removed = heap[i];
+        removed.heapIndex = -1;
+        int last = --size;
+        if (i != last) {
+            heap[i] = heap[last];
+            heap[i].heapIndex = i;
+            heap[last] = null;
+            if (!siftUp(i))
+                siftDown(i);
+        } else {
+            heap[last] = null;
+        }
+    }
+
+    // true se o elemento subiu
+    private boolean siftUp(int i) {
+        Request r = heap[i];
+        int start = i;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent].compareTo(r) <= 0)
+                break;
+            heap[i] = heap[parent];
+            heap[i].heapIndex = i;
+            i = parent;
+        }
+        heap[i] = r;
+        r.heapIndex = i;
+        return i != start;
+    }
+
+    private void siftDown(int i) {
+        Request r = heap[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && heap[right].compareTo(heap[child]) < 0)
+                child = right;
+            if (r.compareTo(heap[child]) <= 0)
+                break;
+            heap[i] = heap[child];
+            heap[i].heapIndex = i;
+            i = child;
+        }
+        heap[i] = r;
+        r.heapIndex = i;
+    }
+}
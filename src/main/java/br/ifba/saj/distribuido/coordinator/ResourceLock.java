@@ -0,0 +1,178 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import java.util.*;
+
+// Um recurso crítico nomeado: valor canônico, fila de pedidos ordenada por Lamport e os
+// detentores atuais. Só a thread do núcleo do coordenador altera o recurso, então nada
+// aqui é sincronizado.
+// Leitores compartilham o recurso entre si; escritores são exclusivos. A fila é um heap
+// indexado na ordem da SchedulingPolicy (por padrão (lamportTime, pid)): um escritor na cabeça bloqueia os leitores atrás dele e,
+// com escritor esperando, no máximo MAX_READERS_WHILE_WRITER_WAITS leitores são
+// concedidos antes dele (evita inanição de escritores por leitores com relógio baixo).
+// Cada concessão recebe um token de fencing crescente; DO_OP/RELEASE com token que não
+// é mais de um detentor (lease revogado) são recusados. Mensagens sem token (nós antigos)
+// são aceitas se vierem do pid detentor.
+// Toda mudança de valor ou de último token é avisada ao listener no momento em que ocorre,
+// então o log do coordenador recebe as mudanças de cada recurso na ordem em que ocorreram.
+class ResourceLock {
+    interface ChangeListener {
+        void changed(String name, int counter, long lastToken);
+    }
+
+    static final int MAX_READERS_WHILE_WRITER_WAITS = 32;
+
+    final String name;
+    private int counter = 0;
+    private long lastToken = 0;
+    private Request writer;
+    private final Map<Long, Request> readers = new HashMap<>();
+    private int waitingWriters = 0;
+    private int readersWhileWriterWaits = 0;
+    private final RequestHeap queue = new RequestHeap();
+    private final ChangeListener listener;
+    private final SchedulingPolicy policy;
+    private final SchedulingPolicy.FairState fair = new SchedulingPolicy.FairState();
+    // relógio do coordenador na última mudança de valor (anti-entropia, ver OpLog)
+    long version;
+
+    ResourceLock(String name, ChangeListener listener) {
+        this(name, listener, SchedulingPolicy.LAMPORT);
+    }
+
+    ResourceLock(String name, ChangeListener listener, SchedulingPolicy policy) {
+        this.name = name;
+        this.listener = listener;
+        this.policy = policy;
+    }
+
+    // estado recuperado do log (partida ou standby aplicando o log da primária)
+    void restore(int counter, long lastToken) {
+        this.counter = counter;
+        this.lastToken = Math.max(this.lastToken, lastToken);
+    }
+
+    void enqueue(Request req) {
+        policy.rank(req, fair);
+        queue.add(req);
+        if (!req.shared)
+            waitingWriters++;
+    }
+
+    // retira os pedidos que podem ser concedidos agora: um escritor, ou uma sequência de leitores
+    List<Request> pollGrants() {
+        List<Request> granted = new ArrayList<>(1);
+        Request head;
+        while ((head = queue.peek()) != null) {
+            if (!head.shared) {
+                if (writer == null && readers.isEmpty()) {
+                    queue.poll();
+                    waitingWriters--;
+                    readersWhileWriterWaits = 0;
+                    head.token = ++lastToken;
+                    policy.granted(head, fair);
+                    writer = head;
+                    granted.add(head);
+                }
+                break;
+            }
+            if (writer != null)
+                break;
+            if (waitingWriters > 0 && readersWhileWriterWaits >= MAX_READERS_WHILE_WRITER_WAITS)
+                break;
+            queue.poll();
+            head.token = ++lastToken;
+            policy.granted(head, fair);
+            readers.put(head.token, head);
+            if (waitingWriters > 0)
+                readersWhileWriterWaits++;
+            granted.add(head);
+        }
+        if (!granted.isEmpty())
+            listener.changed(name, counter, lastToken);
+        return granted;
+    }
+
+    // libera a concessão identificada por token (ou por pid, se token == 0);
+    // devolve o pedido liberado ou null se não era mais detentor
+    Request release(boolean shared, long token, int pid) {
+        if (shared) {
+            if (token != 0)
+                return readers.remove(token);
+            for (Request r : readers.values()) {
+                if (r.pid == pid)
+                    return readers.remove(r.token);
+            }
+            return null;
+        }
+        if (!isWriter(token, pid))
+            return null;
+        Request r = writer;
+        writer = null;
+        return r;
+    }
+
+    // conexão morta ou fechada: tira da fila os pedidos dela; devolve quantos saíram
+    int purgeQueued(Connection conn) {
+        List<Request> purged = queue.removeIf(r -> r.conn == conn);
+        policy.purged(purged, fair);
+        for (Request r : purged) {
+            if (!r.shared)
+                waitingWriters--;
+        }
+        return purged.size();
+    }
+
+    // revoga as concessões que a conexão ainda detém (escritor e/ou leitores)
+    List<Request> revokeHeldBy(Connection conn) {
+        List<Request> revoked = new ArrayList<>(0);
+        if (writer != null && writer.conn == conn) {
+            revoked.add(writer);
+            writer = null;
+        }
+        readers.values().removeIf(r -> {
+            if (r.conn != conn)
+                return false;
+            revoked.add(r);
+            return true;
+        });
+        return revoked;
+    }
+
+    // revoga a concessão com esse token (lease expirado); null se já foi liberada
+    Request revoke(long token) {
+        if (writer != null && writer.token == token) {
+            Request r = writer;
+            writer = null;
+            return r;
+        }
+        return readers.remove(token);
+    }
+
+    boolean isWriter(long token, int pid) {
+        if (writer == null)
+            return false;
+        return token != 0 ? writer.token == token : writer.pid == pid;
+    }
+
+    // aplica o delta só se quem pede ainda é o escritor; devolve o novo valor ou null (cercado)
+    Integer applyIfWriter(long token, int pid, int delta) {
+        if (!isWriter(token, pid))
+            return null;
+        counter += delta;
+        listener.changed(name, counter, lastToken);
+        return counter;
+    }
+
+    // lido também pelas métricas em outra thread: valor aproximado
+    int queued() {
+        return queue.size();
+    }
+
+    int counter() {
+        return counter;
+    }
+
+    long lastToken() {
+        return lastToken;
+    }
+}
@@ -0,0 +1,131 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Ordem da fila de cada recurso (--sched=lamport|wfq|priority). A política calcula um rank
+// uma única vez, no enqueue, e a fila ordena por (rank, lamportTime, pid): nada precisa ser
+// reordenado depois, nem com envelhecimento.
+// - lamport (padrão): rank 0, só (lamportTime, pid) como antes;
+// - wfq: weighted fair queuing por pid. Cada pedido ganha uma etiqueta de término virtual
+//   F = max(V, F anterior do pid) + 1/peso, e V avança para a etiqueta de início do pedido
+//   concedido. Um nó com relógio baixo ou que pede muito não passa à frente dos outros; com
+//   --weights=pid:peso,... um pid recebe uma fatia proporcional ao peso (padrão 1);
+// - priority: classe no campo "priority" do REQUEST (maior = mais urgente, padrão 0). Com
+//   --aging=ms cada classe vale agingMs de espera: rank = chegada - classe * agingMs, então um
+//   pedido de classe baixa que esperou mais que a diferença passa à frente (sem inanição).
+//   Dentro da classe vale a ordem de chegada ao coordenador.
+//   --aging=0 é prioridade estrita. A classe é limitada a ±MAX_CLASS e o crédito satura em vez
+//   de dar a volta, então valores enormes de --priority ou --aging não invertem a ordem.
+class SchedulingPolicy {
+    enum Kind {
+        LAMPORT, WFQ, PRIORITY
+    }
+
+    static final SchedulingPolicy LAMPORT = new SchedulingPolicy(Kind.LAMPORT, Map.of(), 0);
+
+    // custo de um pedido com peso 1, em unidades de tempo virtual
+    private static final long WFQ_UNIT = 1L << 20;
+    static final long MAX_CLASS = 1L << 20;
+
+    final Kind kind;
+    private final Map<Integer, Integer> weights;
+    private final long agingNanos;
+
+    SchedulingPolicy(Kind kind, Map<Integer, Integer> weights, long agingMs) {
+        this.kind = kind;
+        this.weights = weights;
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMs);
+    }
+
+    // --sched=..., --weights=1:4,2:1 e --aging=ms (padrão 100)
+    static SchedulingPolicy fromArgs(String[] args) {
+        Kind kind = Kind.LAMPORT;
+        Map<Integer, Integer> weights = new HashMap<>();
+        long agingMs = 100;
+        for (String a : args) {
+            if (a.startsWith("--sched="))
+                kind = Kind.valueOf(a.substring("--sched=".length()).toUpperCase());
+            if (a.startsWith("--aging="))
+                agingMs = Long.parseLong(a.substring("--aging=".length()));
+            if (a.startsWith("--weights=")) {
+                for (String w : a.substring("--weights=".length()).split(",")) {
+                    String[] pw = w.split(":");
+                    weights.put(Integer.parseInt(pw[0]), Math.max(1, Integer.parseInt(pw[1])));
+                }
+            }
+        }
+        return new SchedulingPolicy(kind, weights, agingMs);
+    }
+
+    // estado do WFQ de um recurso
+    static final class FairState {
+        long virtualTime;
+        final Map<Integer, Long> lastFinish = new HashMap<>();
+    }
+
+    void rank(Request r, FairState fair) {
+        switch (kind) {
+            case LAMPORT -> r.rank = 0;
+            case WFQ -> {
+                long start = Math.max(fair.virtualTime, fair.lastFinish.getOrDefault(r.pid, 0L));
+                long finish = start + WFQ_UNIT / weights.getOrDefault(r.pid, 1);
+                fair.lastFinish.put(r.pid, finish);
+                r.startTag = start;
+                r.rank = finish;
+            }
+            case PRIORITY -> {
+                long p = Math.max(-MAX_CLASS, Math.min(MAX_CLASS, r.priority));
+                r.rank = agingNanos > 0 ? minusSaturated(r.enqueuedNanos, timesSaturated(p, agingNanos)) : -p;
+            }
+        }
+    }
+
+    // pedidos que saíram da fila sem serem concedidos (nó caiu): o WFQ devolve ao pid o tempo
+    // virtual cobrado por eles, senão o próximo pedido dele pagaria por serviço que não recebeu.
+    // Só se nenhum pedido posterior do pid (de uma conexão nova) já foi etiquetado depois deles
+    void purged(List<Request> purged, FairState fair) {
+        if (kind != Kind.WFQ || purged.isEmpty())
+            return;
+        Map<Integer, long[]> byPid = new HashMap<>(); // pid -> {menor início, maior término}
+        for (Request r : purged) {
+            long[] tags = byPid.computeIfAbsent(r.pid, k -> new long[] { Long.MAX_VALUE, Long.MIN_VALUE });
+            tags[0] = Math.min(tags[0], r.startTag);
+            tags[1] = Math.max(tags[1], r.rank);
+        }
+        for (Map.Entry<Integer, long[]> e : byPid.entrySet()) {
+            Long last = fair.lastFinish.get(e.getKey());
+            if (last != null && last == e.getValue()[1])
+                fair.lastFinish.put(e.getKey(), e.getValue()[0]);
+        }
+    }
+
+    private static long timesSaturated(long a, long b) {
+        long hi = Math.multiplyHigh(a, b);
+        long lo = a * b;
+        if ((hi == 0 && lo >= 0) || (hi == -1 && lo < 0))
+            return lo;
+        return (a < 0) == (b < 0) ? Long.MAX_VALUE : Long.MIN_VALUE;
+    }
+
+    private static long minusSaturated(long a, long b) {
+        long r = a - b;
+        if (((a ^ b) & (a ^ r)) < 0)
+            return a < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        return r;
+    }
+
+    void granted(Request r, FairState fair) {
+        if (kind == Kind.WFQ)
+            fair.virtualTime = Math.max(fair.virtualTime, r.startTag);
+    }
+
+    @Override
+    public String toString() {
+        return switch (kind) {
+            case LAMPORT -> "lamport";
+            case WFQ -> "wfq" + (weights.isEmpty() ? "" : " pesos=" + weights);
+            case PRIORITY -> "priority" + (agingNanos > 0 ? " aging=" + agingNanos / 1_000_000 + "ms" : " estrita");
+        };
+    }
+}
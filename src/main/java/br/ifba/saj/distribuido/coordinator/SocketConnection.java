@@ -0,0 +1,110 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import br.ifba.saj.distribuido.log.Log;
+import br.ifba.saj.distribuido.model.*;
+import br.ifba.saj.distribuido.protocol.*;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Conexão do modo bloqueante: um Socket TCP (ou um SocketChannel Unix, ver --unix) por nó. send() só serializa e põe na fila de saída da
+// conexão; uma thread escritora por nó esvazia a fila e faz um flush por rajada, então quem
+// envia (o núcleo do coordenador, a replicação) nunca bloqueia no socket de um nó lento.
+// Como no NIO, o nó que acumula mais que MAX_PENDING bytes sem ler é desconectado.
+class SocketConnection implements Connection {
+    private static final long MAX_PENDING = 4 * 1024 * 1024;
+
+    private final Closeable channel;
+    private final OutputStream out;
+    private final Queue<byte[]> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean writerParked;
+    private volatile boolean closed;
+    private volatile WireFormat format = WireFormat.JSON;
+
+    SocketConnection(Socket socket, ThreadMode threadMode) throws IOException {
+        this(socket, tcpOutput(socket), threadMode);
+    }
+
+    // channel é fechado no close(); out é o lado de escrita dele
+    SocketConnection(Closeable channel, OutputStream out, ThreadMode threadMode) {
+        this.channel = channel;
+        this.out = new BufferedOutputStream(out);
+        this.writer = threadMode.start("coord-writer", this::writeLoop);
+    }
+
+    private static OutputStream tcpOutput(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        return socket.getOutputStream();
+    }
+
+    @Override
+    public void send(Message msg) {
+        if (closed)
+            return;
+        enqueue(format == WireFormat.BINARY ? BinaryCodec.encodeToArray(msg)
+                : (JsonCodec.encode(msg) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void sendEncoded(EncodedMessage msg) {
+        if (closed)
+            return;
+        enqueue(msg.bytes(format));
+    }
+
+    private void enqueue(byte[] bytes) {
+        outbound.add(bytes);
+        if (pendingBytes.addAndGet(bytes.length) > MAX_PENDING) {
+            Log.warn("[COORD] Nó lento demais (" + pendingBytes.get() + " bytes pendentes), desconectando");
+            close();
+            return;
+        }
+        if (writerParked)
+            LockSupport.unpark(writer);
+    }
+
+    // thread escritora: grava tudo que estiver na fila e só faz flush quando ela esvazia
+    private void writeLoop() {
+        try {
+            while (!closed) {
+                byte[] bytes = outbound.poll();
+                if (bytes != null) {
+                    out.write(bytes);
+                    pendingBytes.addAndGet(-bytes.length);
+                    continue;
+                }
+                out.flush();
+                writerParked = true;
+                if (outbound.isEmpty() && !closed)
+                    LockSupport.park(this);
+                writerParked = false;
+            }
+        } catch (IOException e) {
+            // o leitor da conexão percebe o socket fechado e trata a desconexão
+            close();
+        }
+    }
+
+    @Override
+    public void setWireFormat(WireFormat format) {
+        this.format = format;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        outbound.clear();
+        LockSupport.unpark(writer);
+    }
+}
@@ -0,0 +1,126 @@
+package br.ifba.saj.distribuido.log;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// Log assíncrono com níveis (--log-level=debug|info|warn|error, padrão info).
+// Quem loga só enfileira; uma thread escreve no console (DEBUG/INFO no stdout, WARN/ERROR no
+// stderr), então o println não fica mais no caminho das mensagens. As linhas por mensagem
+// (GRANT, DO_OP, STATE, RELEASE...) são DEBUG e devem ser guardadas por debugEnabled(), para
+// nem montar a string quando o nível está acima. Com a fila cheia, DEBUG/INFO são descartados
+// (e contados); WARN/ERROR esperam vaga. Um shutdown hook esvazia a fila na saída.
+public final class Log {
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private record Entry(Level level, String text) {
+    }
+
+    private static final int CAPACITY = 64 * 1024;
+    private static final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private static final LongAdder dropped = new LongAdder();
+    private static final Object writeLock = new Object();
+    private static volatile Level level = Level.INFO;
+
+    static {
+        Thread writer = new Thread(Log::writeLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-flush"));
+    }
+
+    private Log() {
+    }
+
+    public static void configure(String[] args) {
+        for (String a : args) {
+            if (a.startsWith("--log-level="))
+                level = Level.valueOf(a.substring("--log-level=".length()).toUpperCase());
+        }
+    }
+
+    public static void setLevel(Level l) {
+        level = l;
+    }
+
+    public static boolean debugEnabled() {
+        return level == Level.DEBUG;
+    }
+
+    public static void debug(String text) {
+        log(Level.DEBUG, text);
+    }
+
+    public static void info(String text) {
+        log(Level.INFO, text);
+    }
+
+    public static void warn(String text) {
+        log(Level.WARN, text);
+    }
+
+    public static void error(String text) {
+        log(Level.ERROR, text);
+    }
+
+    public static long droppedCount() {
+        return dropped.sum();
+    }
+
+    private static void log(Level l, String text) {
+        if (l.compareTo(level) < 0)
+            return;
+        Entry e = new Entry(l, text);
+        if (l.compareTo(Level.WARN) >= 0) {
+            try {
+                queue.put(e);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (!queue.offer(e)) {
+            dropped.increment();
+        }
+    }
+
+    // escreve o que estiver na fila (usado antes de trocar o System.out e na saída)
+    public static void flush() {
+        List<Entry> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        write(batch);
+    }
+
+    private static void writeLoop() {
+        List<Entry> batch = new ArrayList<>(1024);
+        long reportedDrops = 0;
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, 1023);
+                write(batch);
+                batch.clear();
+                long drops = dropped.sum();
+                if (drops != reportedDrops) {
+                    System.err.println("[LOG] " + (drops - reportedDrops) + " mensagens descartadas (fila cheia)");
+                    reportedDrops = drops;
+                }
+            }
+        } catch (InterruptedException e) {
+            // encerrado
+        }
+    }
+
+    private static void write(List<Entry> batch) {
+        synchronized (writeLock) {
+            PrintStream out = System.out;
+            PrintStream err = System.err;
+            for (Entry e : batch)
+                (e.level.compareTo(Level.WARN) >= 0 ? err : out).println(e.text);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package br.ifba.saj.distribuido.metrics;
+
+import br.ifba.saj.distribuido.log.Log;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+// Expõe um MetricsRegistry como MBean (jconsole/VisualVM): contadores e gauges viram atributos
+// long; cada histograma vira <nome>_count, _p50_ms, _p99_ms, _p999_ms e _max_ms.
+// Os atributos são montados a cada consulta, então métricas registradas depois aparecem.
+public class JmxExporter implements DynamicMBean {
+    private final MetricsRegistry registry;
+    private final ObjectName name;
+
+    private JmxExporter(MetricsRegistry registry, ObjectName name) {
+        this.registry = registry;
+        this.name = name;
+    }
+
+    // ex.: register(registry, "type=Coordinator"); devolve null se não conseguiu registrar
+    public static JmxExporter register(MetricsRegistry registry, String properties) {
+        try {
+            ObjectName on = new ObjectName("br.ifba.saj.distribuido:" + properties);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(on))
+                server.unregisterMBean(on);
+            JmxExporter exporter = new JmxExporter(registry, on);
+            server.registerMBean(exporter, on);
+            return exporter;
+        } catch (JMException e) {
+            Log.warn("[METRICS] JMX indisponível: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException ignored) {
+        }
+    }
+
+    private Map<String, Object> values() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (MetricsRegistry.Metric m : registry.all()) {
+            String base = m.labelName() == null ? m.name() : m.name() + "_" + m.labelName() + "_" + m.labelValue();
+            if (m.kind() != MetricsRegistry.Kind.SUMMARY) {
+                out.put(base, MetricsRegistry.read(m));
+                continue;
+            }
+            LatencyHistogram h = (LatencyHistogram) m.value();
+            out.put(base + "_count", h.count());
+            out.put(base + "_p50_ms", h.percentile(50) / 1e6);
+            out.put(base + "_p99_ms", h.percentile(99) / 1e6);
+            out.put(base + "_p999_ms", h.percentile(99.9) / 1e6);
+            out.put(base + "_max_ms", h.max() / 1e6);
+        }
+        return out;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Object v = values().get(attribute);
+        if (v == null)
+            throw new AttributeNotFoundException(attribute);
+        return v;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Object> all = values();
+        AttributeList list = new AttributeList();
+        for (String a : attributes) {
+            if (all.containsKey(a))
+                list.add(new Attribute(a, all.get(a)));
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("métricas são somente leitura");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException {
+        throw new MBeanException(new UnsupportedOperationException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attrs = new ArrayList<>();
+        for (Map.Entry<String, Object> e : values().entrySet()) {
+            attrs.add(new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(), e.getKey(), true, false,
+                    false));
+        }
+        return new MBeanInfo(getClass().getName(), "Métricas " + name, attrs.toArray(new MBeanAttributeInfo[0]), null,
+                null, null);
+    }
+}
@@ -0,0 +1,101 @@
+package br.ifba.saj.distribuido.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Histograma de latências no estilo HdrHistogram: baldes log-lineares, 64 sub-baldes por
+// potência de 2 (erro relativo < 1,6%), de 1ns até ~2^40ns (18 min); valores maiores caem no
+// último balde. record não aloca nem usa lock (um incremento atômico no balde), então pode
+// ficar no caminho quente de várias threads; as leituras são aproximadas durante gravações.
+public class LatencyHistogram {
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS; // valores < 128 têm balde exato
+    private static final int HALF = SUB_COUNT / 2;
+    private static final int MAX_SHIFT = 40 - SUB_BITS + 1;
+    private static final int SIZE = SUB_COUNT + MAX_SHIFT * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts.incrementAndGet(index(nanos));
+        total.incrementAndGet();
+        sum.addAndGet(nanos);
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+        }
+    }
+
+    // soma as contagens de outro histograma neste
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < SIZE; i++) {
+            long c = other.counts.get(i);
+            if (c != 0)
+                counts.addAndGet(i, c);
+        }
+        total.addAndGet(other.total.get());
+        sum.addAndGet(other.sum.get());
+        long m;
+        long om = other.max.get();
+        while (om > (m = max.get()) && !max.compareAndSet(m, om)) {
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < SIZE; i++)
+            counts.set(i, 0);
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    public long count() {
+        return total.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = total.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    // valor (ns) abaixo do qual estão p% das amostras, ex.: percentile(99.9)
+    public long percentile(double p) {
+        long n = total.get();
+        if (n == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < SIZE; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(highestIn(i), max.get());
+        }
+        return max.get();
+    }
+
+    static int index(long v) {
+        if (v < SUB_COUNT)
+            return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - (SUB_BITS - 1);
+        if (shift > MAX_SHIFT)
+            return SIZE - 1;
+        return SUB_COUNT + (shift - 1) * HALF + (int) ((v >>> shift) - HALF);
+    }
+
+    // maior valor que cai no balde i
+    static long highestIn(int i) {
+        if (i < SUB_COUNT)
+            return i;
+        int shift = (i - SUB_COUNT) / HALF + 1;
+        long sub = (i - SUB_COUNT) % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
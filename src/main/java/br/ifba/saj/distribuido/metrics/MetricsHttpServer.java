@@ -0,0 +1,39 @@
+package br.ifba.saj.distribuido.metrics;
+
+import br.ifba.saj.distribuido.log.Log;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+// GET /metrics em texto Prometheus, só em loopback (--metrics-port=N).
+public class MetricsHttpServer {
+    private final HttpServer server;
+
+    private MetricsHttpServer(HttpServer server) {
+        this.server = server;
+    }
+
+    public static MetricsHttpServer start(int port, MetricsRegistry registry) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/metrics", exchange -> {
+            StringBuilder sb = new StringBuilder(4096);
+            registry.writePrometheus(sb);
+            byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        Log.info("[METRICS] Métricas em http://127.0.0.1:" + server.getAddress().getPort() + "/metrics");
+        return new MetricsHttpServer(server);
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,101 @@
+package br.ifba.saj.distribuido.metrics;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Métricas de um processo (coordenador) ou nó: contadores, gauges e histogramas de latência.
+// Os objetos são criados no registro, fora do caminho quente; gravar é um LongAdder.increment
+// ou um LatencyHistogram.record, sem alocação nem lock. Gauges são lidos só na coleta.
+// Exportadas em texto Prometheus (MetricsHttpServer) e como atributos JMX (JmxExporter).
+public class MetricsRegistry {
+    public enum Kind {
+        COUNTER, GAUGE, SUMMARY
+    }
+
+    // label opcional (ex.: pid="3"); value é LongAdder, LongSupplier ou LatencyHistogram
+    public record Metric(String name, String help, Kind kind, String labelName, String labelValue, Object value) {
+        String key() {
+            return labelName == null ? name : name + "{" + labelName + "=\"" + labelValue + "\"}";
+        }
+    }
+
+    private final String prefix;
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    public MetricsRegistry(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public LongAdder counter(String name, String help) {
+        return (LongAdder) register(new Metric(prefix + "_" + name, help, Kind.COUNTER, null, null, new LongAdder()));
+    }
+
+    public void gauge(String name, String help, LongSupplier value) {
+        metrics.put(prefix + "_" + name, new Metric(prefix + "_" + name, help, Kind.GAUGE, null, null, value));
+    }
+
+    public LatencyHistogram histogram(String name, String help) {
+        return histogram(name, help, null, null);
+    }
+
+    public LatencyHistogram histogram(String name, String help, String labelName, String labelValue) {
+        return (LatencyHistogram) register(
+                new Metric(prefix + "_" + name, help, Kind.SUMMARY, labelName, labelValue, new LatencyHistogram()));
+    }
+
+    // registra um histograma que já existe (ex.: o do NodeClient usado pelos harnesses)
+    public void histogram(String name, String help, LatencyHistogram h) {
+        metrics.put(prefix + "_" + name, new Metric(prefix + "_" + name, help, Kind.SUMMARY, null, null, h));
+    }
+
+    public void remove(String name, String labelName, String labelValue) {
+        metrics.remove(new Metric(prefix + "_" + name, "", Kind.SUMMARY, labelName, labelValue, null).key());
+    }
+
+    // mesmo nome e label devolvem o objeto já registrado
+    private Object register(Metric m) {
+        return metrics.computeIfAbsent(m.key(), k -> m).value();
+    }
+
+    public Collection<Metric> all() {
+        return metrics.values();
+    }
+
+    public static long read(Metric m) {
+        return switch (m.kind()) {
+            case COUNTER -> ((LongAdder) m.value()).sum();
+            case GAUGE -> ((LongSupplier) m.value()).getAsLong();
+            case SUMMARY -> ((LatencyHistogram) m.value()).count();
+        };
+    }
+
+    // formato de exposição em texto do Prometheus; latências em segundos
+    public void writePrometheus(Appendable out) throws IOException {
+        String lastName = null;
+        for (Metric m : metrics.values()) {
+            if (!m.name().equals(lastName)) {
+                out.append("# HELP ").append(m.name()).append(' ').append(m.help()).append('\n');
+                out.append("# TYPE ").append(m.name()).append(' ').append(m.kind().name().toLowerCase()).append('\n');
+                lastName = m.name();
+            }
+            if (m.kind() != Kind.SUMMARY) {
+                out.append(m.key()).append(' ').append(Long.toString(read(m))).append('\n');
+                continue;
+            }
+            LatencyHistogram h = (LatencyHistogram) m.value();
+            String labels = m.labelName() == null ? "" : m.labelName() + "=\"" + m.labelValue() + "\",";
+            for (double q : new double[] { 0.5, 0.99, 0.999 }) {
+                out.append(m.name()).append("{").append(labels).append("quantile=\"").append(Double.toString(q))
+                        .append("\"} ").append(Double.toString(h.percentile(q * 100) / 1e9)).append('\n');
+            }
+            String suffixLabels = m.labelName() == null ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+            out.append(m.name()).append("_sum").append(suffixLabels).append(' ')
+                    .append(Double.toString(h.mean() * h.count() / 1e9)).append('\n');
+            out.append(m.name()).append("_count").append(suffixLabels).append(' ').append(Long.toString(h.count()))
+                    .append('\n');
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package br.ifba.saj.distribuido.model;
+
+// Relógio lógico híbrido (HLC) empacotado num long: 48 bits de tempo físico em ms e 16 bits
+// de contador lógico. Cada evento leva max(último + 1, agora << 16, remoto + 1), então continua
+// valendo a ordem de Lamport (e os valores se comparam como long), mas o timestamp fica próximo
+// do relógio de parede e serve para correlacionar logs de máquinas diferentes.
+// Mais de 65536 eventos no mesmo ms transbordam o contador para o campo físico, o que só
+// adianta o relógio um pouco; a ordem é preservada.
+public class HybridLogicalClock extends LamportClock {
+    static final int LOGICAL_BITS = 16;
+
+    @Override
+    public long increment() {
+        long cur, next;
+        do {
+            cur = time.get();
+            next = Math.max(cur + 1, physicalNow());
+        } while (!time.compareAndSet(cur, next));
+        return next;
+    }
+
+    @Override
+    public long update(long remote) {
+        long cur, next;
+        do {
+            cur = time.get();
+            next = Math.max(Math.max(cur, remote) + 1, physicalNow());
+        } while (!time.compareAndSet(cur, next));
+        return next;
+    }
+
+    // parte física de um timestamp, em ms desde a época
+    public static long physicalMillis(long hlc) {
+        return hlc >>> LOGICAL_BITS;
+    }
+
+    private static long physicalNow() {
+        return System.currentTimeMillis() << LOGICAL_BITS;
+    }
+}
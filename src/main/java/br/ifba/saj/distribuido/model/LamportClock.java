@@ -1,18 +1,35 @@
 package br.ifba.saj.distribuido.model;
 
+import java.util.concurrent.atomic.AtomicLong;
+
+// Relógio de Lamport de 64 bits sem monitores: increment é um incrementAndGet e update um laço
+// de CAS, então a thread de escuta, o agendador e o caminho da operação nunca disputam lock.
+// --clock=hlc troca pelo HybridLogicalClock (mesma interface, valores também comparáveis como long).
 public class LamportClock {
-    private int time = 0;
+    protected final AtomicLong time = new AtomicLong();
+
+    public static LamportClock fromArgs(String[] args) {
+        for (String a : args) {
+            if (a.equals("--clock=hlc"))
+                return new HybridLogicalClock();
+        }
+        return new LamportClock();
+    }
 
-    public synchronized int increment() {
-        return ++time;
+    public long increment() {
+        return time.incrementAndGet();
     }
 
-    public synchronized int update(int remote) {
-        time = Math.max(time, remote) + 1;
-        return time;
+    public long update(long remote) {
+        long cur, next;
+        do {
+            cur = time.get();
+            next = Math.max(cur, remote) + 1;
+        } while (!time.compareAndSet(cur, next));
+        return next;
     }
 
-    public synchronized int getTime() {
-        return time;
+    public long getTime() {
+        return time.get();
     }
 }
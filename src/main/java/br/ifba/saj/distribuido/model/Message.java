@@ -1,11 +1,27 @@
 package br.ifba.saj.distribuido.model;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 public class Message {
+    public static final String DEFAULT_RESOURCE = "default";
+    // limite do nome de recurso em bytes UTF-8: o nome vai inteiro para cada registro do log do
+    // coordenador, que guarda o tamanho do registro em 16 bits sem sinal
+    public static final int MAX_RESOURCE_BYTES = 1024;
+    // modos de acesso ao recurso (campo "mode"); ausente = escrita exclusiva
+    public static final String MODE_READ = "read";
+    public static final String MODE_WRITE = "write";
+
     private MessageType type;
     private int pid;
-    private int clock;
+    private long clock;
     private String payload;
 
+    // campos tipados do payload (transient: o Gson usa apenas a string "payload")
+    private transient int present;
+    private transient final long[] longs = new long[PayloadField.count()];
+    private transient final String[] strings = new String[PayloadField.count()];
+
     public MessageType getType() {
         return type;
     }
@@ -22,11 +38,11 @@ public class Message {
         this.pid = pid;
     }
 
-    public int getClock() {
+    public long getClock() {
         return clock;
     }
 
-    public void setClock(int clock) {
+    public void setClock(long clock) {
         this.clock = clock;
     }
 
@@ -37,4 +53,103 @@ public class Message {
     public void setPayload(String payload) {
         this.payload = payload;
     }
+
+    public boolean has(PayloadField field) {
+        return (present & field.bit()) != 0;
+    }
+
+    public boolean hasFields() {
+        return present != 0;
+    }
+
+    public long getLong(PayloadField field) {
+        return longs[field.ordinal()];
+    }
+
+    public void setLong(PayloadField field, long value) {
+        longs[field.ordinal()] = value;
+        present |= field.bit();
+    }
+
+    public String getString(PayloadField field) {
+        return strings[field.ordinal()];
+    }
+
+    public void setString(PayloadField field, String value) {
+        strings[field.ordinal()] = value;
+        present |= field.bit();
+    }
+
+    public int getCounter() {
+        return (int) getLong(PayloadField.COUNTER);
+    }
+
+    public void setCounter(int counter) {
+        setLong(PayloadField.COUNTER, counter);
+    }
+
+    public int getDelta() {
+        return (int) getLong(PayloadField.DELTA);
+    }
+
+    public void setDelta(int delta) {
+        setLong(PayloadField.DELTA, delta);
+    }
+
+    public String getReason() {
+        return getString(PayloadField.REASON);
+    }
+
+    public void setReason(String reason) {
+        setString(PayloadField.REASON, reason);
+    }
+
+    // recurso crítico alvo; ausente = recurso padrão (o contador original)
+    public String getResource() {
+        String r = getString(PayloadField.RESOURCE);
+        return r != null ? r : DEFAULT_RESOURCE;
+    }
+
+    // um char UTF-16 vira no máximo 3 bytes: nomes curtos dispensam a codificação
+    public static boolean isValidResource(String name) {
+        return name.length() * 3 <= MAX_RESOURCE_BYTES
+                || name.getBytes(StandardCharsets.UTF_8).length <= MAX_RESOURCE_BYTES;
+    }
+
+    public void setResource(String resource) {
+        if (!DEFAULT_RESOURCE.equals(resource))
+            setString(PayloadField.RESOURCE, resource);
+    }
+
+    public boolean isSharedRead() {
+        return MODE_READ.equals(getString(PayloadField.MODE));
+    }
+
+    public void setSharedRead(boolean shared) {
+        if (shared)
+            setString(PayloadField.MODE, MODE_READ);
+    }
+
+    // copia todos os campos de outra mensagem (sem alocação); usado quando a mensagem
+    // decodificada é reaproveitada pelo leitor e precisa ser guardada
+    public void copyFrom(Message other) {
+        type = other.type;
+        pid = other.pid;
+        clock = other.clock;
+        payload = other.payload;
+        present = other.present;
+        System.arraycopy(other.longs, 0, longs, 0, longs.length);
+        System.arraycopy(other.strings, 0, strings, 0, strings.length);
+    }
+
+    // limpa a mensagem para reutilização (decodificação sem alocação)
+    public void reset() {
+        type = null;
+        pid = 0;
+        clock = 0;
+        payload = null;
+        present = 0;
+        Arrays.fill(longs, 0);
+        Arrays.fill(strings, null);
+    }
 }
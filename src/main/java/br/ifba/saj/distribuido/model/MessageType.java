@@ -1,5 +1,35 @@
 package br.ifba.saj.distribuido.model;
 
 public enum MessageType {
-    JOIN, REQUEST, GRANT, RELEASE, DO_OP, STATE, ROLLBACK
+    JOIN, REQUEST, GRANT, RELEASE, DO_OP, STATE, ROLLBACK,
+    // modo descentralizado (Ricart–Agrawala): lista de membros vinda do coordenador e pedidos/respostas entre pares
+    MEMBERS, RA_REQUEST, RA_REPLY,
+    // lease expirado ou operação de detentor antigo cercada pelo token
+    REVOKE,
+    // réplicas do coordenador: log enviado às standbys (sem campos = heartbeat) e eleição bully
+    LOG, ELECTION, ELECTION_OK, COORDINATOR,
+    // snapshot global (Chandy–Lamport): marcador da época, ida e volta; ROLLBACK pode levar a época
+    MARKER,
+    // caminho rápido: GRANT + DO_OP + RELEASE num só pedido, respondido com um STATE
+    BATCH_OP,
+    // nó -> coordenador a intervalos fixos, para o detector de falhas (sem resposta)
+    HEARTBEAT,
+    // anti-entropia: nó -> coordenador com a versão do log até onde está em dia; a resposta são os
+    // STATEs do que mudou depois dela e um SYNC com a versão nova
+    SYNC,
+    // contador CRDT (PN) de um recurso: nó -> coordenador com a própria entrada, coordenador -> nós
+    // com o estado mesclado; sem lock e sem resposta
+    CRDT,
+    // réplicas do coordenador: pedido de voto de uma candidata (TERM); a recusa volta como VOTE com
+    // o termo de quem recusou, o voto como ELECTION_OK
+    VOTE;
+
+    private static final MessageType[] VALUES = values();
+
+    // usado pelo codec binário (tipo trafega como um byte com o ordinal)
+    public static MessageType fromOrdinal(int ordinal) {
+        if (ordinal < 0 || ordinal >= VALUES.length)
+            throw new IllegalArgumentException("tipo de mensagem desconhecido: " + ordinal);
+        return VALUES[ordinal];
+    }
 }
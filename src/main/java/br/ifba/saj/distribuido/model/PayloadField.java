@@ -0,0 +1,65 @@
+package br.ifba.saj.distribuido.model;
+
+// Campos tipados do payload. No JSON viram chaves do objeto "payload" ({"counter":N});
+// no codec binário são gravados como tag (ordinal) + valor, então novos campos
+// devem ser adicionados sempre no final para manter a compatibilidade do formato.
+public enum PayloadField {
+    COUNTER("counter", Kind.LONG),
+    DELTA("delta", Kind.LONG),
+    REASON("reason", Kind.STRING),
+    CODEC("codec", Kind.STRING),
+    RESOURCE("resource", Kind.STRING),
+    MODE("mode", Kind.STRING),
+    PEER("peer", Kind.STRING),
+    MEMBERS("members", Kind.STRING),
+    STATE_TS("stateTs", Kind.LONG),
+    LEASE("lease", Kind.LONG),
+    TOKEN("token", Kind.LONG),
+    ROLE("role", Kind.STRING),
+    EPOCH("epoch", Kind.LONG),
+    BATCH("batch", Kind.LONG),
+    HEARTBEAT("heartbeat", Kind.LONG),
+    VERSION("version", Kind.LONG),
+    INCARNATION("incarnation", Kind.LONG),
+    CRDT("crdt", Kind.STRING),
+    PRIORITY("priority", Kind.LONG),
+    TERM("term", Kind.LONG);
+
+    public enum Kind {
+        LONG, STRING
+    }
+
+    private static final PayloadField[] VALUES = values();
+
+    public final String key;
+    public final Kind kind;
+
+    PayloadField(String key, Kind kind) {
+        this.key = key;
+        this.kind = kind;
+    }
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    public static PayloadField fromOrdinal(int ordinal) {
+        return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+    }
+
+    public static PayloadField fromKey(String key) {
+        for (PayloadField f : VALUES) {
+            if (f.key.equals(key))
+                return f;
+        }
+        return null;
+    }
+
+    public static int count() {
+        return VALUES.length;
+    }
+
+    public static PayloadField[] all() {
+        return VALUES;
+    }
+}
@@ -0,0 +1,81 @@
+package br.ifba.saj.distribuido.model;
+
+import java.util.*;
+
+// Contador PN (CRDT baseado em estado): cada réplica só soma na própria entrada, P para
+// incrementos e N para decrementos, e o valor é a soma de todos os P menos todos os N.
+// O merge fica com o máximo de cada entrada, então é comutativo, associativo e idempotente:
+// estados podem chegar em qualquer ordem, repetidos ou por qualquer caminho, e as réplicas
+// convergem sem exclusão mútua.
+// O id de réplica de um nó ("pid.x") fica gravado com o checkpoint dele e sobrevive a
+// reinícios, então o número de entradas acompanha o número de nós, não de execuções.
+// Formato no fio (campo CRDT): "replica:p:n,replica:p:n".
+public class PnCounter {
+    private final Map<String, long[]> entries = new HashMap<>();
+
+    public synchronized void add(String replica, long delta) {
+        long[] e = entries.computeIfAbsent(replica, k -> new long[2]);
+        if (delta >= 0)
+            e[0] += delta;
+        else
+            e[1] -= delta;
+    }
+
+    public synchronized long value() {
+        long v = 0;
+        for (long[] e : entries.values())
+            v += e[0] - e[1];
+        return v;
+    }
+
+    // true se alguma entrada cresceu
+    public synchronized boolean merge(String encoded) {
+        boolean changed = false;
+        if (encoded == null || encoded.isEmpty())
+            return false;
+        for (String item : encoded.split(",")) {
+            String[] f = item.split(":");
+            long p = Long.parseLong(f[1]);
+            long n = Long.parseLong(f[2]);
+            long[] e = entries.computeIfAbsent(f[0], k -> new long[2]);
+            if (p > e[0]) {
+                e[0] = p;
+                changed = true;
+            }
+            if (n > e[1]) {
+                e[1] = n;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // cópia {p, n} da entrada de uma réplica; null se ela ainda não tem entrada
+    public synchronized long[] entry(String replica) {
+        long[] e = entries.get(replica);
+        return e == null ? null : e.clone();
+    }
+
+    // estado completo
+    public synchronized String encode() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, long[]> e : entries.entrySet())
+            append(sb, e.getKey(), e.getValue());
+        return sb.toString();
+    }
+
+    // só a entrada de uma réplica (o delta que ela precisa espalhar); "" se não há nada
+    public synchronized String encode(String replica) {
+        long[] e = entries.get(replica);
+        StringBuilder sb = new StringBuilder();
+        if (e != null)
+            append(sb, replica, e);
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String replica, long[] e) {
+        if (sb.length() > 0)
+            sb.append(',');
+        sb.append(replica).append(':').append(e[0]).append(':').append(e[1]);
+    }
+}
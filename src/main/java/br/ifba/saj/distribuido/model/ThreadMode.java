@@ -0,0 +1,38 @@
+package br.ifba.saj.distribuido.model;
+
+import java.util.concurrent.*;
+
+// Modelo de threads usado pelo coordenador e pelos nós.
+// PLATFORM: threads do SO (comportamento original); VIRTUAL: virtual threads do Java 21.
+public enum ThreadMode {
+    PLATFORM, VIRTUAL;
+
+    public static ThreadMode fromArgs(String[] args) {
+        for (String a : args) {
+            if ("--virtual".equals(a))
+                return VIRTUAL;
+        }
+        return PLATFORM;
+    }
+
+    public Thread start(String name, Runnable task) {
+        if (this == VIRTUAL)
+            return Thread.ofVirtual().name(name).start(task);
+        Thread t = new Thread(task, name);
+        t.start();
+        return t;
+    }
+
+    // executor para tarefas curtas e independentes (replicação, rollback)
+    public ExecutorService newTaskExecutor() {
+        if (this == VIRTUAL)
+            return Executors.newVirtualThreadPerTaskExecutor();
+        return Executors.newCachedThreadPool();
+    }
+
+    public ScheduledExecutorService newScheduler(int threads) {
+        if (this == VIRTUAL)
+            return Executors.newScheduledThreadPool(threads, Thread.ofVirtual().factory());
+        return Executors.newScheduledThreadPool(threads);
+    }
+}
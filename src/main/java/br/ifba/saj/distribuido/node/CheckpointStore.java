@@ -0,0 +1,55 @@
+package br.ifba.saj.distribuido.node;
+
+import br.ifba.saj.distribuido.log.Log;
+
+import java.io.IOException;
+import java.nio.file.*;
+
+// Persistência do estado do nó (contador e último timestamp de Lamport).
+// save é chamado depois de cada operação/STATE aplicado; load devolve o último estado
+// salvo (null se não houver nada) e é usado na partida e no ROLLBACK.
+public interface CheckpointStore {
+
+    void save(int counter, long lamportTs) throws IOException;
+
+    NodeState.StateSnapshot load() throws IOException;
+
+    void close();
+
+    // seleciona a implementação com --store=json|wal|mmap; sem a flag fica o JSON
+    enum Kind {
+        JSON, WAL, MMAP;
+
+        public static Kind fromArgs(String[] args) {
+            for (String a : args) {
+                if (a.startsWith("--store="))
+                    return valueOf(a.substring("--store=".length()).toUpperCase());
+            }
+            return JSON;
+        }
+
+        public CheckpointStore open(NodeOptions o) throws IOException {
+            String base = "node-" + o.pid;
+            Path json = o.dataDir.resolve(base + "-checkpoint.json");
+            if (this == JSON)
+                return new JsonCheckpointStore(json);
+            // sem arquivos do formato escolhido, o estado vem do checkpoint JSON de versões antigas
+            boolean fresh = switch (this) {
+                case WAL -> !Files.exists(o.dataDir.resolve(base + ".wal"))
+                        && !Files.exists(o.dataDir.resolve(base + ".snapshot"));
+                default -> !Files.exists(o.dataDir.resolve(base + ".mmap"));
+            };
+            CheckpointStore store = this == WAL ? new WalCheckpointStore(o.dataDir, base, o.walSyncMs)
+                    : new MappedCheckpointStore(o.dataDir.resolve(base + ".mmap"), o.mmapForce);
+            if (fresh && Files.exists(json)) {
+                NodeState.StateSnapshot old = new JsonCheckpointStore(json).load();
+                if (old != null) {
+                    store.save(old.counter, old.lamportTs);
+                    Log.info("[NODE " + o.pid + "] Estado migrado de " + json + " para --store="
+                            + name().toLowerCase() + " (counter=" + old.counter + ")");
+                }
+            }
+            return store;
+        }
+    }
+}
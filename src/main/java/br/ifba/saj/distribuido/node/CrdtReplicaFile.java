@@ -0,0 +1,79 @@
+package br.ifba.saj.distribuido.node;
+
+import br.ifba.saj.distribuido.model.PnCounter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Identidade CRDT do nó, em node-N.crdt ao lado do checkpoint: o id de réplica e a entrada
+// dela em cada recurso. O id é sorteado na primeira execução e reaproveitado nas seguintes,
+// então reiniciar não cria uma entrada nova no PnCounter de todo o cluster.
+// A entrada é gravada antes de sair do nó (gossip e JOIN); na partida o nó continua dela.
+// Incrementos que não foram gravados também nunca saíram, então não há entrada maior que a
+// gravada em outro lugar. Sem o arquivo (diretório novo ou perdido) o nó é uma réplica nova.
+// Formato: primeira linha o id; depois "recurso p n" por linha. Gravação via arquivo
+// temporário, fsync e rename atômico, como o checkpoint JSON.
+class CrdtReplicaFile {
+    final String replicaId;
+    private final Path path;
+    private final Path tmp;
+    private final Map<String, long[]> saved = new HashMap<>();
+
+    CrdtReplicaFile(Path dataDir, int pid) throws IOException {
+        this.path = dataDir.resolve("node-" + pid + ".crdt");
+        this.tmp = dataDir.resolve("node-" + pid + ".crdt.tmp");
+        if (Files.exists(path)) {
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            replicaId = lines.get(0).trim();
+            for (String line : lines.subList(1, lines.size())) {
+                String[] f = line.trim().split(" ");
+                if (f.length == 3)
+                    saved.put(f[0], new long[] { Long.parseLong(f[1]), Long.parseLong(f[2]) });
+            }
+        } else {
+            replicaId = pid + "." + Long.toString(ThreadLocalRandom.current().nextLong(1L << 40), 36);
+            write();
+        }
+    }
+
+    // devolve a entrada gravada desta réplica no recurso ao contador (na partida)
+    void restore(String resource, PnCounter counter) {
+        long[] e = saved.get(resource);
+        if (e != null)
+            counter.merge(replicaId + ":" + e[0] + ":" + e[1]);
+    }
+
+    // grava a entrada atual desta réplica em cada recurso, se alguma mudou
+    synchronized void save(NodeState state, Collection<String> resources) throws IOException {
+        boolean changed = false;
+        for (String resource : resources) {
+            long[] e = state.crdt(resource).entry(replicaId);
+            if (e == null)
+                continue;
+            long[] old = saved.get(resource);
+            if (old == null || old[0] != e[0] || old[1] != e[1]) {
+                saved.put(resource, e);
+                changed = true;
+            }
+        }
+        if (changed)
+            write();
+    }
+
+    private void write() throws IOException {
+        StringBuilder sb = new StringBuilder(replicaId).append('\n');
+        for (Map.Entry<String, long[]> e : saved.entrySet())
+            sb.append(e.getKey()).append(' ').append(e.getValue()[0]).append(' ').append(e.getValue()[1]).append('\n');
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.write(ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8)));
+            ch.force(false);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,55 @@
+package br.ifba.saj.distribuido.node;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// Checkpoint original: o arquivo JSON inteiro reescrito a cada save. Agora grava num
+// arquivo temporário, faz fsync e renomeia por cima (atômico), então uma queda no meio
+// da escrita deixa o checkpoint anterior intacto em vez de um arquivo truncado.
+class JsonCheckpointStore implements CheckpointStore {
+    private final Path path;
+    private final Path tmp;
+
+    JsonCheckpointStore(Path path) {
+        this.path = path;
+        this.tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    @Override
+    public void save(int counter, long lamportTs) throws IOException {
+        String json = String.format("{\"counter\":%d,\"lamport\":%d}", counter, lamportTs);
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.write(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+            ch.force(false);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public NodeState.StateSnapshot load() throws IOException {
+        if (!Files.exists(path))
+            return null;
+        String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        content = content.replaceAll("[{}\\s\"]", "");
+        if (content.isEmpty())
+            return null; // arquivo vazio deixado por versões antigas
+        int counter = 0;
+        long lamport = 0;
+        for (String part : content.split(",")) {
+            String[] kv = part.split(":");
+            if (kv[0].equals("counter"))
+                counter = Integer.parseInt(kv[1]);
+            if (kv[0].equals("lamport"))
+                lamport = Long.parseLong(kv[1]);
+        }
+        return new NodeState.StateSnapshot(counter, lamport);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,80 @@
+package br.ifba.saj.distribuido.node;
+
+import br.ifba.saj.distribuido.log.Log;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CRC32C;
+
+// Checkpoint num arquivo mapeado em memória com dois slots de tamanho fixo
+// (crc, seq, counter, lamport). Cada save escreve no slot que não tem o estado mais novo,
+// então uma escrita interrompida estraga no máximo esse slot e o outro continua válido.
+// Salvar são alguns stores na página mapeada (o SO grava depois); com force = true
+// cada save também faz msync. Na partida vale o slot com CRC válido e maior seq.
+class MappedCheckpointStore implements CheckpointStore {
+    static final int SLOT_SIZE = 32;
+    // o CRC cobre seq, counter e o lamport inteiro (bytes 4..23)
+    private static final int CRC = 0, SEQ = 4, COUNTER = 12, LAMPORT = 16, PAYLOAD = 24;
+
+    private final Path path;
+    private final boolean force;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final CRC32C crc = new CRC32C();
+    private long seq;
+
+    MappedCheckpointStore(Path path, boolean force) throws IOException {
+        this.path = path;
+        this.force = force;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2 * SLOT_SIZE);
+        load(); // posiciona seq após o slot mais novo
+    }
+
+    @Override
+    public synchronized void save(int counter, long lamportTs) {
+        int slot = (int) (++seq & 1) * SLOT_SIZE;
+        map.putLong(slot + SEQ, seq);
+        map.putInt(slot + COUNTER, counter);
+        map.putLong(slot + LAMPORT, lamportTs);
+        map.putInt(slot + CRC, checksum(slot));
+        if (force)
+            map.force(slot, SLOT_SIZE);
+    }
+
+    @Override
+    public synchronized NodeState.StateSnapshot load() {
+        int best = -1;
+        long bestSeq = 0;
+        for (int slot = 0; slot < 2 * SLOT_SIZE; slot += SLOT_SIZE) {
+            long s = map.getLong(slot + SEQ);
+            if (s > bestSeq && map.getInt(slot + CRC) == checksum(slot)) {
+                best = slot;
+                bestSeq = s;
+            }
+        }
+        if (best < 0)
+            return null; // arquivo novo (zerado) ou os dois slots corrompidos
+        seq = Math.max(seq, bestSeq);
+        return new NodeState.StateSnapshot(map.getInt(best + COUNTER), map.getLong(best + LAMPORT));
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            map.force();
+            channel.close();
+        } catch (IOException e) {
+            Log.error("[MMAP] Erro ao fechar " + path + ": " + e.getMessage());
+        }
+    }
+
+    private int checksum(int slot) {
+        crc.reset();
+        crc.update(map.slice(slot + SEQ, PAYLOAD - SEQ));
+        return (int) crc.getValue();
+    }
+}
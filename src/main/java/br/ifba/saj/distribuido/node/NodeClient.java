@@ -1,100 +1,536 @@
 package br.ifba.saj.distribuido.node;
 
+import br.ifba.saj.distribuido.log.Log;
+import br.ifba.saj.distribuido.metrics.*;
 import br.ifba.saj.distribuido.model.*;
-import com.google.gson.Gson;
+import br.ifba.saj.distribuido.protocol.*;
 
 import java.io.*;
-import java.net.Socket;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.util.Random;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
 //NodeCliente reajustada, adcionando checkpoint periodico, pre-imagem antes do DO_OP, 
 //aplicar STATE apenas se lamportTs > last, simular atraso e crash via args: delay e crash.
-public class NodeClient {
+public final class NodeClient {
     public final int pid;
     private final LamportClock clock;
-    private final Socket socket;
-    private final PrintWriter out;
-    private final BufferedReader in;
-    private final Gson gson;
+    // conexão com o coordenador; trocada ao reconectar (out protegido pelo monitor, in só na escuta)
+    private Transport.Link link;
+    private OutputStream out;
+    private FrameReader in;
+    private final String[] coordinators;
+    private int coordIndex = 0;
+    private String peerAddress;
+    private volatile boolean closed = false;
+    // instante em que a conexão caiu; zerado na primeira mensagem do coordenador novo
+    private volatile long disconnectedAtNanos = 0;
+    // formato de saída: começa em JSON e muda para binário quando o coordenador confirma no JOIN
+    private final WireFormat requestedFormat;
+    private volatile WireFormat outFormat = WireFormat.JSON;
+    private final ByteBuffer frame = ByteBuffer.allocate(BinaryCodec.FRAME_BUFFER_SIZE);
 
     // estado local e checkpoint
     private final NodeState state;
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final ThreadMode threadMode;
+    private final ScheduledExecutorService scheduler;
+
+    // recursos disputados e visão local dos que não são o padrão (o padrão fica em NodeState)
+    private final String[] resourceNames;
+    private final double readRatio;
+    private final ConcurrentMap<String, ResourceView> resourceViews = new ConcurrentHashMap<>();
+
+    // recurso -> DO_OP aguardando confirmação; só o STATE que confirma a
+    // própria operação libera a RC, STATEs de outros nós apenas atualizam o estado
+    private final ConcurrentMap<String, PendingOp> pendingOps = new ConcurrentHashMap<>();
+    // recurso -> token de fencing da concessão atual; vai junto no DO_OP e no RELEASE
+    private final ConcurrentMap<String, Long> heldTokens = new ConcurrentHashMap<>();
+
+    // operação enviada e a pré-imagem para desfazê-la se o lease for revogado
+    // caminho rápido (BATCH_OP): operações que chegam enquanto a janela está cheia vão juntas no
+    // próximo lote do recurso; no máximo pipelineDepth lotes em voo. Protegidos por pipelineLock
+    private final int pipelineDepth;
+    private final boolean pipelined;
+    private final long heartbeatMs;
+    // anti-entropia: versão do log do coordenador (e a incarnation dele) até onde o nó está em
+    // dia, vinda no SYNC de resposta; vai no JOIN e num SYNC a cada syncIntervalMs
+    private final long syncIntervalMs;
+    private volatile long syncVersion;
+    private volatile long syncIncarnation;
+    // recursos em modo CRDT: incremento local num PnCounter (sem REQUEST/GRANT) e, a cada
+    // gossipIntervalMs, a entrada desta réplica vai ao coordenador se mudou desde o último envio.
+    // O coordenador mescla e espalha o estado a todos os nós. O id de réplica e a entrada dele
+    // ficam em crdtFile, gravado antes de cada envio
+    private final Set<String> crdtResources;
+    private final long gossipIntervalMs;
+    private final CrdtReplicaFile crdtFile;
+    private final String replicaId;
+    private final Map<String, String> gossiped = new ConcurrentHashMap<>();
+    private final LongAdder crdtOps = new LongAdder();
+    // classe de prioridade enviada nos REQUESTs e BATCH_OPs (0 = não envia)
+    private final long priority;
+    private final Object pipelineLock = new Object();
+    private final Map<String, List<PipelinedOp>> waitingOps = new LinkedHashMap<>();
+    private final Map<Long, Batch> inFlightBatches = new HashMap<>();
+    private long nextBatchId = 0;
+
+    private record PipelinedOp(CompletableFuture<Integer> result, long submittedNanos) {
+    }
+
+    private record Batch(String resource, List<PipelinedOp> ops) {
+    }
+
+    // estado gravado em cada época de snapshot global (as últimas MAX_EPOCHS), para o ROLLBACK
+    private static final int MAX_EPOCHS = 4;
+    private final ConcurrentSkipListMap<Long, NodeState.StateSnapshot> epochSnapshots = new ConcurrentSkipListMap<>();
+
+    // REQUESTs ainda sem GRANT, reenviados (com o timestamp original) ao reconectar
+    private final Queue<Outstanding> outstanding = new ConcurrentLinkedQueue<>();
+
+    private record Outstanding(String resource, boolean read, long ts, long sentNanos) {
+    }
+
+    private static class PendingOp {
+        final long ts;
+        final NodeState.StateSnapshot pre;
+        final long sentNanos = System.nanoTime();
+
+        PendingOp(long ts, NodeState.StateSnapshot pre) {
+            this.ts = ts;
+            this.pre = pre;
+        }
+    }
+
+    private static class ResourceView {
+        final int counter;
+        final long lamportTs;
+
+        ResourceView(int counter, long lamportTs) {
+            this.counter = counter;
+            this.lamportTs = lamportTs;
+        }
+    }
+
+    // modo descentralizado: exclusão mútua entre pares, coordenador só para membros
+    private final RicartAgrawala ra;
+    private final Path dataDir;
+
+    // estatísticas: mensagens trafegadas (com o coordenador e enviadas aos pares),
+    // entradas na RC e espera até entrar
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private volatile long requestStartNanos;
+    // REQUEST -> GRANT e DO_OP -> STATE que confirma a operação
+    private final LatencyHistogram grantLatency = new LatencyHistogram();
+    private final LatencyHistogram opLatency = new LatencyHistogram();
+    // métricas do nó, via JMX e, com --metrics-port=N, em texto Prometheus
+    private final MetricsRegistry metrics = new MetricsRegistry("node");
+    private JmxExporter jmx;
+    private MetricsHttpServer metricsServer;
+    // conclusão da operação corrente quando o nó é dirigido por runClosedLoop
+    private volatile CompletableFuture<Void> opDone;
 
     // flags de simulação
     private volatile boolean simulateDelay = false;
     private volatile boolean simulateCrashOnNextOp = false;
+    private final boolean exitOnCrash;
 
     public NodeClient(int pid, String host, int port, boolean simulateDelay, boolean simulateCrashOnNextOp)
             throws IOException {
-        this.pid = pid;
-        this.clock = new LamportClock();
-        this.socket = new Socket(host, port);
-        this.out = new PrintWriter(socket.getOutputStream(), true);
-        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        this.gson = new Gson();
+        this(pid, host, port, simulateDelay, simulateCrashOnNextOp, ThreadMode.PLATFORM);
+    }
+
+    public NodeClient(int pid, String host, int port, boolean simulateDelay, boolean simulateCrashOnNextOp,
+            ThreadMode threadMode) throws IOException {
+        this(options(pid, host, port, simulateDelay, simulateCrashOnNextOp, threadMode));
+    }
+
+    public NodeClient(NodeOptions opts) throws IOException {
+        this.pid = opts.pid;
+        this.threadMode = opts.threadMode;
+        this.scheduler = threadMode.newScheduler(1);
+        this.clock = opts.hybridClock ? new HybridLogicalClock() : new LamportClock();
+        this.coordinators = opts.coordinators != null ? opts.coordinators
+                : new String[] { opts.host + ":" + opts.port };
+        connectAny();
+        this.requestedFormat = opts.wireFormat;
+        this.resourceNames = opts.resources;
+        this.readRatio = opts.readRatio;
+        this.pipelineDepth = Math.max(1, opts.pipelineDepth);
+        this.pipelined = opts.pipelined;
+        this.heartbeatMs = opts.heartbeatMs;
+        this.syncIntervalMs = opts.syncIntervalMs;
+        this.crdtResources = opts.crdtResources;
+        this.gossipIntervalMs = opts.gossipIntervalMs;
+        this.priority = opts.priority;
+        this.crdtFile = crdtResources.isEmpty() ? null : new CrdtReplicaFile(opts.dataDir, pid);
+        this.replicaId = crdtFile != null ? crdtFile.replicaId : String.valueOf(pid);
 
-        this.state = new NodeState(pid);
-        this.simulateDelay = simulateDelay;
-        this.simulateCrashOnNextOp = simulateCrashOnNextOp;
+        this.dataDir = opts.dataDir;
+        this.state = new NodeState(pid, opts.store.open(opts));
+        for (String resource : crdtResources)
+            crdtFile.restore(resource, state.crdt(resource));
+        this.simulateDelay = opts.simulateDelay;
+        this.simulateCrashOnNextOp = opts.simulateCrash;
+        this.exitOnCrash = opts.exitOnCrash;
 
         // carrega checkpoint ANTES de se juntar
         state.loadCheckpoint();
-        System.out.println("[NODE " + pid + "] Checkpoint inicial carregado. Counter=" + state.getCounter());
+        Log.info("[NODE " + pid + "] Checkpoint inicial carregado. Counter=" + state.getCounter());
+
+        if (opts.decentralized) {
+            ra = new RicartAgrawala(pid, clock, state, threadMode, opts.wireFormat, messages);
+            peerAddress = ra.listen(opts.peerHost, opts.peerPort);
+        } else {
+            ra = null;
+        }
 
+        registerMetrics(opts.metricsPort);
         startBackgroundTasks();
-        join();
+        join(peerAddress);
         listen();
 
 
     }
 
+    private void registerMetrics(int port) throws IOException {
+        metrics.histogram("grant_latency_seconds", "REQUEST até o GRANT", grantLatency);
+        metrics.histogram("op_latency_seconds", "DO_OP até o STATE que confirma a operação", opLatency);
+        metrics.histogram("checkpoint_seconds", "Duração de cada gravação de checkpoint", state.checkpointLatency());
+        metrics.gauge("messages_total", "Mensagens trafegadas", messages::sum);
+        metrics.gauge("cs_entries_total", "Entradas na região crítica", entries::sum);
+        metrics.gauge("outstanding_requests", "REQUESTs ainda sem GRANT", outstanding::size);
+        metrics.gauge("counter", "Valor local do contador", state::getCounter);
+        metrics.gauge("crdt_ops_total", "Incrementos CRDT aplicados localmente", crdtOps::sum);
+        jmx = JmxExporter.register(metrics, "type=Node,pid=" + pid);
+        if (port > 0)
+            metricsServer = MetricsHttpServer.start(port, metrics);
+    }
+
+    private static NodeOptions options(int pid, String host, int port, boolean delay, boolean crash,
+            ThreadMode threadMode) {
+        NodeOptions o = new NodeOptions();
+        o.pid = pid;
+        o.host = host;
+        o.port = port;
+        o.simulateDelay = delay;
+        o.simulateCrash = crash;
+        o.threadMode = threadMode;
+        return o;
+    }
+
+    // primeira conexão: a primeira réplica que aceitar
+    private void connectAny() throws IOException {
+        IOException last = null;
+        for (int i = 0; i < coordinators.length; i++, coordIndex++) {
+            try {
+                connect(coordinators[coordIndex % coordinators.length]);
+                return;
+            } catch (IOException e) {
+                last = e;
+            }
+        }
+        throw last;
+    }
+
+    // TCP ou socket Unix conforme o endereço (ver Transport)
+    private synchronized void connect(String address) throws IOException {
+        Transport.Link l = Transport.forAddress(address).connect(address);
+        link = l;
+        out = new BufferedOutputStream(l.output());
+        in = new FrameReader(l.input());
+        outFormat = WireFormat.JSON;
+    }
+
+    // conexão perdida: tenta as réplicas em rodízio até uma aceitar, refaz o JOIN e reenvia
+    // os pedidos pendentes. Uma standby fecha a conexão logo após o JOIN, e a escuta volta aqui.
+    private void reconnect() {
+        if (disconnectedAtNanos == 0)
+            disconnectedAtNanos = System.nanoTime();
+        // concessões da conexão antiga não valem no coordenador novo
+        for (String resource : new ArrayList<>(heldTokens.keySet()))
+            abandonGrant(resource, "conexão perdida");
+        for (String resource : new ArrayList<>(pendingOps.keySet()))
+            abandonGrant(resource, "conexão perdida");
+        failInFlightBatches();
+        while (!closed) {
+            coordIndex++;
+            String address = coordinators[coordIndex % coordinators.length];
+            try {
+                connect(address);
+                join(peerAddress);
+                for (Outstanding o : outstanding)
+                    sendRequest(o);
+                dispatchBatches();
+                Log.info("[NODE " + pid + "] Conectado a " + address + " após "
+                        + (System.nanoTime() - disconnectedAtNanos) / 1_000_000 + "ms (" + outstanding.size()
+                        + " pedidos reenviados)");
+                return;
+            } catch (IOException e) {
+                if (coordIndex % coordinators.length == 0) {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
     private void startBackgroundTasks() {
         // checkpoint a cada 10s
         scheduler.scheduleAtFixedRate(() -> {
             state.saveCheckpoint();
-            System.out.println("[NODE " + pid + "] Checkpoint salvo.");
+            if (Log.debugEnabled())
+                Log.debug("[NODE " + pid + "] Checkpoint salvo.");
         }, 10, 10, TimeUnit.SECONDS);
+        if (heartbeatMs > 0)
+            scheduler.scheduleAtFixedRate(this::sendHeartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        if (syncIntervalMs > 0 && ra == null)
+            scheduler.scheduleAtFixedRate(this::sendSync, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        if (!crdtResources.isEmpty() && ra == null)
+            scheduler.scheduleAtFixedRate(this::gossip, gossipIntervalMs, gossipIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // entrada local de cada recurso CRDT que mudou desde o último envio
+    private void gossip() {
+        if (closed || disconnectedAtNanos != 0)
+            return; // reconectando: o JOIN manda o estado completo
+        if (!saveCrdt())
+            return;
+        for (String resource : crdtResources) {
+            String own = state.crdt(resource).encode(replicaId);
+            if (own.isEmpty() || own.equals(gossiped.get(resource)))
+                continue;
+            sendCrdt(resource, own);
+            gossiped.put(resource, own);
+        }
     }
 
-    private void join() {
+    // a entrada desta réplica vai ao disco antes de sair do nó: depois de reiniciar o nó continua
+    // dela, e ninguém viu uma entrada maior. false se não gravou (então também não envia)
+    private boolean saveCrdt() {
+        try {
+            crdtFile.save(state, crdtResources);
+            return true;
+        } catch (IOException e) {
+            Log.warn("[NODE " + pid + "] erro ao gravar o estado CRDT: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void sendCrdt(String resource, String encoded) {
+        Message m = new Message();
+        m.setType(MessageType.CRDT);
+        m.setPid(pid);
+        m.setClock(clock.increment());
+        m.setResource(resource);
+        m.setString(PayloadField.CRDT, encoded);
+        send(m);
+    }
+
+    // pede ao coordenador o que mudou depois da versão em que estamos em dia
+    private void sendSync() {
+        if (closed || disconnectedAtNanos != 0)
+            return; // reconectando: o JOIN já leva a versão
+        Message sync = new Message();
+        sync.setType(MessageType.SYNC);
+        sync.setPid(pid);
+        sync.setClock(clock.increment());
+        sync.setLong(PayloadField.VERSION, syncVersion);
+        sync.setLong(PayloadField.INCARNATION, syncIncarnation);
+        send(sync);
+    }
+
+    // não conta como evento: vai com o relógio atual, sem incrementar
+    private void sendHeartbeat() {
+        if (closed || disconnectedAtNanos != 0)
+            return; // reconectando: o JOIN novo recomeça a contagem no coordenador
+        Message hb = new Message();
+        hb.setType(MessageType.HEARTBEAT);
+        hb.setPid(pid);
+        hb.setClock(clock.getTime());
+        send(hb);
+    }
+
+    private void join(String peerAddress) {
         Message join = new Message();
         join.setType(MessageType.JOIN);
         join.setPid(pid);
         join.setClock(clock.increment());
-        join.setPayload("{}");
+        if (requestedFormat == WireFormat.BINARY)
+            join.setString(PayloadField.CODEC, WireFormat.BINARY_CODEC_NAME);
+        if (peerAddress != null)
+            join.setString(PayloadField.PEER, peerAddress);
+        if (heartbeatMs > 0)
+            join.setLong(PayloadField.HEARTBEAT, heartbeatMs);
+        if (peerAddress == null) {
+            // o coordenador responde só com o que mudou desde a versão que já temos
+            join.setLong(PayloadField.VERSION, syncVersion);
+            join.setLong(PayloadField.INCARNATION, syncIncarnation);
+        }
 
         send(join);
-        System.out.println("[NODE " + pid + "] JOIN enviado (clock=" + clock.getTime() + ")");
+        Log.info("[NODE " + pid + "] JOIN enviado (clock=" + clock.getTime() + ")");
+        // coordenador novo (ou reiniciado) pode não ter o estado CRDT: vai inteiro, com o que
+        // aprendemos dos outros nós
+        if (peerAddress == null && !crdtResources.isEmpty() && saveCrdt()) {
+            for (String resource : crdtResources) {
+                String full = state.crdt(resource).encode();
+                if (!full.isEmpty())
+                    sendCrdt(resource, full);
+            }
+        }
+    }
+
+    // chamado pela thread principal e pela de escuta
+    private synchronized void send(Message msg) {
+        try {
+            if (outFormat == WireFormat.BINARY) {
+                frame.clear();
+                ByteBuffer f = BinaryCodec.encode(msg, frame);
+                out.write(f.array(), 0, f.position());
+            } else {
+                out.write((JsonCodec.encode(msg) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+            // heartbeats ficam fora da contagem de mensagens por entrada na RC
+            if (msg.getType() != MessageType.HEARTBEAT)
+                messages.increment();
+        } catch (IOException e) {
+            Log.warn("[NODE " + pid + "] erro ao enviar: " + e.getMessage());
+        }
     }
 
-    private void send(Message msg) {
-        out.println(gson.toJson(msg));
+    // recurso CRDT não passa pela exclusão mútua: escrita é um incremento local, leitura o valor local
+    private void operate(String resource, boolean read) {
+        if (!crdtResources.contains(resource)) {
+            requestCS(resource, read);
+            return;
+        }
+        long v = read ? crdtValue(resource) : incrementCrdt(resource, 1);
+        if (Log.debugEnabled())
+            Log.debug("[NODE " + pid + "] CRDT " + resource + (read ? " lido" : " +1") + ": " + v);
     }
 
-    private void requestCS() {
+    private void requestCS(String resource, boolean read) {
+        Outstanding o = new Outstanding(resource, read, clock.increment(), System.nanoTime());
+        outstanding.add(o);
+        requestStartNanos = System.nanoTime();
+        sendRequest(o);
+        if (Log.debugEnabled())
+            Log.debug("[NODE " + pid + "] REQUEST" + (read ? "(read) " : " ") + resource + " enviado (clock="
+                    + clock.getTime() + ")");
+    }
+
+    private void sendRequest(Outstanding o) {
         Message req = new Message();
         req.setType(MessageType.REQUEST);
         req.setPid(pid);
-        req.setClock(clock.increment());
-        req.setPayload("{}");
-
+        req.setClock(o.ts());
+        req.setResource(o.resource());
+        req.setSharedRead(o.read());
+        if (priority != 0)
+            req.setLong(PayloadField.PRIORITY, priority);
         send(req);
-        System.out.println("[NODE " + pid + "] REQUEST enviado (clock=" + clock.getTime() + ")");
+    }
+
+    // leitura compartilhada: o GRANT já traz o valor canônico, então basta aplicar e liberar
+    private void doReadOperation(String resource, Message grant) {
+        if (Message.DEFAULT_RESOURCE.equals(resource))
+            applyState(grant);
+        else
+            applyResourceState(resource, grant);
+        if (Log.debugEnabled())
+            Log.debug("[NODE " + pid + "] Leitura de " + resource + ": counter=" + grant.getCounter());
+
+        Message rel = new Message();
+        rel.setType(MessageType.RELEASE);
+        rel.setPid(pid);
+        rel.setClock(clock.increment());
+        rel.setResource(resource);
+        rel.setSharedRead(true);
+        rel.setLong(PayloadField.TOKEN, grant.getLong(PayloadField.TOKEN));
+        send(rel);
+        completeOp();
     }
 
     // novo: operação crítica com pré-imagem, delay e crash simulado
-    private void doCriticalOperation() {
+    private void doCriticalOperation(String resource) {
         // cria pré-imagem
         NodeState.StateSnapshot pre = state.createSnapshot();
+        if (simulateFaults(pre))
+            return;
+
+        // aplica operação local: incrementa contador
+        long lamportTs = clock.increment();
+        if (Message.DEFAULT_RESOURCE.equals(resource)) {
+            int novo = state.getCounter() + 1;
+            state.setCounterAndTs(novo, lamportTs);
+            if (Log.debugEnabled())
+                Log.debug("[NODE " + pid + "] DO_OP aplicado localmente -> " + novo + " (ts=" + lamportTs + ")");
+
+            // salva checkpoint logo após operação
+            state.saveCheckpoint();
+        } else {
+            ResourceView v = resourceViews.get(resource);
+            int novo = (v != null ? v.counter : 0) + 1;
+            resourceViews.put(resource, new ResourceView(novo, lamportTs));
+            if (Log.debugEnabled())
+                Log.debug("[NODE " + pid + "] DO_OP " + resource + " aplicado localmente -> " + novo + " (ts="
+                        + lamportTs + ")");
+        }
+
+        // envia DO_OP ao coordenador (coordenador aplica globalmente)
+        Message op = new Message();
+        op.setType(MessageType.DO_OP);
+        op.setPid(pid);
+        op.setClock(lamportTs);
+        op.setDelta(1);
+        op.setResource(resource);
+        Long token = heldTokens.get(resource);
+        if (token != null)
+            op.setLong(PayloadField.TOKEN, token);
+        pendingOps.put(resource, new PendingOp(lamportTs, pre));
+        send(op);
+        if (Log.debugEnabled())
+            Log.debug("[NODE " + pid + "] DO_OP enviado ao COORD (clock=" + clock.getTime() + ")");
+    }
+
+    // ciclo completo no modo descentralizado: pedido aos pares, operação local e saída
+    private void doDecentralizedOperation() throws InterruptedException {
+        long t0 = System.nanoTime();
+        ra.acquire();
+        recordEntry(t0);
+        if (Log.debugEnabled())
+            Log.debug("[NODE " + pid + "] RC obtida dos pares (clock=" + clock.getTime() + ")");
+
+        NodeState.StateSnapshot pre = state.createSnapshot();
+        if (simulateFaults(pre))
+            return;
+
+        int novo = state.getCounter() + 1;
+        long lamportTs = clock.increment();
+        state.setCounterAndTs(novo, lamportTs);
+        state.saveCheckpoint();
+        if (Log.debugEnabled())
+            Log.debug("[NODE " + pid + "] Operação aplicada -> " + novo + " (ts=" + lamportTs + ")");
+
+        ra.release();
+    }
 
+    // true se o nó "caiu" (só quando exitOnCrash = false; senão o processo termina aqui)
+    private boolean simulateFaults(NodeState.StateSnapshot pre) {
         // simulação de atraso no processamento local
         if (simulateDelay) {
             try {
-                System.out
-                        .println("[NODE " + pid + "] Simulação de delay ativa - dormindo 5s antes de aplicar operação");
+                Log.info("[NODE " + pid + "] Simulação de delay ativa - dormindo 5s antes de aplicar operação");
                 Thread.sleep(5000);
             } catch (InterruptedException ignored) {
             }
@@ -102,105 +538,297 @@ public class NodeClient {
 
         // simula crash: encerra processo antes de confirmar ao coordenador
         if (simulateCrashOnNextOp) {
-            System.out.println("[NODE " + pid + "] Simulando crash durante operação! (pré-imagem salva)");
+            Log.info("[NODE " + pid + "] Simulando crash durante operação! (pré-imagem salva)");
             // opcional: grava um arquivo pra diagnóstico
             try {
-                Files.write(Paths.get("node-" + pid + "-precrash.json"),
+                Files.write(dataDir.resolve("node-" + pid + "-precrash.json"),
                         ("preCounter:" + pre.counter + ",preLamport:" + pre.lamportTs).getBytes());
             } catch (IOException ignored) {
             }
-            System.exit(1); // simula queda abrupta
+            if (exitOnCrash)
+                System.exit(1); // simula queda abrupta
+            crash();
+            return true;
         }
+        return false;
+    }
 
-        // aplica operação local: incrementa contador
-        int novo = state.getCounter() + 1;
-        long lamportTs = clock.increment();
-        state.setCounterAndTs(novo, lamportTs);
-        System.out.println("[NODE " + pid + "] DO_OP aplicado localmente -> " + novo + " (ts=" + lamportTs + ")");
-
-        // salva checkpoint logo após operação
-        state.saveCheckpoint();
-
-        // envia DO_OP ao coordenador (coordenador aplica globalmente)
-        Message op = new Message();
-        op.setType(MessageType.DO_OP);
-        op.setPid(pid);
-        op.setClock((int) lamportTs);
-        op.setPayload("{\"delta\":1}");
-        send(op);
-        System.out.println("[NODE " + pid + "] DO_OP enviado ao COORD (clock=" + clock.getTime() + ")");
+    // queda simulada sem encerrar a JVM: a conexão fecha sem RELEASE e o nó não reconecta
+    private void crash() {
+        close();
+        CompletableFuture<Void> done = opDone;
+        if (done != null)
+            done.completeExceptionally(new IOException("nó " + pid + " caiu (simulado)"));
     }
 
-    private void releaseCS() {
+    private void releaseCS(String resource) {
         Message rel = new Message();
         rel.setType(MessageType.RELEASE);
         rel.setPid(pid);
         rel.setClock(clock.increment());
-        rel.setPayload("{}");
+        rel.setResource(resource);
+        Long token = heldTokens.remove(resource);
+        if (token != null)
+            rel.setLong(PayloadField.TOKEN, token);
 
         send(rel);
-        System.out.println("[NODE " + pid + "] RELEASE enviado (clock=" + clock.getTime() + ")");
+        if (Log.debugEnabled())
+            Log.debug("[NODE " + pid + "] RELEASE enviado (clock=" + clock.getTime() + ")");
+        completeOp();
+    }
+
+    private void recordEntry(long startNanos) {
+        entries.increment();
+        waitNanos.add(System.nanoTime() - startNanos);
+    }
+
+    private void completeOp() {
+        CompletableFuture<Void> done = opDone;
+        if (done != null)
+            done.complete(null);
     }
 
     private void listen() {
-        new Thread(() -> {
-            try {
-                String line;
-                while ((line = in.readLine()) != null) {
-                    Message msg = gson.fromJson(line, Message.class);
-                    clock.update(msg.getClock()); // atualiza relógio local com o recebido
-
-                    switch (msg.getType()) {
-                        case GRANT -> {
-                            System.out.println("[NODE " + pid + "] GRANT recebido. Entrando na RC… (clock="
-                                    + clock.getTime() + ")");
-                            doCriticalOperation();
-                        }
-                        case STATE -> {
-                            // parse payload simples: {"counter":N}
-                            String payload = msg.getPayload();
-                            int valor = parseCounterFromPayload(payload);
-                            int last = state.getLastLamportTs();
-                            // só aplica se o clock recebido for maior que last (Lamport monotonic)
-                            if (msg.getClock() <= last) {
-                                System.out.println("[NODE " + pid + "] Ignorando STATE antigo (ts=" + msg.getClock()
-                                        + " <= last=" + last + ")");
-                            } else {
-                                state.setCounterAndTs(valor, msg.getClock());
-                                System.out.println("[NODE " + pid + "] STATE recebido e aplicado: counter=" + valor
-                                        + " (ts=" + msg.getClock() + ")");
-                                state.saveCheckpoint();
+        threadMode.start("node-" + pid + "-listener", () -> {
+            Message reuse = new Message();
+            while (!closed) {
+                try {
+                    Message msg;
+                    while ((msg = in.read(reuse)) != null) {
+                        messages.increment();
+                        clock.update(msg.getClock()); // atualiza relógio local com o recebido
+                        disconnectedAtNanos = 0;
+
+                        switch (msg.getType()) {
+                            case JOIN -> {
+                                // confirmação do codec binário pelo coordenador
+                                if (WireFormat.BINARY_CODEC_NAME.equals(msg.getString(PayloadField.CODEC))) {
+                                    outFormat = WireFormat.BINARY;
+                                    Log.info("[NODE " + pid + "] Codec binário negociado");
+                                }
+                            }
+                            case GRANT -> {
+                                recordEntry(requestStartNanos);
+                                Outstanding o = removeOutstanding(msg.getResource(), msg.isSharedRead());
+                                if (o != null)
+                                    grantLatency.record(System.nanoTime() - o.sentNanos());
+                                if (msg.isSharedRead()) {
+                                    doReadOperation(msg.getResource(), msg);
+                                    continue;
+                                }
+                                if (Log.debugEnabled())
+                                    Log.debug("[NODE " + pid + "] GRANT recebido. Entrando na RC… (clock="
+                                            + clock.getTime() + ", lease=" + msg.getLong(PayloadField.LEASE) + "ms)");
+                                if (msg.has(PayloadField.TOKEN))
+                                    heldTokens.put(msg.getResource(), msg.getLong(PayloadField.TOKEN));
+                                doCriticalOperation(msg.getResource());
+                            }
+                            case STATE -> {
+                                String resource = msg.getResource();
+                                if (Message.DEFAULT_RESOURCE.equals(resource))
+                                    applyState(msg);
+                                else
+                                    applyResourceState(resource, msg);
+                                if (msg.has(PayloadField.BATCH)) {
+                                    onBatchReply(msg);
+                                    continue;
+                                }
+                                // STATE posterior ao nosso DO_OP confirma a operação: libera CS
+                                PendingOp op = pendingOps.get(resource);
+                                if (op != null && msg.getClock() > op.ts && pendingOps.remove(resource, op)) {
+                                    opLatency.record(System.nanoTime() - op.sentNanos);
+                                    releaseCS(resource);
+                                }
+                            }
+                            case SYNC -> {
+                                // fim de uma resposta de anti-entropia: os STATEs dela já foram aplicados
+                                syncVersion = msg.getLong(PayloadField.VERSION);
+                                syncIncarnation = msg.getLong(PayloadField.INCARNATION);
+                            }
+                            case CRDT -> state.crdt(msg.getResource()).merge(msg.getString(PayloadField.CRDT));
+                            case REVOKE -> onRevoke(msg.getResource(), msg.getLong(PayloadField.TOKEN));
+                            case MEMBERS -> {
+                                if (ra != null)
+                                    ra.updateMembers(msg.getString(PayloadField.MEMBERS));
+                            }
+                            case MARKER -> onMarker(msg.getLong(PayloadField.EPOCH));
+                            case ROLLBACK -> {
+                                if (msg.has(PayloadField.EPOCH)) {
+                                    rollbackToEpoch(msg);
+                                    continue;
+                                }
+                                Log.info(
+                                        "[NODE " + pid + "] ROLLBACK recebido do COORD. Restaurando checkpoint...");
+                                state.loadCheckpoint();
                             }
-                            // após receber STATE (seja update ou confirm), libera CS
-                            releaseCS();
-                        }
-                        case ROLLBACK -> {
-                            System.out.println(
-                                    "[NODE " + pid + "] ROLLBACK recebido do COORD. Restaurando checkpoint...");
-                            state.loadCheckpoint();
                         }
                     }
+                } catch (IOException e) {
+                    if (!closed)
+                        Log.warn("[NODE " + pid + "] erro na escuta: " + e.getMessage());
                 }
-            } catch (IOException e) {
-                System.out.println("[NODE " + pid + "] erro na escuta: " + e.getMessage());
+                if (!closed)
+                    reconnect();
             }
-        }).start();
+        });
     }
 
-    private int parseCounterFromPayload(String payload) {
-        if (payload == null)
-            return state.getCounter();
-        try {
-            // payload esperado: {"counter":N}
-            String trimmed = payload.replaceAll("[{}\\s\"]", "");
-            for (String kv : trimmed.split(",")) {
-                String[] parts = kv.split(":");
-                if (parts[0].equals("counter"))
-                    return Integer.parseInt(parts[1]);
+    // incremento pelo caminho rápido; o futuro recebe o valor do recurso logo após esta operação
+    public CompletableFuture<Integer> submitIncrement(String resource) {
+        PipelinedOp op = new PipelinedOp(new CompletableFuture<>(), System.nanoTime());
+        synchronized (pipelineLock) {
+            waitingOps.computeIfAbsent(resource, k -> new ArrayList<>()).add(op);
+        }
+        dispatchBatches();
+        return op.result();
+    }
+
+    // envia lotes enquanto houver janela
+    private void dispatchBatches() {
+        while (true) {
+            long id;
+            Batch batch;
+            synchronized (pipelineLock) {
+                if (inFlightBatches.size() >= pipelineDepth || waitingOps.isEmpty())
+                    return;
+                Iterator<Map.Entry<String, List<PipelinedOp>>> it = waitingOps.entrySet().iterator();
+                Map.Entry<String, List<PipelinedOp>> next = it.next();
+                it.remove();
+                batch = new Batch(next.getKey(), next.getValue());
+                id = ++nextBatchId;
+                inFlightBatches.put(id, batch);
             }
-        } catch (Exception ignored) {
+            Message op = new Message();
+            op.setType(MessageType.BATCH_OP);
+            op.setPid(pid);
+            op.setClock(clock.increment());
+            op.setResource(batch.resource());
+            op.setDelta(batch.ops().size());
+            op.setLong(PayloadField.BATCH, id);
+            if (priority != 0)
+                op.setLong(PayloadField.PRIORITY, priority);
+            send(op);
         }
-        return state.getCounter();
+    }
+
+    private void onBatchReply(Message msg) {
+        Batch batch;
+        synchronized (pipelineLock) {
+            batch = inFlightBatches.remove(msg.getLong(PayloadField.BATCH));
+        }
+        if (batch == null)
+            return;
+        // o lote foi aplicado de uma vez: a i-ésima operação deixou o valor em base + i + 1
+        int n = batch.ops().size();
+        int base = msg.getCounter() - n;
+        long now = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            PipelinedOp op = batch.ops().get(i);
+            waitNanos.add(now - op.submittedNanos());
+            op.result().complete(base + i + 1);
+        }
+        entries.add(n);
+        dispatchBatches();
+    }
+
+    // lotes sem resposta quando a conexão cai podem ou não ter sido aplicados: falham
+    // (no máximo uma vez) em vez de serem reenviados
+    private void failInFlightBatches() {
+        List<Batch> lost;
+        synchronized (pipelineLock) {
+            lost = new ArrayList<>(inFlightBatches.values());
+            inFlightBatches.clear();
+        }
+        for (Batch b : lost) {
+            IOException cause = new IOException("conexão perdida antes da confirmação do lote");
+            b.ops().forEach(op -> op.result().completeExceptionally(cause));
+        }
+    }
+
+    // MARKER do coordenador: grava o estado local e devolve o MARKER com ele. Gravação e envio
+    // no monitor de send, para nenhuma mensagem sair entre os dois (ela ficaria fora do corte)
+    private void onMarker(long epoch) {
+        long t0 = System.nanoTime();
+        NodeState.StateSnapshot snap;
+        synchronized (this) {
+            snap = state.createSnapshot();
+            Message marker = new Message();
+            marker.setType(MessageType.MARKER);
+            marker.setPid(pid);
+            marker.setClock(clock.increment());
+            marker.setLong(PayloadField.EPOCH, epoch);
+            marker.setCounter(snap.counter);
+            marker.setLong(PayloadField.STATE_TS, snap.lamportTs);
+            send(marker);
+        }
+        epochSnapshots.put(epoch, snap);
+        while (epochSnapshots.size() > MAX_EPOCHS)
+            epochSnapshots.pollFirstEntry();
+        Log.info("[NODE " + pid + "] Snapshot época " + epoch + ": counter=" + snap.counter + " (pausa "
+                + (System.nanoTime() - t0) / 1000 + "µs)");
+    }
+
+    // volta ao estado gravado na época e aplica o valor do corte enviado pelo coordenador
+    private void rollbackToEpoch(Message msg) {
+        long epoch = msg.getLong(PayloadField.EPOCH);
+        NodeState.StateSnapshot snap = epochSnapshots.get(epoch);
+        if (snap != null)
+            state.restoreSnapshot(snap);
+        else
+            Log.info("[NODE " + pid + "] Sem estado da época " + epoch + ", usando só o valor do corte");
+        state.setCounterAndTs(msg.getCounter(), msg.getClock());
+        state.saveCheckpoint();
+        Log.info("[NODE " + pid + "] ROLLBACK para a época " + epoch + ": counter=" + msg.getCounter());
+    }
+
+    private Outstanding removeOutstanding(String resource, boolean read) {
+        for (Outstanding o : outstanding) {
+            if (o.resource().equals(resource) && o.read() == read && outstanding.remove(o))
+                return o;
+        }
+        return null;
+    }
+
+    // lease expirado: a concessão não é mais nossa; a operação local é desfeita
+    // (o coordenador recusou ou vai mandar o valor canônico num STATE)
+    private void onRevoke(String resource, long token) {
+        if (heldTokens.remove(resource, token))
+            abandonGrant(resource, "REVOKE recebido: lease expirou (token=" + token + ")");
+    }
+
+    private void abandonGrant(String resource, String reason) {
+        heldTokens.remove(resource);
+        PendingOp op = pendingOps.remove(resource);
+        Log.info("[NODE " + pid + "] " + reason + ", desistindo de " + resource);
+        // só desfaz se nenhum STATE mais novo foi aplicado por cima da operação
+        if (op != null && Message.DEFAULT_RESOURCE.equals(resource) && state.restoreIfUnchanged(op.ts, op.pre))
+            state.saveCheckpoint();
+        completeOp();
+    }
+
+    private void applyState(Message msg) {
+        int valor = msg.has(PayloadField.COUNTER) ? msg.getCounter() : state.getCounter();
+        // só aplica se o clock recebido for maior que o último aplicado (Lamport monotonic)
+        if (!state.applyIfNewer(valor, msg.getClock())) {
+            if (Log.debugEnabled())
+                Log.debug("[NODE " + pid + "] Ignorando STATE antigo (ts=" + msg.getClock()
+                        + " <= last=" + state.getLastLamportTs() + ")");
+        } else {
+            if (Log.debugEnabled())
+                Log.debug("[NODE " + pid + "] STATE recebido e aplicado: counter=" + valor
+                        + " (ts=" + msg.getClock() + ")");
+            state.saveCheckpoint();
+        }
+    }
+
+    private void applyResourceState(String resource, Message msg) {
+        ResourceView v = resourceViews.get(resource);
+        if (v != null && msg.getClock() <= v.lamportTs)
+            return;
+        resourceViews.put(resource, new ResourceView(msg.getCounter(), msg.getClock()));
+        if (Log.debugEnabled())
+            Log.debug("[NODE " + pid + "] STATE " + resource + " aplicado: counter=" + msg.getCounter()
+                    + " (ts=" + msg.getClock() + ")");
     }
 
     public void start() {
@@ -208,24 +836,138 @@ public class NodeClient {
         while (true) {
             try {
                 Thread.sleep(2000 + rand.nextInt(2000));
-                requestCS();
+                if (ra != null)
+                    doDecentralizedOperation();
+                else if (pipelined)
+                    submitIncrement(resourceNames[rand.nextInt(resourceNames.length)])
+                            .whenComplete((v, err) -> {
+                                if (err != null)
+                                    Log.info("[NODE " + pid + "] Lote perdido: " + err.getMessage());
+                            });
+                else
+                    operate(resourceNames[rand.nextInt(resourceNames.length)], rand.nextDouble() < readRatio);
             } catch (InterruptedException e) {
                 break;
             }
         }
     }
 
+    // dispara 'ops' incrementos pelo caminho rápido e espera todos (usado pelos harnesses de comparação)
+    public void runPipelined(int ops) throws InterruptedException {
+        Random rand = new Random();
+        CompletableFuture<?>[] results = new CompletableFuture<?>[ops];
+        for (int i = 0; i < ops; i++)
+            results[i] = submitIncrement(resourceNames[rand.nextInt(resourceNames.length)]);
+        try {
+            CompletableFuture.allOf(results).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // incremento sem exclusão mútua num recurso CRDT: aplicado na hora, espalhado pelo gossip
+    public long incrementCrdt(String resource, long delta) {
+        PnCounter counter = state.crdt(resource);
+        counter.add(replicaId, delta);
+        crdtOps.increment();
+        return counter.value();
+    }
+
+    // valor local (eventualmente consistente) de um recurso CRDT
+    public long crdtValue(String resource) {
+        return state.crdt(resource).value();
+    }
+
+    // executa 'ops' entradas na RC em sequência, cada uma começando quando a anterior termina
+    // (usado pelos harnesses de comparação)
+    public void runClosedLoop(int ops) throws InterruptedException {
+        Random rand = new Random();
+        for (int i = 0; i < ops; i++)
+            runOnce(rand);
+    }
+
+    // uma entrada na RC (recurso e leitura/escrita sorteados), bloqueando até liberar; recurso
+    // CRDT é aplicado na hora, sem RC
+    public void runOnce(Random rand) throws InterruptedException {
+        if (ra != null) {
+            doDecentralizedOperation();
+            return;
+        }
+        String resource = resourceNames[rand.nextInt(resourceNames.length)];
+        boolean read = rand.nextDouble() < readRatio;
+        if (crdtResources.contains(resource)) {
+            operate(resource, read);
+            return;
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        opDone = done;
+        requestCS(resource, read);
+        try {
+            done.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            opDone = null;
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public LatencyHistogram grantLatency() {
+        return grantLatency;
+    }
+
+    public LatencyHistogram opLatency() {
+        return opLatency;
+    }
+
+    // número de pares conectados (modo descentralizado)
+    public int peerCount() {
+        return ra != null ? ra.peerCount() : 0;
+    }
+
+    public int getCounter() {
+        return state.getCounter();
+    }
+
+    public long messageCount() {
+        return messages.sum();
+    }
+
+    public long entryCount() {
+        return entries.sum();
+    }
+
+    public long totalWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        if (jmx != null)
+            jmx.unregister();
+        if (metricsServer != null)
+            metricsServer.stop();
+        if (ra != null)
+            ra.close();
+        synchronized (this) {
+            try {
+                link.close();
+            } catch (IOException ignored) {
+            }
+        }
+        // incrementos ainda não espalhados: o próximo início continua deles
+        if (crdtFile != null)
+            saveCrdt();
+        state.close();
+    }
+
     public static void main(String[] args) throws Exception {
-        int pid = Integer.parseInt(args[0]); // ex: 1, 2, 3
-        boolean delay = false;
-        boolean crash = false;
-        for (String a : args) {
-            if ("--delay".equals(a))
-                delay = true;
-            if ("--crash".equals(a))
-                crash = true;
-        }
-        NodeClient client = new NodeClient(pid, "127.0.0.1", 5000, delay, crash);
+        Log.configure(args);
+        NodeClient client = new NodeClient(NodeOptions.parse(args));
         client.start();
     }
 }
@@ -0,0 +1,132 @@
+package br.ifba.saj.distribuido.node;
+
+import br.ifba.saj.distribuido.model.Message;
+import br.ifba.saj.distribuido.model.ThreadMode;
+import br.ifba.saj.distribuido.protocol.WireFormat;
+
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+// Opções de execução de um nó, lidas da linha de comando:
+// NodeClient <pid> [--delay] [--crash] [--virtual] [--binary] [--host=H] [--port=N] [--resources=a,b]
+// [--read-ratio=0.8] [--mutex=ra] [--peer-port=N] [--data-dir=D] [--store=json|wal|mmap] [--wal-sync=ms]
+// [--mmap-force] [--coords=host:porta,...] [--unix=/caminho] [--pipeline=N] [--clock=hlc]
+// [--metrics-port=N] [--log-level=debug|info|warn|error] [--heartbeat=ms]
+// [--sync-interval=ms] [--crdt=a,b] [--gossip-interval=ms]
+// [--priority=N]
+public class NodeOptions {
+    public int pid;
+    public String host = "127.0.0.1";
+    public int port = 5000;
+    // réplicas do coordenador ("host:porta" ou "unix:/caminho"), tentadas em ordem ao perder a
+    // conexão; null = só host:port
+    public String[] coordinators;
+    public boolean simulateDelay = false;
+    public boolean simulateCrash = false;
+    // crash simulado encerra o processo; false (harness com vários nós na mesma JVM) só fecha a conexão
+    public boolean exitOnCrash = true;
+    public ThreadMode threadMode = ThreadMode.PLATFORM;
+    public WireFormat wireFormat = WireFormat.JSON;
+    // recursos disputados pelo nó; cada REQUEST escolhe um deles ao acaso
+    public String[] resources = { Message.DEFAULT_RESOURCE };
+    // fração dos pedidos que são apenas leitura (concessão compartilhada)
+    public double readRatio = 0.0;
+    // caminho rápido (BATCH_OP): no máximo pipelineDepth lotes em voo; com --pipeline=N o
+    // loop do nó usa esse caminho em vez de REQUEST/GRANT/DO_OP/RELEASE
+    public int pipelineDepth = 4;
+    public boolean pipelined = false;
+    // exclusão mútua descentralizada (Ricart–Agrawala) em vez de pedir ao coordenador
+    public boolean decentralized = false;
+    public String peerHost = "127.0.0.1";
+    public int peerPort = 0; // 0 = porta livre escolhida pelo SO
+    // diretório dos checkpoints
+    public Path dataDir = Paths.get(".");
+    // persistência do estado: JSON reescrito a cada save (padrão), WAL com group commit
+    // ou arquivo mapeado em memória com dois slots
+    public CheckpointStore.Kind store = CheckpointStore.Kind.JSON;
+    public long walSyncMs = 5;
+    // store mmap: msync a cada save (sem ele a gravação em disco fica a cargo do SO)
+    public boolean mmapForce = false;
+    // --clock=hlc: relógio lógico híbrido em vez do Lamport puro
+    public boolean hybridClock = false;
+    // porta do endpoint /metrics (texto Prometheus); 0 = desligado
+    public int metricsPort = 0;
+    // intervalo do HEARTBEAT para o detector de falhas do coordenador; 0 (padrão) = não envia
+    public long heartbeatMs = 0;
+    // intervalo do SYNC de anti-entropia com o coordenador; 0 = só no JOIN
+    public long syncIntervalMs = 2000;
+    // recursos incrementados como contador CRDT, sem exclusão mútua, e intervalo do envio da
+    // entrada local ao coordenador
+    public Set<String> crdtResources = Set.of();
+    public long gossipIntervalMs = 100;
+    // classe de prioridade nos REQUESTs (maior = mais urgente; vale com --sched=priority no coordenador)
+    public long priority = 0;
+
+    public static NodeOptions parse(String[] args) {
+        NodeOptions o = new NodeOptions();
+        o.pid = Integer.parseInt(args[0]); // ex: 1, 2, 3
+        for (String a : args) {
+            if ("--delay".equals(a))
+                o.simulateDelay = true;
+            if ("--crash".equals(a))
+                o.simulateCrash = true;
+            if (a.startsWith("--host="))
+                o.host = a.substring("--host=".length());
+            if (a.startsWith("--port="))
+                o.port = Integer.parseInt(a.substring("--port=".length()));
+            if (a.startsWith("--coords="))
+                o.coordinators = a.substring("--coords=".length()).split(",");
+            if (a.startsWith("--unix="))
+                o.coordinators = new String[] { UnixTransport.PREFIX + a.substring("--unix=".length()) };
+            if (a.startsWith("--resources="))
+                o.resources = a.substring("--resources=".length()).split(",");
+            if ("--mmap-force".equals(a))
+                o.mmapForce = true;
+            if ("--mutex=ra".equals(a))
+                o.decentralized = true;
+            if (a.startsWith("--peer-port="))
+                o.peerPort = Integer.parseInt(a.substring("--peer-port=".length()));
+            if (a.startsWith("--data-dir="))
+                o.dataDir = Paths.get(a.substring("--data-dir=".length()));
+            if (a.startsWith("--wal-sync="))
+                o.walSyncMs = Long.parseLong(a.substring("--wal-sync=".length()));
+            if (a.startsWith("--pipeline=")) {
+                o.pipelineDepth = Integer.parseInt(a.substring("--pipeline=".length()));
+                o.pipelined = true;
+            }
+            if (a.startsWith("--metrics-port="))
+                o.metricsPort = Integer.parseInt(a.substring("--metrics-port=".length()));
+            if (a.startsWith("--heartbeat="))
+                o.heartbeatMs = Long.parseLong(a.substring("--heartbeat=".length()));
+            if (a.startsWith("--crdt="))
+                o.crdtResources = Set.of(a.substring("--crdt=".length()).split(","));
+            if (a.startsWith("--priority="))
+                o.priority = Long.parseLong(a.substring("--priority=".length()));
+            if (a.startsWith("--gossip-interval="))
+                o.gossipIntervalMs = Long.parseLong(a.substring("--gossip-interval=".length()));
+            if (a.startsWith("--sync-interval="))
+                o.syncIntervalMs = Long.parseLong(a.substring("--sync-interval=".length()));
+            if ("--clock=hlc".equals(a))
+                o.hybridClock = true;
+            if (a.startsWith("--read-ratio="))
+                o.readRatio = Double.parseDouble(a.substring("--read-ratio=".length()));
+        }
+        o.threadMode = ThreadMode.fromArgs(args);
+        o.wireFormat = WireFormat.fromArgs(args);
+        o.store = CheckpointStore.Kind.fromArgs(args);
+        checkResourceNames(Arrays.asList(o.resources));
+        checkResourceNames(o.crdtResources);
+        return o;
+    }
+
+    // o coordenador desconecta quem pede um recurso com nome longo demais: falha já na partida
+    private static void checkResourceNames(Collection<String> names) {
+        for (String r : names) {
+            if (!Message.isValidResource(r))
+                throw new IllegalArgumentException("nome de recurso com mais de " + Message.MAX_RESOURCE_BYTES
+                        + " bytes: " + r.substring(0, 32) + "...");
+        }
+    }
+}
@@ -1,81 +1,148 @@
 package br.ifba.saj.distribuido.node;
 
+import br.ifba.saj.distribuido.log.Log;
+import br.ifba.saj.distribuido.metrics.LatencyHistogram;
+import br.ifba.saj.distribuido.model.PnCounter;
+
 import java.io.*;
 import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class NodeState {
+// Estado local do nó; a persistência fica a cargo de um CheckpointStore
+// (JSON reescrito a cada save ou WAL com group commit e snapshots).
+// O estado é um StateSnapshot imutável trocado por CAS: leitores veem sempre counter e
+// timestamp do mesmo instante e nenhuma thread (escuta, agendador, operação) espera monitor.
+// Recursos em modo CRDT (--crdt=a,b) têm um PnCounter cada, fora do checkpoint: só a entrada
+// do próprio nó é gravada (CrdtReplicaFile); o resto volta pelo coordenador quando o nó reconecta.
+public final class NodeState {
     public final int nodeId;
-    private int counter = 0;
-    private int lastLamportTs = 0;
-    private final Path checkpointPath;
+    private final AtomicReference<StateSnapshot> current = new AtomicReference<>(new StateSnapshot(0, 0));
+    private final ConcurrentMap<String, PnCounter> crdts = new ConcurrentHashMap<>();
+    private final CheckpointStore store;
+    // pedidos de checkpoint ainda não atendidos; só quem leva de 0 a 1 grava
+    private final AtomicInteger saveRequests = new AtomicInteger();
+    // duração de cada gravação no store
+    private final LatencyHistogram checkpointLatency = new LatencyHistogram();
 
     public NodeState(int nodeId) {
+        this(nodeId, Paths.get("."));
+    }
+
+    public NodeState(int nodeId, Path dataDir) {
+        this(nodeId, new JsonCheckpointStore(dataDir.resolve("node-" + nodeId + "-checkpoint.json")));
+    }
+
+    public NodeState(int nodeId, CheckpointStore store) {
         this.nodeId = nodeId;
-        this.checkpointPath = Paths.get("node-" + nodeId + "-checkpoint.json");
+        this.store = store;
         loadCheckpoint();
     }
 
-    public synchronized int getCounter() {
-        return counter;
+    public int getCounter() {
+        return current.get().counter;
+    }
+
+    public long getLastLamportTs() {
+        return current.get().lamportTs;
+    }
+
+    public void setCounterAndTs(int value, long lamportTs) {
+        StateSnapshot cur, next;
+        do {
+            cur = current.get();
+            next = new StateSnapshot(value, Math.max(cur.lamportTs, lamportTs));
+        } while (!current.compareAndSet(cur, next));
+    }
+
+    // aplica só se lamportTs for mais novo que o estado atual (STATE recebido)
+    public boolean applyIfNewer(int value, long lamportTs) {
+        StateSnapshot cur;
+        do {
+            cur = current.get();
+            if (lamportTs <= cur.lamportTs)
+                return false;
+        } while (!current.compareAndSet(cur, new StateSnapshot(value, lamportTs)));
+        return true;
     }
 
-    public synchronized int getLastLamportTs() {
-        return lastLamportTs;
+    public PnCounter crdt(String resource) {
+        return crdts.computeIfAbsent(resource, r -> new PnCounter());
     }
 
-    public synchronized void setCounterAndTs(int value, long lamportTs) {
-        this.counter = value;
-        this.lastLamportTs = (int) Math.max(this.lastLamportTs, lamportTs);
+    public Iterable<String> crdtResources() {
+        return crdts.keySet();
     }
 
     // PRE-IMAGE
-    public synchronized StateSnapshot createSnapshot() {
-        return new StateSnapshot(counter, lastLamportTs);
+    public StateSnapshot createSnapshot() {
+        return current.get();
     }
 
-    public synchronized void restoreSnapshot(StateSnapshot snap) {
-        this.counter = snap.counter;
-        this.lastLamportTs = snap.lamportTs;
+    public void restoreSnapshot(StateSnapshot snap) {
+        current.set(snap);
     }
 
-    // checkpoint em arquivo
-    public synchronized void saveCheckpoint() {
-        try (BufferedWriter w = Files.newBufferedWriter(checkpointPath)) {
-            String json = String.format("{\"counter\":%d,\"lamport\":%d}", counter, lastLamportTs);
-            w.write(json);
-            w.flush();
-        } catch (IOException e) {
-            System.err.println("[NODE " + nodeId + "] Erro ao salvar checkpoint: " + e.getMessage());
-        }
+    // desfaz uma operação só se nada foi aplicado depois dela (timestamp ainda é o dela)
+    public boolean restoreIfUnchanged(long expectedTs, StateSnapshot pre) {
+        StateSnapshot cur;
+        do {
+            cur = current.get();
+            if (cur.lamportTs != expectedTs)
+                return false;
+        } while (!current.compareAndSet(cur, pre));
+        return true;
     }
 
-    public synchronized void loadCheckpoint() {
-        if (!Files.exists(checkpointPath)) {
-            System.out.println("[NODE " + nodeId + "] Nenhum checkpoint encontrado.");
+    // checkpoint em arquivo. Uma thread grava por vez e, se o estado mudou enquanto gravava,
+    // grava de novo o mais recente: o arquivo nunca fica com um estado mais velho que o último
+    // pedido. Quem encontra outra thread gravando volta na hora; a mudança dele vai na próxima volta.
+    public void saveCheckpoint() {
+        if (saveRequests.getAndIncrement() != 0)
             return;
-        }
+        int seen;
+        do {
+            seen = saveRequests.get();
+            StateSnapshot snap = current.get();
+            long t0 = System.nanoTime();
+            try {
+                store.save(snap.counter, snap.lamportTs);
+                checkpointLatency.record(System.nanoTime() - t0);
+            } catch (IOException e) {
+                Log.error("[NODE " + nodeId + "] Erro ao salvar checkpoint: " + e.getMessage());
+            }
+        } while (saveRequests.addAndGet(-seen) != 0);
+    }
+
+    public void loadCheckpoint() {
         try {
-            String content = new String(Files.readAllBytes(checkpointPath));
-            content = content.replaceAll("[{}\\s\"]", "");
-            for (String part : content.split(",")) {
-                String[] kv = part.split(":");
-                if (kv[0].equals("counter"))
-                    counter = Integer.parseInt(kv[1]);
-                if (kv[0].equals("lamport"))
-                    lastLamportTs = Integer.parseInt(kv[1]);
+            StateSnapshot snap = store.load();
+            if (snap == null) {
+                Log.info("[NODE " + nodeId + "] Nenhum checkpoint encontrado.");
+                return;
             }
-            System.out.println(
-                    "[NODE " + nodeId + "] Checkpoint carregado: counter=" + counter + " lamport=" + lastLamportTs);
-        } catch (IOException e) {
-            System.err.println("[NODE " + nodeId + "] Falha ao ler checkpoint: " + e.getMessage());
+            current.set(snap);
+            Log.info("[NODE " + nodeId + "] Checkpoint carregado: counter=" + snap.counter + " lamport="
+                    + snap.lamportTs);
+        } catch (IOException | RuntimeException e) {
+            Log.error("[NODE " + nodeId + "] Falha ao ler checkpoint: " + e.getMessage());
         }
     }
 
+    public LatencyHistogram checkpointLatency() {
+        return checkpointLatency;
+    }
+
+    public void close() {
+        store.close();
+    }
+
     public static class StateSnapshot {
         public final int counter;
-        public final int lamportTs;
+        public final long lamportTs;
 
-        public StateSnapshot(int counter, int lamportTs) {
+        public StateSnapshot(int counter, long lamportTs) {
             this.counter = counter;
             this.lamportTs = lamportTs;
         }
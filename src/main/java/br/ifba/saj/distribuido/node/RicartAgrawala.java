@@ -0,0 +1,308 @@
+package br.ifba.saj.distribuido.node;
+
+import br.ifba.saj.distribuido.log.Log;
+import br.ifba.saj.distribuido.model.*;
+import br.ifba.saj.distribuido.protocol.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Exclusão mútua descentralizada (Ricart–Agrawala) entre os nós, sem passar pelo coordenador,
+// que fica só com a lista de membros (MEMBERS).
+// Para entrar na RC o nó manda RA_REQUEST(ts) a todos os pares e espera um RA_REPLY de cada;
+// quem está na RC, ou pediu antes (menor (ts, pid)), adia a resposta até sair.
+// Ao sair, o nó manda STATE com o novo contador a todos e só depois as respostas adiadas;
+// cada par de nós usa uma única conexão TCP (FIFO), aberta pelo nó de maior pid, então o
+// próximo a entrar já recebeu o valor. O RA_REPLY também leva o contador do par, para nós
+// que entraram no meio do caminho. Um par que conecta enquanto pedimos a RC recebe o
+// nosso pedido e passa a ser esperado.
+class RicartAgrawala {
+    private final int pid;
+    private final LamportClock clock;
+    private final NodeState state;
+    private final ThreadMode threadMode;
+    private final WireFormat format;
+    // mensagens entre pares são contadas só no envio (cada uma aparece uma vez)
+    private final LongAdder messages;
+    private ServerSocket server;
+
+    // uma conexão por par, nos dois sentidos
+    private final Map<Integer, PeerLink> peers = new ConcurrentHashMap<>();
+    // membros da última lista do coordenador; só quem sai da lista é desconectado
+    // (um par novo pode conectar antes de recebermos a lista que o inclui)
+    private Set<Integer> members = new HashSet<>();
+
+    // estado do algoritmo, protegido pelo monitor deste objeto
+    private boolean requesting = false;
+    private boolean inCS = false;
+    private long myTs;
+    private final Set<Integer> awaiting = new HashSet<>();
+    private final List<Integer> deferred = new ArrayList<>();
+
+    RicartAgrawala(int pid, LamportClock clock, NodeState state, ThreadMode threadMode, WireFormat format,
+            LongAdder messages) {
+        this.pid = pid;
+        this.clock = clock;
+        this.state = state;
+        this.threadMode = threadMode;
+        this.format = format;
+        this.messages = messages;
+    }
+
+    // abre a porta para os pares; devolve o endereço anunciado no JOIN
+    String listen(String host, int port) throws IOException {
+        server = new ServerSocket(port);
+        threadMode.start("node-" + pid + "-peer-accept", () -> {
+            try {
+                while (true) {
+                    PeerLink link = new PeerLink(server.accept());
+                    threadMode.start("node-" + pid + "-peer", () -> readPeer(link, -1));
+                }
+            } catch (IOException e) {
+                // servidor fechado
+            }
+        });
+        return host + ":" + server.getLocalPort();
+    }
+
+    // lista recebida do coordenador: "pid@host:porta,..."; conecta nos pares de pid menor
+    // (chamado só pela thread de escuta do coordenador)
+    void updateMembers(String list) {
+        Set<Integer> current = new HashSet<>();
+        if (list != null && !list.isBlank()) {
+            for (String m : list.split(",")) {
+                String[] idAddr = m.split("@");
+                int peerPid = Integer.parseInt(idAddr[0]);
+                if (peerPid == pid)
+                    continue;
+                current.add(peerPid);
+                if (peerPid < pid && !peers.containsKey(peerPid)) {
+                    String[] hp = idAddr[1].split(":");
+                    try {
+                        PeerLink link = new PeerLink(new Socket(hp[0], Integer.parseInt(hp[1])));
+                        Message hello = new Message();
+                        hello.setType(MessageType.JOIN);
+                        hello.setPid(pid);
+                        hello.setClock(clock.increment());
+                        link.send(hello);
+                        linkUp(peerPid, link);
+                        threadMode.start("node-" + pid + "-peer", () -> readPeer(link, peerPid));
+                    } catch (IOException e) {
+                        Log.info("[NODE " + pid + "] Par " + peerPid + " inacessível: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        for (Integer gone : members) {
+            if (!current.contains(gone))
+                linkDown(gone);
+        }
+        members = current;
+    }
+
+    // registro e verificação de pedido em andamento no mesmo monitor que o acquire usa,
+    // para o par receber o pedido exatamente uma vez
+    private void linkUp(int peerPid, PeerLink link) {
+        PeerLink old;
+        Message req = null;
+        synchronized (this) {
+            old = peers.put(peerPid, link);
+            if (requesting) {
+                awaiting.add(peerPid);
+                req = new Message();
+                req.setType(MessageType.RA_REQUEST);
+                req.setPid(pid);
+                req.setClock(myTs);
+            }
+        }
+        if (old != null)
+            old.close();
+        if (req != null)
+            sendTo(peerPid, req);
+    }
+
+    private void linkDown(int peerPid) {
+        PeerLink link = peers.remove(peerPid);
+        if (link != null)
+            link.close();
+        synchronized (this) {
+            // par que saiu não precisa mais responder
+            if (awaiting.remove(peerPid))
+                notifyAll();
+            deferred.remove(Integer.valueOf(peerPid));
+        }
+    }
+
+    int peerCount() {
+        return peers.size();
+    }
+
+    // bloqueia até obter a RC
+    void acquire() throws InterruptedException {
+        Message req = new Message();
+        List<Integer> targets;
+        synchronized (this) {
+            requesting = true;
+            myTs = clock.increment();
+            awaiting.clear();
+            awaiting.addAll(peers.keySet());
+            targets = new ArrayList<>(awaiting);
+            req.setType(MessageType.RA_REQUEST);
+            req.setPid(pid);
+            req.setClock(myTs);
+        }
+        for (Integer target : targets)
+            sendTo(target, req);
+        synchronized (this) {
+            while (!awaiting.isEmpty())
+                wait();
+            requesting = false;
+            inCS = true;
+        }
+    }
+
+    // sai da RC: propaga o novo valor e responde quem foi adiado
+    void release() {
+        Message st = new Message();
+        st.setType(MessageType.STATE);
+        st.setPid(pid);
+        st.setClock(clock.increment());
+        st.setCounter(state.getCounter());
+        for (Integer target : new ArrayList<>(peers.keySet()))
+            sendTo(target, st);
+
+        List<Integer> toReply;
+        synchronized (this) {
+            inCS = false;
+            toReply = new ArrayList<>(deferred);
+            deferred.clear();
+        }
+        for (Integer target : toReply)
+            reply(target);
+    }
+
+    void close() {
+        try {
+            if (server != null)
+                server.close();
+        } catch (IOException ignored) {
+        }
+        peers.values().forEach(PeerLink::close);
+        peers.clear();
+    }
+
+    // peerPid = -1 para conexões aceitas: o pid vem no JOIN inicial do par
+    private void readPeer(PeerLink link, int peerPid) {
+        try {
+            FrameReader reader = new FrameReader(link.socket.getInputStream());
+            Message reuse = new Message();
+            Message msg;
+            while ((msg = reader.read(reuse)) != null) {
+                clock.update(msg.getClock());
+                switch (msg.getType()) {
+                    case JOIN -> {
+                        peerPid = msg.getPid();
+                        linkUp(peerPid, link);
+                    }
+                    case RA_REQUEST -> onRequest(msg.getPid(), msg.getClock());
+                    case RA_REPLY -> onReply(msg);
+                    case STATE -> onState(msg);
+                    default -> {
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // par desconectou
+        }
+        if (peerPid >= 0 && peers.get(peerPid) == link)
+            linkDown(peerPid);
+        link.close();
+    }
+
+    private void onRequest(int from, long ts) {
+        boolean defer;
+        synchronized (this) {
+            defer = inCS || (requesting && (myTs < ts || (myTs == ts && pid < from)));
+            if (defer)
+                deferred.add(from);
+        }
+        if (!defer)
+            reply(from);
+    }
+
+    private void onReply(Message msg) {
+        // o par pode ter um valor mais novo que o nosso (ex.: acabamos de entrar no grupo)
+        if (msg.has(PayloadField.STATE_TS))
+            state.applyIfNewer(msg.getCounter(), msg.getLong(PayloadField.STATE_TS));
+        synchronized (this) {
+            if (awaiting.remove(msg.getPid()))
+                notifyAll();
+        }
+    }
+
+    private void onState(Message msg) {
+        if (state.applyIfNewer(msg.getCounter(), msg.getClock())) {
+            if (Log.debugEnabled())
+                Log.debug("[NODE " + pid + "] STATE do par " + msg.getPid() + ": counter=" + msg.getCounter()
+                        + " (ts=" + msg.getClock() + ")");
+        }
+    }
+
+    private void reply(int target) {
+        Message rep = new Message();
+        rep.setType(MessageType.RA_REPLY);
+        rep.setPid(pid);
+        rep.setClock(clock.increment());
+        NodeState.StateSnapshot snap = state.createSnapshot();
+        rep.setCounter(snap.counter);
+        rep.setLong(PayloadField.STATE_TS, snap.lamportTs);
+        sendTo(target, rep);
+    }
+
+    private void sendTo(int target, Message msg) {
+        PeerLink link = peers.get(target);
+        if (link != null && link.send(msg))
+            messages.increment();
+    }
+
+    private class PeerLink {
+        private final Socket socket;
+        private final OutputStream out;
+        private final ByteBuffer frame = ByteBuffer.allocate(BinaryCodec.FRAME_BUFFER_SIZE);
+
+        PeerLink(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        synchronized boolean send(Message msg) {
+            try {
+                if (format == WireFormat.BINARY) {
+                    frame.clear();
+                    ByteBuffer f = BinaryCodec.encode(msg, frame);
+                    out.write(f.array(), 0, f.position());
+                } else {
+                    out.write((JsonCodec.encode(msg) + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                Log.warn("[NODE " + pid + "] erro ao enviar ao par: " + e.getMessage());
+                return false;
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
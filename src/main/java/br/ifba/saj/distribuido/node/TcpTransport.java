@@ -0,0 +1,35 @@
+package br.ifba.saj.distribuido.node;
+
+import java.io.*;
+import java.net.*;
+
+// "host:porta" por TCP, com Nagle desligado
+class TcpTransport implements Transport {
+    private static final int CONNECT_TIMEOUT_MS = 500;
+
+    @Override
+    public Link connect(String address) throws IOException {
+        String[] hp = address.split(":");
+        Socket s = new Socket();
+        s.connect(new InetSocketAddress(hp[0], Integer.parseInt(hp[1])), CONNECT_TIMEOUT_MS);
+        s.setTcpNoDelay(true);
+        InputStream in = s.getInputStream();
+        OutputStream out = s.getOutputStream();
+        return new Link() {
+            @Override
+            public InputStream input() {
+                return in;
+            }
+
+            @Override
+            public OutputStream output() {
+                return out;
+            }
+
+            @Override
+            public void close() throws IOException {
+                s.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,23 @@
+package br.ifba.saj.distribuido.node;
+
+import java.io.*;
+
+// Canal do nó até o coordenador. O NodeClient só enxerga os streams; o protocolo (JSON por
+// linha ou frames binários) é o mesmo em qualquer transporte. O endereço escolhe a
+// implementação: "host:porta" é TCP e "unix:/caminho" é um socket de domínio Unix, para
+// nós na mesma máquina do coordenador (sem pilha TCP/IP no caminho).
+public interface Transport {
+
+    Link connect(String address) throws IOException;
+
+    // conexão aberta; close() derruba a leitura bloqueada na thread de escuta
+    interface Link extends Closeable {
+        InputStream input();
+
+        OutputStream output();
+    }
+
+    static Transport forAddress(String address) {
+        return address.startsWith(UnixTransport.PREFIX) ? new UnixTransport() : new TcpTransport();
+    }
+}
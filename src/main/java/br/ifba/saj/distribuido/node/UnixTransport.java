@@ -0,0 +1,41 @@
+package br.ifba.saj.distribuido.node;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+
+// "unix:/caminho": SocketChannel de domínio Unix em modo bloqueante. Os streams do Channels
+// não dividem lock entre leitura e escrita, então a escuta e o envio seguem independentes
+// como no TCP
+class UnixTransport implements Transport {
+    static final String PREFIX = "unix:";
+
+    @Override
+    public Link connect(String address) throws IOException {
+        SocketChannel ch = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            ch.connect(UnixDomainSocketAddress.of(address.substring(PREFIX.length())));
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+        InputStream in = Channels.newInputStream(ch);
+        OutputStream out = Channels.newOutputStream(ch);
+        return new Link() {
+            @Override
+            public InputStream input() {
+                return in;
+            }
+
+            @Override
+            public OutputStream output() {
+                return out;
+            }
+
+            @Override
+            public void close() throws IOException {
+                ch.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,264 @@
+package br.ifba.saj.distribuido.node;
+
+import br.ifba.saj.distribuido.log.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CRC32C;
+
+// Log de escrita antecipada (WAL) do estado do nó.
+// Cada save acrescenta um registro de tamanho fixo (crc, seq, counter, lamport) a um buffer
+// em memória; uma thread de commit grava o buffer e faz um único fsync para todos os registros
+// acumulados na janela de syncMs (group commit). Com syncMs = 0 cada save grava e faz fsync.
+// A cada SNAPSHOT_EVERY registros o estado é gravado num snapshot (arquivo temporário, fsync,
+// rename atômico) e o log é truncado. Na recuperação lemos o snapshot e reaplicamos os
+// registros do log com seq maior que o dele, parando no primeiro registro com CRC inválido
+// (escrita interrompida pela queda), que é cortado do arquivo.
+class WalCheckpointStore implements CheckpointStore {
+    static final int RECORD_SIZE = 4 + 8 + 4 + 8;
+    static final int SNAPSHOT_EVERY = 10_000;
+    private static final int BUFFER_RECORDS = 1024;
+
+    private final Path walPath;
+    private final Path snapshotPath;
+    private final Path snapshotTmp;
+    private final long syncMs;
+    private final FileChannel wal;
+    private final Thread committer;
+
+    // registros ainda não gravados; trocados com 'spare' pela thread de commit
+    private ByteBuffer pending = ByteBuffer.allocate(RECORD_SIZE * BUFFER_RECORDS);
+    private ByteBuffer spare = ByteBuffer.allocate(RECORD_SIZE * BUFFER_RECORDS);
+    private long seq;
+    private int lastCounter;
+    private long lastLamport;
+    // para a thread de commit; sem interrupt, que fecharia o FileChannel no meio de um write/force
+    private boolean closed;
+
+    // serializa as gravações no arquivo (thread de commit, commits inline e close)
+    private final Object commitLock = new Object();
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private long walRecords;
+    // último registro já gravado no arquivo (protegidos por commitLock)
+    private long durableSeq;
+    private int durableCounter;
+    private long durableLamport;
+
+    WalCheckpointStore(Path dir, String baseName, long syncMs) throws IOException {
+        this.walPath = dir.resolve(baseName + ".wal");
+        this.snapshotPath = dir.resolve(baseName + ".snapshot");
+        this.snapshotTmp = dir.resolve(baseName + ".snapshot.tmp");
+        this.syncMs = syncMs;
+        this.wal = FileChannel.open(walPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        recover();
+        if (syncMs > 0) {
+            committer = Thread.ofPlatform().daemon().name("wal-commit-" + baseName).start(this::commitLoop);
+        } else {
+            committer = null;
+        }
+    }
+
+    @Override
+    public void save(int counter, long lamportTs) throws IOException {
+        boolean full;
+        synchronized (this) {
+            if (pending.position() == 0)
+                notifyAll();
+            putRecord(pending, ++seq, counter, lamportTs);
+            lastCounter = counter;
+            lastLamport = lamportTs;
+            full = !pending.hasRemaining();
+        }
+        if (syncMs == 0 || full)
+            commit();
+    }
+
+    // devolve o último estado gravado; antes descarrega o buffer para ler o mesmo que uma recuperação leria
+    @Override
+    public NodeState.StateSnapshot load() throws IOException {
+        commit();
+        return recover();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        if (committer != null) {
+            try {
+                committer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            commit();
+            synchronized (commitLock) {
+                compact();
+                wal.close();
+            }
+        } catch (IOException e) {
+            Log.error("[WAL] Erro ao fechar " + walPath + ": " + e.getMessage());
+        }
+    }
+
+    private void commitLoop() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (pending.position() == 0 && !closed)
+                        wait();
+                    if (closed)
+                        return; // close() grava o que restou
+                    // janela do group commit: os saves que chegarem agora vão no mesmo fsync
+                    long deadline = System.nanoTime() + syncMs * 1_000_000;
+                    long left;
+                    while (!closed && (left = deadline - System.nanoTime()) > 0)
+                        wait(Math.max(1, left / 1_000_000));
+                    if (closed)
+                        return;
+                }
+                try {
+                    commit();
+                } catch (IOException e) {
+                    Log.error("[WAL] Erro no commit de " + walPath + ": " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            // interrompida de fora: close() ainda grava o que restou
+        }
+    }
+
+    private void commit() throws IOException {
+        synchronized (commitLock) {
+            ByteBuffer batch;
+            long batchSeq;
+            int batchCounter;
+            long batchLamport;
+            synchronized (this) {
+                if (pending.position() == 0)
+                    return;
+                batch = pending;
+                pending = spare;
+                spare = batch;
+                batchSeq = seq;
+                batchCounter = lastCounter;
+                batchLamport = lastLamport;
+            }
+            batch.flip();
+            int records = batch.remaining() / RECORD_SIZE;
+            while (batch.hasRemaining())
+                wal.write(batch);
+            batch.clear();
+            wal.force(false);
+            // só depois do fsync: compact() não pode gravar no snapshot um estado que não chegou ao disco
+            walRecords += records;
+            durableSeq = batchSeq;
+            durableCounter = batchCounter;
+            durableLamport = batchLamport;
+            if (walRecords >= SNAPSHOT_EVERY)
+                compact();
+        }
+    }
+
+    // snapshot do último estado gravado e log zerado; chamado com commitLock
+    private void compact() throws IOException {
+        if (durableSeq == 0)
+            return;
+        record.clear();
+        putRecord(record, durableSeq, durableCounter, durableLamport);
+        record.flip();
+        try (FileChannel ch = FileChannel.open(snapshotTmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.write(record);
+            ch.force(false);
+        }
+        Files.move(snapshotTmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // registros com seq <= durableSeq são ignorados na recuperação, então uma queda entre o
+        // rename e o truncate não perde nem duplica nada
+        wal.truncate(0);
+        wal.position(0);
+        wal.force(false);
+        walRecords = 0;
+    }
+
+    // lê snapshot + cauda do log; corta registros incompletos ou corrompidos do fim
+    private NodeState.StateSnapshot recover() throws IOException {
+        synchronized (commitLock) {
+            long snapSeq = 0;
+            NodeState.StateSnapshot state = null;
+            if (Files.exists(snapshotPath)) {
+                ByteBuffer snap = ByteBuffer.wrap(Files.readAllBytes(snapshotPath));
+                if (snap.remaining() == RECORD_SIZE && validRecord(snap)) {
+                    snapSeq = snap.getLong(4);
+                    state = new NodeState.StateSnapshot(snap.getInt(12), snap.getLong(16));
+                } else {
+                    Log.warn("[WAL] Snapshot inválido ignorado: " + snapshotPath);
+                }
+            }
+
+            long size = wal.size();
+            ByteBuffer log = ByteBuffer.allocate((int) size);
+            while (log.hasRemaining() && wal.read(log, log.position()) >= 0) {
+            }
+            log.flip();
+            long lastSeq = snapSeq;
+            long valid = 0;
+            long replayed = 0;
+            while (log.remaining() >= RECORD_SIZE) {
+                ByteBuffer rec = log.slice(log.position(), RECORD_SIZE);
+                if (!validRecord(rec))
+                    break;
+                long recSeq = rec.getLong(4);
+                if (recSeq > lastSeq) {
+                    state = new NodeState.StateSnapshot(rec.getInt(12), rec.getLong(16));
+                    lastSeq = recSeq;
+                    replayed++;
+                }
+                log.position(log.position() + RECORD_SIZE);
+                valid += RECORD_SIZE;
+            }
+            if (valid < size) {
+                Log.warn("[WAL] Descartando " + (size - valid) + " bytes inválidos no fim de " + walPath);
+                wal.truncate(valid);
+                wal.force(false);
+            }
+            wal.position(valid);
+            walRecords = valid / RECORD_SIZE;
+            durableSeq = lastSeq;
+            if (state != null) {
+                durableCounter = state.counter;
+                durableLamport = state.lamportTs;
+            }
+            synchronized (this) {
+                seq = Math.max(seq, lastSeq);
+                if (state != null) {
+                    lastCounter = state.counter;
+                    lastLamport = state.lamportTs;
+                }
+            }
+            if (replayed > 0)
+                Log.info("[WAL] " + replayed + " registros reaplicados de " + walPath);
+            return state;
+        }
+    }
+
+    private static void putRecord(ByteBuffer buf, long seq, int counter, long lamportTs) {
+        int start = buf.position();
+        buf.putInt(0).putLong(seq).putInt(counter).putLong(lamportTs);
+        CRC32C crc = new CRC32C();
+        crc.update(buf.array(), start + 4, RECORD_SIZE - 4);
+        buf.putInt(start, (int) crc.getValue());
+    }
+
+    private static boolean validRecord(ByteBuffer rec) {
+        CRC32C crc = new CRC32C();
+        crc.update(rec.duplicate().position(rec.position() + 4).limit(rec.position() + RECORD_SIZE));
+        return rec.getInt(rec.position()) == (int) crc.getValue();
+    }
+}
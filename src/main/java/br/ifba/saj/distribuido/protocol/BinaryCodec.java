@@ -0,0 +1,192 @@
+package br.ifba.saj.distribuido.protocol;
+
+import br.ifba.saj.distribuido.model.*;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Codec binário versionado. Frame:
+//   MAGIC(1) VERSION(1) LEN(i32) | TYPE(1) PID(i32) CLOCK(i64) NFIELDS(1) { TAG(1) VALOR }*
+// TAG = ordinal do PayloadField, com o bit 0x80 ligado para strings (i32 tamanho + UTF-8);
+// campos long ocupam 8 bytes. Tamanhos de 32 bits (versão 2): listas de membros e estados
+// CRDT crescem com o cluster e passavam dos 64KB da versão 1; o limite do corpo é o mesmo
+// das linhas JSON (MAX_BODY_SIZE). Tags desconhecidas são puladas, então campos novos no fim
+// do PayloadField não quebram leitores antigos. O MAGIC nunca inicia uma linha JSON,
+// o que permite misturar os dois formatos na mesma conexão.
+public final class BinaryCodec {
+    public static final byte MAGIC = (byte) 0xB7;
+    public static final byte VERSION = 2;
+    public static final int HEADER_SIZE = 6;
+    public static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+    // tamanho inicial dos buffers de escrita; encode troca por um maior quando não cabe
+    public static final int FRAME_BUFFER_SIZE = 64 * 1024;
+    private static final int STRING_TAG = 0x80;
+
+    // buffer de rascunho por thread para encodeToArray
+    private static final ThreadLocal<ByteBuffer> scratch = ThreadLocal
+            .withInitial(() -> ByteBuffer.allocate(FRAME_BUFFER_SIZE));
+
+    private BinaryCodec() {
+    }
+
+    // escreve o frame completo em dst, a partir da posição atual, e devolve o buffer usado:
+    // o próprio dst (sem alocação) ou, se o frame não coube, um maior com o frame do início
+    public static ByteBuffer encode(Message msg, ByteBuffer dst) {
+        int start = dst.position();
+        try {
+            encodeInto(msg, dst);
+            return dst;
+        } catch (BufferOverflowException e) {
+            dst.position(start);
+        }
+        int size = Math.max(dst.capacity(), FRAME_BUFFER_SIZE);
+        while (true) {
+            size = (int) Math.min((long) size * 2, HEADER_SIZE + MAX_BODY_SIZE + 8L);
+            ByteBuffer bigger = ByteBuffer.allocate(size);
+            try {
+                encodeInto(msg, bigger);
+                return bigger;
+            } catch (BufferOverflowException e) {
+                if (size >= HEADER_SIZE + MAX_BODY_SIZE)
+                    throw tooBig(msg, (long) size - HEADER_SIZE);
+            }
+        }
+    }
+
+    private static IllegalArgumentException tooBig(Message msg, long bodyLen) {
+        return new IllegalArgumentException("mensagem " + msg.getType() + " grande demais: " + bodyLen
+                + " bytes (máximo " + MAX_BODY_SIZE + ")");
+    }
+
+    private static void encodeInto(Message msg, ByteBuffer dst) {
+        int start = dst.position();
+        dst.put(MAGIC).put(VERSION).putInt(0);
+        int bodyStart = dst.position();
+        dst.put((byte) msg.getType().ordinal());
+        dst.putInt(msg.getPid());
+        dst.putLong(msg.getClock());
+        int countPos = dst.position();
+        dst.put((byte) 0);
+        int count = 0;
+        for (PayloadField f : PayloadField.all()) {
+            if (!msg.has(f))
+                continue;
+            count++;
+            if (f.kind == PayloadField.Kind.LONG) {
+                dst.put((byte) f.ordinal());
+                dst.putLong(msg.getLong(f));
+            } else {
+                dst.put((byte) (f.ordinal() | STRING_TAG));
+                putString(dst, msg.getString(f));
+            }
+        }
+        dst.put(countPos, (byte) count);
+        int bodyLen = dst.position() - bodyStart;
+        if (bodyLen > MAX_BODY_SIZE)
+            throw tooBig(msg, bodyLen);
+        dst.putInt(start + 2, bodyLen);
+    }
+
+    // frame em um array novo do tamanho exato (para filas de saída assíncronas)
+    public static byte[] encodeToArray(Message msg) {
+        ByteBuffer buf = scratch.get();
+        buf.clear();
+        // um buffer maior não fica no ThreadLocal: mensagens grandes são raras
+        buf = encode(msg, buf);
+        byte[] out = new byte[buf.position()];
+        buf.flip();
+        buf.get(out);
+        return out;
+    }
+
+    // lê o cabeçalho e devolve o tamanho do corpo; src deve estar posicionado no MAGIC
+    public static int readHeader(ByteBuffer src) throws IOException {
+        byte magic = src.get();
+        byte version = src.get();
+        if (magic != MAGIC)
+            throw new IOException("frame binário inválido");
+        if (version != VERSION)
+            throw new IOException("versão de protocolo não suportada: " + version);
+        int len = src.getInt();
+        if (len < 0 || len > MAX_BODY_SIZE)
+            throw new IOException("frame binário com tamanho inválido: " + len);
+        return len;
+    }
+
+    // decodifica o corpo (src limitado ao corpo) na mensagem reutilizável
+    public static void decodeBody(ByteBuffer src, Message into) throws IOException {
+        try {
+            decodeFields(src, into);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("frame binário truncado");
+        }
+    }
+
+    private static void decodeFields(ByteBuffer src, Message into) throws IOException {
+        into.reset();
+        into.setType(MessageType.fromOrdinal(src.get()));
+        into.setPid(src.getInt());
+        into.setClock(src.getLong());
+        int count = src.get() & 0xFF;
+        for (int i = 0; i < count; i++) {
+            int tag = src.get() & 0xFF;
+            PayloadField f = PayloadField.fromOrdinal(tag & ~STRING_TAG);
+            if ((tag & STRING_TAG) != 0) {
+                String value = getString(src);
+                if (f != null && f.kind == PayloadField.Kind.STRING)
+                    into.setString(f, value);
+            } else {
+                long value = src.getLong();
+                if (f != null && f.kind == PayloadField.Kind.LONG)
+                    into.setLong(f, value);
+            }
+        }
+    }
+
+    // UTF-8 manual para não alocar o byte[] intermediário de String.getBytes
+    private static void putString(ByteBuffer dst, String s) {
+        int lenPos = dst.position();
+        dst.putInt(0);
+        int start = dst.position();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                dst.put((byte) c);
+            } else if (c < 0x800) {
+                dst.put((byte) (0xC0 | (c >> 6)));
+                dst.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                dst.put((byte) (0xF0 | (cp >> 18)));
+                dst.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                dst.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                dst.put((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                dst.put((byte) (0xE0 | (c >> 12)));
+                dst.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                dst.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        dst.putInt(lenPos, dst.position() - start);
+    }
+
+    private static String getString(ByteBuffer src) throws IOException {
+        int len = src.getInt();
+        if (len < 0 || len > src.remaining())
+            throw new IOException("string com tamanho inválido: " + len);
+        String s;
+        if (src.hasArray()) {
+            s = new String(src.array(), src.arrayOffset() + src.position(), len, StandardCharsets.UTF_8);
+        } else {
+            byte[] tmp = new byte[len];
+            src.get(src.position(), tmp);
+            s = new String(tmp, StandardCharsets.UTF_8);
+        }
+        src.position(src.position() + len);
+        return s;
+    }
+}
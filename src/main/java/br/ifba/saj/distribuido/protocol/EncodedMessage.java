@@ -0,0 +1,34 @@
+package br.ifba.saj.distribuido.protocol;
+
+import br.ifba.saj.distribuido.model.Message;
+
+import java.nio.charset.StandardCharsets;
+
+// Mensagem serializada uma única vez por formato e compartilhada entre vários destinos
+// (broadcast). Os bytes não devem ser modificados por quem os recebe.
+public class EncodedMessage {
+    private final Message msg;
+    private volatile byte[] json;
+    private volatile byte[] binary;
+
+    public EncodedMessage(Message msg) {
+        this.msg = msg;
+    }
+
+    public Message message() {
+        return msg;
+    }
+
+    public byte[] bytes(WireFormat format) {
+        if (format == WireFormat.BINARY) {
+            byte[] b = binary;
+            if (b == null)
+                binary = b = BinaryCodec.encodeToArray(msg);
+            return b;
+        }
+        byte[] j = json;
+        if (j == null)
+            json = j = (JsonCodec.encode(msg) + "\n").getBytes(StandardCharsets.UTF_8);
+        return j;
+    }
+}
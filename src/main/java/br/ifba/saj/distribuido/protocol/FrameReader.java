@@ -0,0 +1,86 @@
+package br.ifba.saj.distribuido.protocol;
+
+import br.ifba.saj.distribuido.model.Message;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Lê mensagens de um stream bloqueante aceitando os dois formatos: linhas JSON
+// terminadas em '\n' ou frames binários (identificados pelo MAGIC no primeiro byte).
+// Os buffers são reaproveitados entre leituras.
+public class FrameReader {
+    private final InputStream in;
+    private ByteBuffer body = ByteBuffer.allocate(BinaryCodec.FRAME_BUFFER_SIZE);
+    private byte[] line = new byte[256];
+
+    public FrameReader(InputStream in) {
+        this.in = new BufferedInputStream(in);
+    }
+
+    // devolve a próxima mensagem ou null no fim do stream. Frames binários são
+    // decodificados em 'reuse'; linhas JSON produzem uma mensagem nova
+    public Message read(Message reuse) throws IOException {
+        while (true) {
+            int first = in.read();
+            if (first < 0)
+                return null;
+            if ((byte) first == BinaryCodec.MAGIC) {
+                int version = in.read();
+                if (version != BinaryCodec.VERSION)
+                    throw new IOException("versão de protocolo não suportada: " + version);
+                int len = (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+                if (len < 0 || len > BinaryCodec.MAX_BODY_SIZE)
+                    throw new IOException("frame binário com tamanho inválido: " + len);
+                if (len > body.capacity())
+                    body = ByteBuffer.allocate(len);
+                body.clear().limit(len);
+                readFully(body.array(), len);
+                BinaryCodec.decodeBody(body, reuse);
+                return reuse;
+            }
+            String json = readLine(first);
+            if (json == null)
+                return null;
+            if (!json.isBlank())
+                return JsonCodec.decode(json);
+        }
+    }
+
+    private String readLine(int first) throws IOException {
+        int n = 0;
+        int b = first;
+        while (b != '\n') {
+            if (b < 0)
+                return n == 0 ? null : new String(line, 0, n, StandardCharsets.UTF_8);
+            if (b != '\r') {
+                if (n == line.length) {
+                    if (n >= BinaryCodec.MAX_BODY_SIZE)
+                        throw new IOException("linha JSON maior que " + BinaryCodec.MAX_BODY_SIZE + " bytes");
+                    line = Arrays.copyOf(line, n * 2);
+                }
+                line[n++] = (byte) b;
+            }
+            b = in.read();
+        }
+        return new String(line, 0, n, StandardCharsets.UTF_8);
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0)
+            throw new EOFException();
+        return b;
+    }
+
+    private void readFully(byte[] dst, int len) throws IOException {
+        int off = 0;
+        while (off < len) {
+            int r = in.read(dst, off, len - off);
+            if (r < 0)
+                throw new EOFException();
+            off += r;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package br.ifba.saj.distribuido.protocol;
+
+import br.ifba.saj.distribuido.model.*;
+import com.google.gson.*;
+
+import java.util.Map;
+
+// Codec JSON (formato original): {"type":..,"pid":..,"clock":..,"payload":"{\"counter\":N}"}.
+// O payload é montado a partir dos campos tipados da mensagem e, na leitura, convertido de volta.
+public final class JsonCodec {
+    private static final Gson gson = new Gson();
+
+    private JsonCodec() {
+    }
+
+    public static String encode(Message msg) {
+        JsonObject obj = new JsonObject();
+        if (msg.getType() != null)
+            obj.addProperty("type", msg.getType().name());
+        obj.addProperty("pid", msg.getPid());
+        obj.addProperty("clock", msg.getClock());
+        obj.addProperty("payload", msg.hasFields() ? encodePayload(msg)
+                : msg.getPayload() != null ? msg.getPayload() : "{}");
+        return gson.toJson(obj);
+    }
+
+    public static Message decode(String line) {
+        Message msg = gson.fromJson(line, Message.class);
+        decodePayload(msg);
+        return msg;
+    }
+
+    private static String encodePayload(Message msg) {
+        JsonObject payload = new JsonObject();
+        for (PayloadField f : PayloadField.all()) {
+            if (!msg.has(f))
+                continue;
+            if (f.kind == PayloadField.Kind.LONG)
+                payload.addProperty(f.key, msg.getLong(f));
+            else
+                payload.addProperty(f.key, msg.getString(f));
+        }
+        return gson.toJson(payload);
+    }
+
+    // preenche os campos tipados a partir da string de payload (chaves desconhecidas são ignoradas)
+    private static void decodePayload(Message msg) {
+        String payload = msg.getPayload();
+        if (payload == null || payload.isBlank())
+            return;
+        JsonElement parsed;
+        try {
+            parsed = JsonParser.parseString(payload);
+        } catch (JsonParseException e) {
+            return;
+        }
+        if (!parsed.isJsonObject())
+            return;
+        for (Map.Entry<String, JsonElement> e : parsed.getAsJsonObject().entrySet()) {
+            PayloadField f = PayloadField.fromKey(e.getKey());
+            if (f == null || !e.getValue().isJsonPrimitive())
+                continue;
+            JsonPrimitive v = e.getValue().getAsJsonPrimitive();
+            if (f.kind == PayloadField.Kind.LONG && v.isNumber())
+                msg.setLong(f, v.getAsLong());
+            else if (f.kind == PayloadField.Kind.STRING)
+                msg.setString(f, v.getAsString());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package br.ifba.saj.distribuido.protocol;
+
+// Formato de serialização de uma conexão. JSON continua sendo o padrão (fácil de depurar);
+// BINARY é negociado no JOIN com o campo "codec":"binary".
+public enum WireFormat {
+    JSON, BINARY;
+
+    public static final String BINARY_CODEC_NAME = "binary";
+
+    public static WireFormat fromArgs(String[] args) {
+        for (String a : args) {
+            if ("--binary".equals(a))
+                return BINARY;
+        }
+        return JSON;
+    }
+}
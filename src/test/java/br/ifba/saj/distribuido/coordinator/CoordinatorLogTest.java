@@ -0,0 +1,104 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import br.ifba.saj.distribuido.model.Message;
+import br.ifba.saj.distribuido.model.ThreadMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoordinatorLogTest {
+    @TempDir
+    Path dir;
+
+    private static CoordinatorLog.Entry find(CoordinatorLog log, String resource) {
+        for (CoordinatorLog.Entry e : log.recovered())
+            if (e.resource().equals(resource))
+                return e;
+        return null;
+    }
+
+    private static void awaitCommitted(CoordinatorLog log, String resource, int counter) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (find(log, resource) == null || find(log, resource).counter() != counter) {
+            assertTrue(System.nanoTime() < deadline, "registro de " + resource + " não foi gravado");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void longestAllowedNameSurvivesReopen() throws Exception {
+        // 2 bytes por char: exatamente MAX_RESOURCE_BYTES em UTF-8
+        String name = "é".repeat(Message.MAX_RESOURCE_BYTES / 2);
+        assertEquals(Message.MAX_RESOURCE_BYTES, name.getBytes(StandardCharsets.UTF_8).length);
+        Path file = dir.resolve("coord-1.log");
+        CoordinatorLog log = new CoordinatorLog(file, 1, 1, false);
+        // thread de commit virtual: não segura a JVM dos testes
+        log.start(ThreadMode.VIRTUAL);
+        log.append(name, 7, 3, 42);
+        log.append("a", 1, 1, 43);
+        awaitCommitted(log, "a", 1);
+        awaitCommitted(log, name, 7);
+
+        CoordinatorLog reopened = new CoordinatorLog(file, 1, 1, false);
+        CoordinatorLog.Entry e = find(reopened, name);
+        assertNotNull(e);
+        assertEquals(7, e.counter());
+        assertEquals(3, e.lastToken());
+        assertEquals(42, e.clock());
+        assertNotNull(find(reopened, "a"));
+    }
+
+    @Test
+    void overlongNameIsRejectedBeforeReachingTheCommitThread() throws Exception {
+        CoordinatorLog log = new CoordinatorLog(dir.resolve("coord-1.log"), 1, 1, false);
+        log.start(ThreadMode.VIRTUAL);
+        String name = "x".repeat(Message.MAX_RESOURCE_BYTES + 1);
+        assertFalse(Message.isValidResource(name));
+        assertThrows(IllegalArgumentException.class, () -> log.append(name, 1, 1, 1));
+
+        // a thread de commit continua viva e grava o que vem depois
+        log.append("b", 5, 2, 2);
+        awaitCommitted(log, "b", 5);
+    }
+
+    @Test
+    void sendsWaitForTheCommitOfEarlierRecordsAndKeepTheirOrder() throws Exception {
+        // janela longa: o lote fica pendente enquanto o teste confere que nada saiu
+        CoordinatorLog log = new CoordinatorLog(dir.resolve("coord-1.log"), 300, 1, false);
+        log.start(ThreadMode.VIRTUAL);
+        List<Integer> sent = Collections.synchronizedList(new ArrayList<>());
+
+        log.afterDurable(() -> sent.add(0));
+        assertEquals(List.of(0), sent, "sem registro pendente o envio sai na hora");
+
+        log.append("a", 1, 1, 1);
+        log.afterDurable(() -> sent.add(1));
+        log.afterDurable(() -> sent.add(2));
+        Thread.sleep(100);
+        assertEquals(List.of(0), sent, "envio saiu antes do fsync");
+
+        awaitCommitted(log, "a", 1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sent.size() < 3) {
+            assertTrue(System.nanoTime() < deadline, "envios retidos não saíram");
+            Thread.sleep(5);
+        }
+        assertEquals(List.of(0, 1, 2), sent);
+    }
+
+    @Test
+    void asyncAcksAreNotHeld() throws Exception {
+        CoordinatorLog log = new CoordinatorLog(dir.resolve("coord-1.log"), 300, 1, true);
+        log.start(ThreadMode.VIRTUAL);
+        List<Integer> sent = new ArrayList<>();
+        log.append("a", 1, 1, 1);
+        log.afterDurable(() -> sent.add(1));
+        assertEquals(List.of(1), sent);
+    }
+}
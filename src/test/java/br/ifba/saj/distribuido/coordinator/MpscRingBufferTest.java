@@ -0,0 +1,133 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MpscRingBufferTest {
+    // evento de teste: quem produziu e a sequência local do produtor
+    static final class Event {
+        int producer;
+        int n;
+    }
+
+    private Thread consumer;
+
+    @AfterEach
+    void stopConsumer() throws InterruptedException {
+        if (consumer != null) {
+            consumer.interrupt();
+            consumer.join(5_000);
+        }
+    }
+
+    private BlockingQueue<int[]> startConsumer(MpscRingBuffer<Event> ring) {
+        BlockingQueue<int[]> seen = new LinkedBlockingQueue<>();
+        consumer = new Thread(() -> ring.consume(e -> seen.add(new int[] { e.producer, e.n })));
+        consumer.start();
+        return seen;
+    }
+
+    private static void publish(MpscRingBuffer<Event> ring, int producer, int n) {
+        long seq = ring.claim();
+        Event e = ring.get(seq);
+        e.producer = producer;
+        e.n = n;
+        ring.publish(seq);
+    }
+
+    @Test
+    void singleProducerIsConsumedInOrderAcrossWraparound() throws Exception {
+        MpscRingBuffer<Event> ring = new MpscRingBuffer<>(8, Event::new);
+        BlockingQueue<int[]> seen = startConsumer(ring);
+        for (int i = 0; i < 1_000; i++)
+            publish(ring, 0, i);
+        for (int i = 0; i < 1_000; i++) {
+            int[] e = seen.poll(5, TimeUnit.SECONDS);
+            assertNotNull(e, "evento " + i + " não chegou");
+            assertEquals(i, e[1]);
+        }
+        assertEquals(0, ring.backlog());
+    }
+
+    @Test
+    void concurrentProducersDeliverEveryEventOnceInProducerOrder() throws Exception {
+        int producers = 4;
+        int perProducer = 20_000;
+        MpscRingBuffer<Event> ring = new MpscRingBuffer<>(64, Event::new);
+        BlockingQueue<int[]> seen = startConsumer(ring);
+        ExecutorService pool = Executors.newFixedThreadPool(producers);
+        try {
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                pool.execute(() -> {
+                    for (int i = 0; i < perProducer; i++)
+                        publish(ring, producer, i);
+                });
+            }
+            int[] next = new int[producers];
+            for (int i = 0; i < producers * perProducer; i++) {
+                int[] e = seen.poll(10, TimeUnit.SECONDS);
+                assertNotNull(e, "faltaram eventos depois de " + i);
+                assertEquals(next[e[0]]++, e[1], "fora de ordem no produtor " + e[0]);
+            }
+            assertArrayEquals(new int[] { perProducer, perProducer, perProducer, perProducer }, next);
+            assertNull(seen.poll(100, TimeUnit.MILLISECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void claimWaitsWhileTheRingIsFull() throws Exception {
+        MpscRingBuffer<Event> ring = new MpscRingBuffer<>(4, Event::new);
+        for (int i = 0; i < 4; i++)
+            publish(ring, 0, i);
+        CountDownLatch claimed = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            publish(ring, 1, 0);
+            claimed.countDown();
+        });
+        producer.start();
+        assertFalse(claimed.await(200, TimeUnit.MILLISECONDS), "claim não esperou o consumidor");
+
+        BlockingQueue<int[]> seen = startConsumer(ring);
+        assertTrue(claimed.await(5, TimeUnit.SECONDS));
+        producer.join();
+        for (int i = 0; i < 4; i++)
+            assertEquals(0, seen.poll(5, TimeUnit.SECONDS)[0]);
+        assertEquals(1, seen.poll(5, TimeUnit.SECONDS)[0]);
+    }
+
+    @Test
+    void tryClaimFailsWhileTheRingIsFullAndSucceedsAfterTheConsumerAdvances() throws Exception {
+        MpscRingBuffer<Event> ring = new MpscRingBuffer<>(4, Event::new);
+        for (int i = 0; i < 4; i++) {
+            long seq = ring.tryClaim();
+            assertEquals(i, seq);
+            ring.get(seq).n = i;
+            ring.publish(seq);
+        }
+        assertEquals(-1, ring.tryClaim());
+        assertEquals(4, ring.backlog(), "tryClaim sem sucesso não pode reservar sequência");
+
+        BlockingQueue<int[]> seen = startConsumer(ring);
+        for (int i = 0; i < 4; i++)
+            assertEquals(i, seen.poll(5, TimeUnit.SECONDS)[1]);
+        // o consumidor libera o slot logo depois de entregar o evento
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        long seq;
+        while ((seq = ring.tryClaim()) < 0) {
+            assertTrue(System.nanoTime() < deadline, "slot não foi liberado");
+            Thread.yield();
+        }
+        assertEquals(4, seq);
+        ring.get(seq).n = 4;
+        ring.publish(seq);
+        assertEquals(4, seen.poll(5, TimeUnit.SECONDS)[1]);
+    }
+}
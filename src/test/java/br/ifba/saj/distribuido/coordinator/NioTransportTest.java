@@ -0,0 +1,121 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import br.ifba.saj.distribuido.model.Message;
+import br.ifba.saj.distribuido.model.MessageType;
+import br.ifba.saj.distribuido.protocol.BinaryCodec;
+import br.ifba.saj.distribuido.protocol.JsonCodec;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NioTransportTest {
+    // núcleo simulado: recusa enquanto "cheio" e guarda a ordem do que aceitou
+    private final AtomicBoolean full = new AtomicBoolean(true);
+    private final AtomicInteger refused = new AtomicInteger();
+    private final List<Integer> accepted = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger closeRefusals = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private int start() throws IOException {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        NioTransport transport = new NioTransport(port, null, (conn, msg) -> {
+            if (full.get()) {
+                refused.incrementAndGet();
+                return false;
+            }
+            accepted.add(msg.getCounter());
+            return true;
+        }, conn -> {
+            if (full.get()) {
+                closeRefusals.incrementAndGet();
+                return false;
+            }
+            closed.set(true);
+            return true;
+        });
+        Thread t = new Thread(transport, "nio-test");
+        t.setDaemon(true);
+        t.start();
+        return port;
+    }
+
+    private static Socket connect(int port) throws Exception {
+        for (int i = 0;; i++) {
+            try {
+                return new Socket("localhost", port);
+            } catch (IOException e) {
+                if (i == 50)
+                    throw e;
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    private static Message op(int n) {
+        Message m = new Message();
+        m.setType(MessageType.DO_OP);
+        m.setPid(1);
+        m.setClock(n);
+        m.setCounter(n);
+        return m;
+    }
+
+    private static void await(BooleanSupplier cond, String what) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!cond.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, what);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void refusedMessagesStayBufferedAndAreRedeliveredInOrder() throws Exception {
+        int port = start();
+        try (Socket s = connect(port)) {
+            OutputStream out = s.getOutputStream();
+            // JSON e binário misturados na mesma conexão
+            for (int i = 0; i < 200; i++) {
+                if (i % 2 == 0)
+                    out.write((JsonCodec.encode(op(i)) + "\n").getBytes(StandardCharsets.UTF_8));
+                else
+                    out.write(BinaryCodec.encodeToArray(op(i)));
+            }
+            out.flush();
+
+            await(() -> refused.get() > 0, "o selector não ofereceu a mensagem");
+            Thread.sleep(100);
+            assertTrue(accepted.isEmpty());
+
+            full.set(false);
+            await(() -> accepted.size() == 200, "mensagens perdidas: " + accepted.size());
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < 200; i++)
+                expected.add(i);
+            assertEquals(expected, accepted);
+        }
+    }
+
+    @Test
+    void refusedDisconnectIsRetriedUntilAccepted() throws Exception {
+        int port = start();
+        connect(port).close();
+        await(() -> closeRefusals.get() > 1, "a desconexão não foi tentada de novo");
+        assertFalse(closed.get());
+        full.set(false);
+        await(closed::get, "a desconexão não foi entregue");
+    }
+}
@@ -0,0 +1,62 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PhiAccrualDetectorTest {
+    private static final long MS = 1_000_000L;
+
+    // heartbeats a cada intervalMs (+- jitterMs alternado) a partir de start; devolve o instante do último
+    private static long feed(PhiAccrualDetector d, long start, int count, long intervalMs, long jitterMs) {
+        long now = start;
+        for (int i = 0; i < count; i++) {
+            now += (intervalMs + (i % 2 == 0 ? jitterMs : -jitterMs)) * MS;
+            d.heartbeat(now);
+        }
+        return now;
+    }
+
+    @Test
+    void regularHeartbeatsKeepPhiLow() {
+        PhiAccrualDetector d = new PhiAccrualDetector(1, null, 100, 0, 5);
+        long last = feed(d, System.nanoTime(), 50, 100, 0);
+        assertTrue(d.phi(last + 50 * MS) < 1, "phi logo depois de um heartbeat");
+        assertTrue(d.phi(last + 100 * MS) < 1, "phi no intervalo esperado");
+    }
+
+    @Test
+    void phiGrowsWithSilenceAndCrossesTheThreshold() {
+        PhiAccrualDetector d = new PhiAccrualDetector(1, null, 100, 0, 5);
+        long last = feed(d, System.nanoTime(), 50, 100, 0);
+        double previous = 0;
+        for (long silenceMs = 50; silenceMs <= 500; silenceMs += 25) {
+            double phi = d.phi(last + silenceMs * MS);
+            assertTrue(phi >= previous, "phi diminuiu em " + silenceMs + " ms");
+            previous = phi;
+        }
+        assertTrue(d.phi(last + 300 * MS) > 8, "300 ms sem heartbeat com intervalo de 100 ms");
+    }
+
+    @Test
+    void pauseAllowanceDelaysSuspicion() {
+        PhiAccrualDetector strict = new PhiAccrualDetector(1, null, 100, 0, 5);
+        PhiAccrualDetector tolerant = new PhiAccrualDetector(1, null, 100, 200, 5);
+        long start = System.nanoTime();
+        long last = feed(strict, start, 50, 100, 0);
+        feed(tolerant, start, 50, 100, 0);
+        assertTrue(strict.phi(last + 250 * MS) > 8);
+        assertTrue(tolerant.phi(last + 250 * MS) < 1);
+    }
+
+    @Test
+    void jitteryNodeToleratesLongerGaps() {
+        PhiAccrualDetector steady = new PhiAccrualDetector(1, null, 100, 0, 5);
+        PhiAccrualDetector jittery = new PhiAccrualDetector(2, null, 100, 0, 5);
+        long start = System.nanoTime();
+        long a = feed(steady, start, PhiAccrualDetector.WINDOW, 100, 0);
+        long b = feed(jittery, start, PhiAccrualDetector.WINDOW, 100, 60);
+        assertTrue(jittery.phi(b + 200 * MS) < steady.phi(a + 200 * MS));
+        assertTrue(jittery.phi(b + 200 * MS) < 8, "o desvio medido deve absorver a variação");
+    }
+}
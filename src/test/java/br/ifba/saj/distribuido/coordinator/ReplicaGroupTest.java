@@ -0,0 +1,145 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import br.ifba.saj.distribuido.model.Message;
+import br.ifba.saj.distribuido.model.MessageType;
+import br.ifba.saj.distribuido.protocol.FrameReader;
+import br.ifba.saj.distribuido.protocol.JsonCodec;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Réplicas do coordenador em processos separados, como em produção: a eleição depende de
+// conexões, timeouts e de um processo morrer de verdade.
+class ReplicaGroupTest {
+    @TempDir
+    Path dir;
+
+    private final Map<Integer, Process> replicas = new HashMap<>();
+    private final Map<Integer, Integer> ports = new HashMap<>();
+    private String replicaList;
+
+    @AfterEach
+    void stopAll() throws InterruptedException {
+        for (Process p : replicas.values())
+            p.destroyForcibly().waitFor();
+    }
+
+    private void configure(int count) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int id = 1; id <= count; id++) {
+            try (ServerSocket s = new ServerSocket(0)) {
+                ports.put(id, s.getLocalPort());
+            }
+            if (sb.length() > 0)
+                sb.append(',');
+            sb.append(id).append("@127.0.0.1:").append(ports.get(id));
+        }
+        replicaList = sb.toString();
+    }
+
+    private void start(int id, boolean standby) throws Exception {
+        String cp = location(CoordinatorServer.class) + File.pathSeparator + location(Gson.class);
+        List<String> cmd = new ArrayList<>(List.of(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", cp, CoordinatorServer.class.getName(), "--id=" + id, "--replicas=" + replicaList,
+                "--log-dir=" + dir));
+        if (standby)
+            cmd.add("--standby");
+        replicas.put(id, new ProcessBuilder(cmd).redirectErrorStream(true)
+                .redirectOutput(dir.resolve("coord-" + id + ".out").toFile()).start());
+    }
+
+    private static String location(Class<?> c) throws URISyntaxException {
+        return Paths.get(c.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    }
+
+    private String output(int id) throws IOException {
+        Path out = dir.resolve("coord-" + id + ".out");
+        return Files.exists(out) ? Files.readString(out, StandardCharsets.UTF_8) : "";
+    }
+
+    // a réplica atende nós: responde ao JOIN (standby fecha a conexão)
+    private boolean serves(int id) {
+        try (Socket s = new Socket()) {
+            s.connect(new InetSocketAddress("127.0.0.1", ports.get(id)), 500);
+            s.setSoTimeout(1_000);
+            Message join = new Message();
+            join.setType(MessageType.JOIN);
+            join.setPid(900 + id);
+            OutputStream out = s.getOutputStream();
+            out.write((JsonCodec.encode(join) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            return new FrameReader(s.getInputStream()).read(new Message()) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void await(String what, long timeoutMs, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline)
+                fail("timeout esperando: " + what);
+            Thread.sleep(100);
+        }
+    }
+
+    private BooleanSupplier logged(int id, String text) {
+        return () -> {
+            try {
+                return output(id).contains(text);
+            } catch (IOException e) {
+                return false;
+            }
+        };
+    }
+
+    // a primária só atende com o lease renovado pela maioria: as três sobem juntas
+    private void startGroup() throws Exception {
+        configure(3);
+        start(1, false);
+        start(2, true);
+        start(3, true);
+        await("primária atendendo", 15_000, () -> serves(1));
+        await("standby 2 no log", 10_000, logged(1, "Standby 2 conectada ao log"));
+        await("standby 3 no log", 10_000, logged(1, "Standby 3 conectada ao log"));
+        assertFalse(serves(2), "standby não atende nós");
+        assertFalse(serves(3), "standby não atende nós");
+    }
+
+    @Test
+    void highestStandbyTakesOverWhenThePrimaryDies() throws Exception {
+        startGroup();
+        replicas.get(1).destroyForcibly().waitFor();
+        await("réplica 3 assumir", 15_000, () -> serves(3));
+        assertFalse(serves(2), "só uma réplica pode atender");
+        await("standby 2 seguir a 3", 10_000, logged(3, "Standby 2 conectada ao log"));
+    }
+
+    @Test
+    void pausedPrimaryStepsDownInsteadOfServingAlongsideTheNewOne() throws Exception {
+        assumeTrue(Files.isExecutable(Paths.get("/bin/kill")), "precisa de kill -STOP/-CONT");
+        startGroup();
+        long pid = replicas.get(1).pid();
+        // pausa como um GC longo: a conexão continua aberta, só não há resposta
+        assertEquals(0, new ProcessBuilder("/bin/kill", "-STOP", Long.toString(pid)).start().waitFor());
+        try {
+            await("réplica 3 assumir", 15_000, () -> serves(3));
+        } finally {
+            new ProcessBuilder("/bin/kill", "-CONT", Long.toString(pid)).start().waitFor();
+        }
+        await("réplica 1 seguir a 3", 10_000, logged(3, "Standby 1 conectada ao log"));
+        assertFalse(serves(1), "a primária antiga não pode atender junto com a nova");
+        assertTrue(serves(3));
+    }
+}
@@ -0,0 +1,101 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestHeapTest {
+
+    private static Request request(long lamport, int pid) {
+        return new Request(lamport, pid, null, false);
+    }
+
+    private static List<Long> drain(RequestHeap heap) {
+        List<Long> order = new ArrayList<>();
+        Request r;
+        while ((r = heap.poll()) != null)
+            order.add(r.lamportTime);
+        return order;
+    }
+
+    @Test
+    void pollsInLamportOrder() {
+        RequestHeap heap = new RequestHeap();
+        List<Long> expected = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            long lamport = random.nextInt(1_000);
+            heap.add(request(lamport, i));
+            expected.add(lamport);
+        }
+        Collections.sort(expected);
+        assertEquals(200, heap.size());
+        assertEquals(expected, drain(heap));
+        assertTrue(heap.isEmpty());
+        assertNull(heap.peek());
+    }
+
+    @Test
+    void pidBreaksLamportTies() {
+        RequestHeap heap = new RequestHeap();
+        heap.add(request(5, 3));
+        heap.add(request(5, 1));
+        heap.add(request(5, 2));
+        assertEquals(1, heap.poll().pid);
+        assertEquals(2, heap.poll().pid);
+        assertEquals(3, heap.poll().pid);
+    }
+
+    @Test
+    void rankComesBeforeLamport() {
+        RequestHeap heap = new RequestHeap();
+        Request early = request(1, 1);
+        early.rank = 10;
+        Request late = request(99, 2);
+        late.rank = 0;
+        heap.add(early);
+        heap.add(late);
+        assertSame(late, heap.poll());
+        assertSame(early, heap.poll());
+    }
+
+    @Test
+    void removeTakesAnyRequestAndKeepsTheOrder() {
+        RequestHeap heap = new RequestHeap();
+        List<Request> all = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Request r = request(i, i);
+            all.add(r);
+            heap.add(r);
+        }
+        assertTrue(heap.remove(all.get(0)));
+        assertTrue(heap.remove(all.get(25)));
+        assertTrue(heap.remove(all.get(49)));
+        assertFalse(heap.remove(all.get(25)), "já removido");
+        assertFalse(heap.remove(request(7, 7)), "nunca esteve na fila");
+        assertEquals(-1, all.get(25).heapIndex);
+
+        List<Long> order = drain(heap);
+        assertEquals(47, order.size());
+        assertFalse(order.contains(0L) || order.contains(25L) || order.contains(49L));
+        List<Long> sorted = new ArrayList<>(order);
+        Collections.sort(sorted);
+        assertEquals(sorted, order);
+    }
+
+    @Test
+    void removeIfReturnsWhatItRemoved() {
+        RequestHeap heap = new RequestHeap();
+        for (int i = 0; i < 30; i++)
+            heap.add(request(i, i % 3));
+        List<Request> removed = heap.removeIf(r -> r.pid == 1);
+        assertEquals(10, removed.size());
+        assertTrue(removed.stream().allMatch(r -> r.pid == 1));
+        assertEquals(20, heap.size());
+        List<Long> order = drain(heap);
+        for (int i = 1; i < order.size(); i++)
+            assertTrue(order.get(i - 1) < order.get(i));
+    }
+}
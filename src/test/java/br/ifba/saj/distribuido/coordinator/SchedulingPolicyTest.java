@@ -0,0 +1,157 @@
+package br.ifba.saj.distribuido.coordinator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchedulingPolicyTest {
+    private long lamport;
+
+    private Request enqueue(SchedulingPolicy policy, SchedulingPolicy.FairState fair, RequestHeap heap, int pid,
+            long priority) {
+        Request r = new Request(++lamport, pid, null, false);
+        r.priority = priority;
+        policy.rank(r, fair);
+        heap.add(r);
+        return r;
+    }
+
+    // concede um pedido por vez, como o ResourceLock, e devolve a sequência de pids
+    private static List<Integer> grantAll(SchedulingPolicy policy, SchedulingPolicy.FairState fair, RequestHeap heap) {
+        List<Integer> pids = new ArrayList<>();
+        Request r;
+        while ((r = heap.poll()) != null) {
+            policy.granted(r, fair);
+            pids.add(r.pid);
+        }
+        return pids;
+    }
+
+    @Test
+    void lamportPolicyKeepsArrivalByClock() {
+        SchedulingPolicy policy = SchedulingPolicy.fromArgs(new String[0]);
+        SchedulingPolicy.FairState fair = new SchedulingPolicy.FairState();
+        RequestHeap heap = new RequestHeap();
+        for (int i = 0; i < 5; i++)
+            enqueue(policy, fair, heap, 1, 0);
+        enqueue(policy, fair, heap, 2, 0);
+        assertEquals(List.of(1, 1, 1, 1, 1, 2), grantAll(policy, fair, heap));
+    }
+
+    @Test
+    void wfqInterleavesAHeavyAndALightPid() {
+        SchedulingPolicy policy = SchedulingPolicy.fromArgs(new String[] { "--sched=wfq" });
+        SchedulingPolicy.FairState fair = new SchedulingPolicy.FairState();
+        RequestHeap heap = new RequestHeap();
+        for (int i = 0; i < 10; i++)
+            enqueue(policy, fair, heap, 1, 0);
+        enqueue(policy, fair, heap, 2, 0);
+        enqueue(policy, fair, heap, 2, 0);
+        List<Integer> order = grantAll(policy, fair, heap);
+        assertEquals(List.of(1, 2, 1, 2), order.subList(0, 4));
+    }
+
+    @Test
+    void wfqSharesByWeight() {
+        SchedulingPolicy policy = SchedulingPolicy.fromArgs(new String[] { "--sched=wfq", "--weights=1:3" });
+        SchedulingPolicy.FairState fair = new SchedulingPolicy.FairState();
+        RequestHeap heap = new RequestHeap();
+        for (int i = 0; i < 20; i++) {
+            enqueue(policy, fair, heap, 1, 0);
+            enqueue(policy, fair, heap, 2, 0);
+        }
+        List<Integer> first = grantAll(policy, fair, heap).subList(0, 8);
+        assertEquals(6, Collections.frequency(first, 1));
+        assertEquals(2, Collections.frequency(first, 2));
+    }
+
+    @Test
+    void wfqLateArrivalStartsAtTheCurrentVirtualTime() {
+        SchedulingPolicy policy = SchedulingPolicy.fromArgs(new String[] { "--sched=wfq" });
+        SchedulingPolicy.FairState fair = new SchedulingPolicy.FairState();
+        RequestHeap heap = new RequestHeap();
+        for (int i = 0; i < 10; i++)
+            enqueue(policy, fair, heap, 1, 0);
+        for (int i = 0; i < 5; i++)
+            policy.granted(heap.poll(), fair);
+        // pid 2 começa no tempo virtual atual: nem espera os 5 pedidos restantes do pid 1 nem
+        // ganha crédito pelo tempo parado, só alterna com ele
+        enqueue(policy, fair, heap, 2, 0);
+        enqueue(policy, fair, heap, 2, 0);
+        List<Integer> order = grantAll(policy, fair, heap);
+        assertEquals(List.of(2, 1, 2, 1, 1, 1, 1), order);
+    }
+
+    @Test
+    void strictPriorityServesHigherClassesFirst() {
+        SchedulingPolicy policy = SchedulingPolicy.fromArgs(new String[] { "--sched=priority", "--aging=0" });
+        SchedulingPolicy.FairState fair = new SchedulingPolicy.FairState();
+        RequestHeap heap = new RequestHeap();
+        enqueue(policy, fair, heap, 1, 0);
+        enqueue(policy, fair, heap, 2, 5);
+        enqueue(policy, fair, heap, 3, 1);
+        assertEquals(List.of(2, 3, 1), grantAll(policy, fair, heap));
+    }
+
+    @Test
+    void agingLetsAnOldLowClassRequestPass() throws InterruptedException {
+        SchedulingPolicy fastAging = SchedulingPolicy.fromArgs(new String[] { "--sched=priority", "--aging=1" });
+        SchedulingPolicy slowAging = SchedulingPolicy.fromArgs(new String[] { "--sched=priority", "--aging=1000" });
+        SchedulingPolicy.FairState fair = new SchedulingPolicy.FairState();
+
+        RequestHeap fast = new RequestHeap();
+        RequestHeap slow = new RequestHeap();
+        enqueue(fastAging, fair, fast, 1, 0);
+        enqueue(slowAging, fair, slow, 1, 0);
+        Thread.sleep(20);
+        // classe 1 vale 1 ms de espera: 20 ms de fila já passam na frente
+        enqueue(fastAging, fair, fast, 2, 1);
+        // classe 1 vale 1 s: o pedido novo ainda passa na frente
+        enqueue(slowAging, fair, slow, 2, 1);
+        assertEquals(List.of(1, 2), grantAll(fastAging, fair, fast));
+        assertEquals(List.of(2, 1), grantAll(slowAging, fair, slow));
+    }
+
+    @Test
+    void extremePriorityClassesDoNotOverflowTheRank() {
+        SchedulingPolicy policy = SchedulingPolicy.fromArgs(new String[] { "--sched=priority", "--aging=100" });
+        SchedulingPolicy.FairState fair = new SchedulingPolicy.FairState();
+        RequestHeap heap = new RequestHeap();
+        enqueue(policy, fair, heap, 1, 0);
+        enqueue(policy, fair, heap, 2, Long.MAX_VALUE);
+        enqueue(policy, fair, heap, 3, Long.MIN_VALUE);
+        assertEquals(List.of(2, 1, 3), grantAll(policy, fair, heap));
+    }
+
+    @Test
+    void purgedRequestsGiveTheirVirtualTimeBack() {
+        SchedulingPolicy policy = SchedulingPolicy.fromArgs(new String[] { "--sched=wfq" });
+        SchedulingPolicy.FairState fair = new SchedulingPolicy.FairState();
+        RequestHeap heap = new RequestHeap();
+        Request first = enqueue(policy, fair, heap, 1, 0);
+        for (int i = 0; i < 4; i++)
+            enqueue(policy, fair, heap, 1, 0);
+        // o nó 1 caiu com 5 pedidos na fila; ao voltar não paga por eles
+        policy.purged(heap.removeIf(r -> r.pid == 1), fair);
+        Request again = enqueue(policy, fair, heap, 1, 0);
+        assertEquals(first.rank, again.rank);
+        enqueue(policy, fair, heap, 2, 0);
+        assertEquals(List.of(1, 2), grantAll(policy, fair, heap));
+    }
+
+    @Test
+    void purgeDoesNotRefundWhenANewerRequestWasTagged() {
+        SchedulingPolicy policy = SchedulingPolicy.fromArgs(new String[] { "--sched=wfq" });
+        SchedulingPolicy.FairState fair = new SchedulingPolicy.FairState();
+        RequestHeap heap = new RequestHeap();
+        Request old = enqueue(policy, fair, heap, 1, 0);
+        heap.remove(old);
+        // pedido de uma conexão nova do mesmo pid etiquetado antes da limpeza da antiga
+        Request newer = enqueue(policy, fair, heap, 1, 0);
+        policy.purged(List.of(old), fair);
+        Request next = enqueue(policy, fair, heap, 1, 0);
+        assertTrue(next.rank > newer.rank);
+    }
+}
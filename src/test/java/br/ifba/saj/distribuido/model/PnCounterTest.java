@@ -0,0 +1,70 @@
+package br.ifba.saj.distribuido.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PnCounterTest {
+
+    private static PnCounter counter(String replica, long... deltas) {
+        PnCounter c = new PnCounter();
+        for (long d : deltas)
+            c.add(replica, d);
+        return c;
+    }
+
+    private static PnCounter copy(PnCounter c) {
+        PnCounter copy = new PnCounter();
+        copy.merge(c.encode());
+        return copy;
+    }
+
+    @Test
+    void valueIsIncrementsMinusDecrements() {
+        PnCounter c = counter("a", 5, -2, 3, -1);
+        assertEquals(5, c.value());
+    }
+
+    @Test
+    void mergeIsCommutative() {
+        PnCounter a = counter("a", 4, -1);
+        PnCounter b = counter("b", 10, -3);
+        PnCounter ab = copy(a);
+        ab.merge(b.encode());
+        PnCounter ba = copy(b);
+        ba.merge(a.encode());
+        assertEquals(10, ab.value());
+        assertEquals(ab.value(), ba.value());
+    }
+
+    @Test
+    void mergeIsIdempotent() {
+        PnCounter a = counter("a", 4, -1);
+        PnCounter b = counter("b", 2);
+        assertTrue(a.merge(b.encode()));
+        long once = a.value();
+        assertFalse(a.merge(b.encode()));
+        assertFalse(a.merge(a.encode()));
+        assertEquals(once, a.value());
+    }
+
+    @Test
+    void mergeKeepsTheLargestEntryOfEachReplica() {
+        PnCounter newer = counter("a", 5, -2);
+        PnCounter older = counter("a", 3);
+        assertFalse(newer.merge(older.encode()), "estado antigo não pode regredir a entrada");
+        assertEquals(3, newer.value());
+        assertTrue(older.merge(newer.encode()));
+        assertEquals(3, older.value());
+    }
+
+    @Test
+    void deltaEncodingCarriesOnlyOneReplica() {
+        PnCounter c = counter("a", 2);
+        c.merge(counter("b", 7).encode());
+        PnCounter remote = new PnCounter();
+        remote.merge(c.encode("a"));
+        assertEquals(2, remote.value());
+        assertEquals("", c.encode("z"));
+    }
+}
@@ -0,0 +1,79 @@
+package br.ifba.saj.distribuido.node;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedCheckpointStoreTest {
+    @TempDir
+    Path dir;
+
+    private Path file() {
+        return dir.resolve("node-1.mmap");
+    }
+
+    // três saves: seq 3 fica no slot 1 e seq 2 no slot 0
+    private void saveThree() throws Exception {
+        MappedCheckpointStore store = new MappedCheckpointStore(file(), true);
+        store.save(1, 100);
+        store.save(2, 200);
+        store.save(3, 300);
+        store.close();
+    }
+
+    private void flipByte(long offset) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file().toFile(), "rw")) {
+            raf.seek(offset);
+            int b = raf.read();
+            raf.seek(offset);
+            raf.write(b ^ 0x01);
+        }
+    }
+
+    @Test
+    void freshFileHasNoState() throws Exception {
+        MappedCheckpointStore store = new MappedCheckpointStore(file(), false);
+        assertNull(store.load());
+        store.close();
+    }
+
+    @Test
+    void newestSlotWins() throws Exception {
+        saveThree();
+        MappedCheckpointStore store = new MappedCheckpointStore(file(), false);
+        NodeState.StateSnapshot snap = store.load();
+        assertEquals(3, snap.counter);
+        assertEquals(300L, snap.lamportTs);
+
+        // seq continua depois do slot recuperado: o próximo save vai para o slot mais velho
+        store.save(4, 400);
+        store.close();
+        MappedCheckpointStore reopened = new MappedCheckpointStore(file(), false);
+        assertEquals(4, reopened.load().counter);
+        reopened.close();
+    }
+
+    @Test
+    void corruptedCounterFallsBackToTheOtherSlot() throws Exception {
+        saveThree();
+        flipByte(MappedCheckpointStore.SLOT_SIZE + 13);
+        MappedCheckpointStore store = new MappedCheckpointStore(file(), false);
+        assertEquals(2, store.load().counter);
+        store.close();
+    }
+
+    @Test
+    void corruptedLowHalfOfLamportFallsBackToTheOtherSlot() throws Exception {
+        saveThree();
+        flipByte(MappedCheckpointStore.SLOT_SIZE + 22);
+        MappedCheckpointStore store = new MappedCheckpointStore(file(), false);
+        NodeState.StateSnapshot snap = store.load();
+        assertEquals(2, snap.counter);
+        assertEquals(200L, snap.lamportTs);
+        store.close();
+    }
+}
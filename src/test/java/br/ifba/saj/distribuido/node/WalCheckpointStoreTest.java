@@ -0,0 +1,85 @@
+package br.ifba.saj.distribuido.node;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WalCheckpointStoreTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void emptyDirectoryHasNoState() throws Exception {
+        WalCheckpointStore store = new WalCheckpointStore(dir, "node-1", 0);
+        assertNull(store.load());
+        store.close();
+    }
+
+    @Test
+    void reopenRecoversTheLastSave() throws Exception {
+        WalCheckpointStore store = new WalCheckpointStore(dir, "node-1", 0);
+        for (int i = 1; i <= 100; i++)
+            store.save(i, i * 10L);
+        store.close();
+
+        WalCheckpointStore reopened = new WalCheckpointStore(dir, "node-1", 0);
+        NodeState.StateSnapshot snap = reopened.load();
+        assertEquals(100, snap.counter);
+        assertEquals(1000L, snap.lamportTs);
+        reopened.close();
+    }
+
+    @Test
+    void closeFlushesSavesStillInTheGroupCommitWindow() throws Exception {
+        WalCheckpointStore store = new WalCheckpointStore(dir, "node-1", 1_000);
+        for (int i = 1; i <= 50; i++)
+            store.save(i, i);
+        store.close();
+
+        WalCheckpointStore reopened = new WalCheckpointStore(dir, "node-1", 0);
+        assertEquals(50, reopened.load().counter);
+        reopened.close();
+    }
+
+    @Test
+    void tornRecordAtTheEndIsDiscarded() throws Exception {
+        // sem close: simula a queda depois de 10 saves com fsync e uma escrita pela metade
+        WalCheckpointStore crashed = new WalCheckpointStore(dir, "node-1", 0);
+        for (int i = 1; i <= 10; i++)
+            crashed.save(i, i * 2L);
+        Files.write(dir.resolve("node-1.wal"), new byte[WalCheckpointStore.RECORD_SIZE / 2],
+                StandardOpenOption.APPEND);
+
+        WalCheckpointStore recovered = new WalCheckpointStore(dir, "node-1", 0);
+        NodeState.StateSnapshot snap = recovered.load();
+        assertEquals(10, snap.counter);
+        assertEquals(20L, snap.lamportTs);
+        assertEquals(10L * WalCheckpointStore.RECORD_SIZE, Files.size(dir.resolve("node-1.wal")));
+
+        // o log cortado continua aceitando registros
+        recovered.save(11, 22);
+        WalCheckpointStore again = new WalCheckpointStore(dir, "node-1", 0);
+        assertEquals(11, again.load().counter);
+        again.close();
+    }
+
+    @Test
+    void recoveryCombinesSnapshotAndLogTail() throws Exception {
+        int saves = WalCheckpointStore.SNAPSHOT_EVERY + 5;
+        WalCheckpointStore crashed = new WalCheckpointStore(dir, "node-1", 5);
+        for (int i = 1; i <= saves; i++)
+            crashed.save(i, i);
+        assertEquals(saves, crashed.load().counter);
+        assertTrue(Files.exists(dir.resolve("node-1.snapshot")));
+        assertTrue(Files.size(dir.resolve("node-1.wal")) < (long) saves * WalCheckpointStore.RECORD_SIZE);
+
+        WalCheckpointStore recovered = new WalCheckpointStore(dir, "node-1", 0);
+        NodeState.StateSnapshot snap = recovered.load();
+        assertEquals(saves, snap.counter);
+        assertEquals(saves, snap.lamportTs);
+        recovered.close();
+    }
+}
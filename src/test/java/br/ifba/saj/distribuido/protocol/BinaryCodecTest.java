@@ -0,0 +1,142 @@
+package br.ifba.saj.distribuido.protocol;
+
+import br.ifba.saj.distribuido.model.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCodecTest {
+
+    private static Message sample() {
+        Message m = new Message();
+        m.setType(MessageType.DO_OP);
+        m.setPid(7);
+        m.setClock(123456);
+        m.setCounter(-42);
+        m.setDelta(3);
+        // acentos e um par substituto: o tamanho em bytes difere do tamanho em chars
+        m.setReason("operação 😀 ok");
+        return m;
+    }
+
+    private static void assertSameMessage(Message expected, Message actual) {
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getPid(), actual.getPid());
+        assertEquals(expected.getClock(), actual.getClock());
+        for (PayloadField f : PayloadField.values()) {
+            assertEquals(expected.has(f), actual.has(f), f.key);
+            if (!expected.has(f))
+                continue;
+            if (f.kind == PayloadField.Kind.LONG)
+                assertEquals(expected.getLong(f), actual.getLong(f), f.key);
+            else
+                assertEquals(expected.getString(f), actual.getString(f), f.key);
+        }
+    }
+
+    @Test
+    void roundTripPreservesHeaderAndFields() throws Exception {
+        Message m = sample();
+        ByteBuffer frame = ByteBuffer.wrap(BinaryCodec.encodeToArray(m));
+        int len = BinaryCodec.readHeader(frame);
+        assertEquals(frame.remaining(), len);
+        Message decoded = new Message();
+        BinaryCodec.decodeBody(frame, decoded);
+        assertSameMessage(m, decoded);
+    }
+
+    @Test
+    void messageWithoutFieldsRoundTrips() throws Exception {
+        Message m = new Message();
+        m.setType(MessageType.JOIN);
+        m.setPid(1);
+        ByteBuffer frame = ByteBuffer.wrap(BinaryCodec.encodeToArray(m));
+        BinaryCodec.readHeader(frame);
+        Message decoded = new Message();
+        BinaryCodec.decodeBody(frame, decoded);
+        assertSameMessage(m, decoded);
+        assertFalse(decoded.hasFields());
+    }
+
+    @Test
+    void jsonAndBinaryDecodeToTheSameMessage() throws Exception {
+        Message m = sample();
+        Message fromJson = JsonCodec.decode(JsonCodec.encode(m));
+        ByteBuffer frame = ByteBuffer.wrap(BinaryCodec.encodeToArray(m));
+        BinaryCodec.readHeader(frame);
+        Message fromBinary = new Message();
+        BinaryCodec.decodeBody(frame, fromBinary);
+        assertSameMessage(fromJson, fromBinary);
+    }
+
+    @Test
+    void frameReaderAcceptsJsonAndBinaryOnTheSameStream() throws Exception {
+        Message first = sample();
+        Message second = sample();
+        second.setType(MessageType.STATE);
+        second.setPid(9);
+        Message third = new Message();
+        third.setType(MessageType.RELEASE);
+        third.setPid(2);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write((JsonCodec.encode(first) + "\n").getBytes(StandardCharsets.UTF_8));
+        out.write(BinaryCodec.encodeToArray(second));
+        out.write((JsonCodec.encode(third) + "\n").getBytes(StandardCharsets.UTF_8));
+        out.write(BinaryCodec.encodeToArray(first));
+
+        FrameReader reader = new FrameReader(new ByteArrayInputStream(out.toByteArray()));
+        Message reuse = new Message();
+        assertSameMessage(first, reader.read(reuse));
+        assertSameMessage(second, reader.read(reuse));
+        assertSameMessage(third, reader.read(reuse));
+        assertSameMessage(first, reader.read(reuse));
+        assertNull(reader.read(reuse));
+    }
+
+    @Test
+    void resetClearsLongFieldsOfAReusedMessage() {
+        Message m = sample();
+        m.reset();
+        assertFalse(m.hasFields());
+        assertEquals(0, m.getLong(PayloadField.COUNTER));
+        assertEquals(0, m.getLong(PayloadField.DELTA));
+        assertNull(m.getReason());
+    }
+
+    @Test
+    void messageLargerThanTheFrameBufferGetsABiggerBuffer() throws Exception {
+        Message m = sample();
+        m.setReason("x".repeat(3 * BinaryCodec.FRAME_BUFFER_SIZE));
+        ByteBuffer small = ByteBuffer.allocate(BinaryCodec.FRAME_BUFFER_SIZE);
+        ByteBuffer frame = BinaryCodec.encode(m, small);
+        assertNotSame(small, frame);
+        frame.flip();
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        FrameReader reader = new FrameReader(new ByteArrayInputStream(bytes));
+        assertSameMessage(m, reader.read(new Message()));
+    }
+
+    @Test
+    void messageAboveTheBodyLimitIsRejected() {
+        Message m = sample();
+        m.setReason("x".repeat(BinaryCodec.MAX_BODY_SIZE + 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> BinaryCodec.encode(m, ByteBuffer.allocate(BinaryCodec.FRAME_BUFFER_SIZE)));
+    }
+
+    @Test
+    void truncatedBodyIsAnIOException() throws Exception {
+        ByteBuffer frame = ByteBuffer.wrap(BinaryCodec.encodeToArray(sample()));
+        BinaryCodec.readHeader(frame);
+        frame.limit(frame.limit() - 3);
+        assertThrows(IOException.class, () -> BinaryCodec.decodeBody(frame, new Message()));
+    }
+}